@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.cli.parser.ASTExecutableStatement;
 import edu.berkeley.cs186.database.cli.parser.ParseException;
 import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.cli.visitor.ExecutableStatementVisitor;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.PredicateOperator;
@@ -15,7 +16,9 @@ import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
@@ -24,6 +27,7 @@ import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.recovery.ARIESRecoveryManager;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 import edu.berkeley.cs186.database.table.*;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -37,6 +41,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Phaser;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 /**
@@ -79,6 +84,8 @@ public class Database implements AutoCloseable {
     private static final String TABLE_INFO_TABLE_NAME = METADATA_TABLE_PREFIX + "tables";
     private static final String INDEX_INFO_TABLE_NAME = METADATA_TABLE_PREFIX + "indices";
     private static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
+    // file in the database directory listing the hot pages of the buffer cache
+    private static final String WARM_UP_FILE_NAME = "buffer.warmup";
     // effective page size - table metadata size
     private static final int MAX_SCHEMA_SIZE = 4006;
 
@@ -102,10 +109,18 @@ public class Database implements AutoCloseable {
     private int workMem = 1024; // default of 4M
     // number of pages of memory available total
     private int numMemoryPages;
+    // maximum number of pages to save for, and load in, buffer cache warm-up; 0 disables warm-up
+    private final int warmUpPages;
+    // file listing the hot pages of the buffer cache
+    private final File warmUpFile;
     // active transactions
     private Phaser activeTransactions = new Phaser(0);
     // Statistics about the contents of the database.
     private Map<String, TableStats> stats = new ConcurrentHashMap<>();
+    // Table objects of the tables in use, by partition number. Transactions share them,
+    // so that each table has one page directory, and one in-memory free-space map,
+    // rather than one built on every access.
+    private final Map<Integer, Table> tables = new ConcurrentHashMap<>();
 
     // Names of tables loaded for demo
     private ArrayList<String> demoTables = new ArrayList<>();
@@ -173,21 +188,41 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager,
+             new Options().evictionPolicy(() -> policy).useRecoveryManager(useRecoveryManager));
+    }
+
+    /**
+     * Creates a new database with the given options.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param options everything else (see Options)
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager, Options options) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
         this.numMemoryPages = numMemoryPages;
         this.lockManager = lockManager;
+        this.warmUpPages = options.warmUpPages < 0 ? numMemoryPages : options.warmUpPages;
+        this.warmUpFile = new File(fileDir, WARM_UP_FILE_NAME);
 
-        if (useRecoveryManager) {
+        if (options.useRecoveryManager) {
             recoveryManager = new ARIESRecoveryManager(this::beginRecoveryTransaction);
         } else {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        if (options.mappedFiles) {
+            diskSpaceManager = new MappedDiskSpaceManager(fileDir, recoveryManager, options.pageSize);
+        } else {
+            diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager, options.pageSize);
+        }
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+                                              options.policyFactory, options.numBufferPools,
+                                              options.offHeapBuffers);
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -211,6 +246,148 @@ public class Database implements AutoCloseable {
             this.loadMetadataTables();
         }
         initTransaction.commit();
+
+        if (initialized) this.startWarmUp();
+    }
+
+    /**
+     * Options for creating a database, beyond the ones the other constructors take.
+     * Every setter returns the options, so that calls can be chained:
+     *
+     *   new Database("demo", 1024, new LockManager(),
+     *                new Database.Options().bufferPools(4).offHeapBuffers(true));
+     */
+    public static class Options {
+        private Supplier<EvictionPolicy> policyFactory = ClockEvictionPolicy::new;
+        private boolean useRecoveryManager = false;
+        private int numBufferPools = 1;
+        private boolean offHeapBuffers = false;
+        // -1 for as many pages as fit in the buffer cache
+        private int warmUpPages = -1;
+        private boolean mappedFiles = false;
+        private int pageSize = DiskSpaceManager.PAGE_SIZE;
+
+        /**
+         * @param policyFactory creates an eviction policy for each sub-pool of the
+         * buffer cache (default: ClockEvictionPolicy)
+         */
+        public Options evictionPolicy(Supplier<EvictionPolicy> policyFactory) {
+            this.policyFactory = policyFactory;
+            return this;
+        }
+
+        /**
+         * @param useRecoveryManager flag to enable or disable the recovery manager
+         * (ARIES) (default: disabled)
+         */
+        public Options useRecoveryManager(boolean useRecoveryManager) {
+            this.useRecoveryManager = useRecoveryManager;
+            return this;
+        }
+
+        /**
+         * Splits the buffer cache into independent sub-pools, so that page requests
+         * from concurrent transactions do not all serialize on a single buffer manager
+         * lock. Page numbers are hashed to sub-pools, and each sub-pool gets its own
+         * eviction policy.
+         *
+         * @param numBufferPools number of sub-pools to split the buffer cache into (default: 1)
+         */
+        public Options bufferPools(int numBufferPools) {
+            this.numBufferPools = numBufferPools;
+            return this;
+        }
+
+        /**
+         * Keeps the buffer cache in direct (off-heap) memory, where it adds nothing to
+         * garbage collection work and is read from and written to disk without extra
+         * copies. The JVM's -XX:MaxDirectMemorySize must then allow for the whole
+         * buffer cache.
+         *
+         * @param offHeapBuffers whether to allocate the buffer cache off the Java heap
+         * (default: false)
+         */
+        public Options offHeapBuffers(boolean offHeapBuffers) {
+            this.offHeapBuffers = offHeapBuffers;
+            return this;
+        }
+
+        /**
+         * Limits buffer cache warm-up. When a database is closed, the page numbers of
+         * up to warmUpPages of the hottest pages in the buffer cache are saved; when it
+         * is opened again, those pages are loaded back into the buffer cache in the
+         * background, in disk order, so that it does not start out cold.
+         *
+         * @param warmUpPages maximum number of pages to save and load for warm-up; 0
+         * disables warm-up (default: as many pages as fit in the buffer cache)
+         */
+        public Options warmUpPages(int warmUpPages) {
+            if (warmUpPages < 0) {
+                throw new IllegalArgumentException("number of warm-up pages cannot be negative");
+            }
+            this.warmUpPages = warmUpPages;
+            return this;
+        }
+
+        /**
+         * Accesses table files through memory mappings (see MappedDiskSpaceManager)
+         * rather than file reads and writes. The files are the same either way, so a
+         * database may be reopened with either.
+         *
+         * @param mappedFiles whether to access table files through memory mappings
+         * (default: false)
+         */
+        public Options mappedFiles(boolean mappedFiles) {
+            this.mappedFiles = mappedFiles;
+            return this;
+        }
+
+        /**
+         * Sets the size of pages: any power of two from DiskSpaceManager.PAGE_SIZE
+         * to DiskSpaceManager.MAX_PAGE_SIZE (32K). Larger pages fit wider records and
+         * give B+ trees a larger fan-out. The page size is stored with the database
+         * when it is created; an existing database keeps the page size it was created
+         * with.
+         *
+         * @param pageSize size of pages in bytes, for a new database (default:
+         * DiskSpaceManager.PAGE_SIZE, 4K)
+         */
+        public Options pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+    }
+
+    // load the pages listed by the last close back into the buffer cache
+    private void startWarmUp() {
+        if (!warmUpFile.exists()) return;
+        List<Long> pageNums = new ArrayList<>();
+        if (warmUpPages > 0) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(warmUpFile)))) {
+                int numPages = Math.min(in.readInt(), warmUpPages);
+                for (int i = 0; i < numPages; ++i) pageNums.add(in.readLong());
+            } catch (IOException e) {
+                // a missing or damaged list only means a cold start
+                pageNums.clear();
+            }
+        }
+        // the list is out of date as soon as the database changes
+        if (!warmUpFile.delete()) {
+            throw new DatabaseException("could not delete " + warmUpFile);
+        }
+        if (!pageNums.isEmpty()) bufferManager.warmUp(pageNums);
+    }
+
+    // save the hottest pages of the buffer cache, for warm-up when the database is next opened
+    private void saveWarmUpList() {
+        if (warmUpPages == 0) return;
+        List<Long> pageNums = bufferManager.getHotPageNums(warmUpPages);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(warmUpFile)))) {
+            out.writeInt(pageNums.size());
+            for (long pageNum : pageNums) out.writeLong(pageNum);
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
     }
 
     private boolean setupDirectory(String fileDir) {
@@ -290,6 +467,9 @@ public class Database implements AutoCloseable {
 
         dropDemoTables();
 
+        this.bufferManager.stopBackgroundWriter();
+        this.bufferManager.stopWarmUp();
+        this.saveWarmUpList();
         this.bufferManager.evictAll();
 
         this.recoveryManager.close();
@@ -323,6 +503,17 @@ public class Database implements AutoCloseable {
         this.workMem = workMem;
     }
 
+    /**
+     * Grows or shrinks the buffer cache while the database is running (see
+     * BufferManager#resize). Work memory is capped at the new size.
+     *
+     * @param numMemoryPages the new number of pages of memory in the buffer cache
+     */
+    public void resizeBuffer(int numMemoryPages) {
+        this.bufferManager.resize(numMemoryPages);
+        this.numMemoryPages = numMemoryPages;
+    }
+
     /**
      * @return Schema for _metadata.tables with fields:
      *   | field name   | field type
@@ -331,6 +522,10 @@ public class Database implements AutoCloseable {
      * 1 | part_num     | int
      * 2 | page_num     | long
      * 3 | schema       | byte array(MAX_SCHEMA_SIZE)
+     *
+     * The schema field holds the serialized schema, followed by a byte with the
+     * ordinal of the table's TableFormat (0, for BITMAP, in tables created before
+     * there was a choice of format).
      */
     public Schema getTableInfoSchema() {
         return new Schema()
@@ -371,25 +566,30 @@ public class Database implements AutoCloseable {
         int partNum;
         long pageNum;
         Schema schema;
+        TableFormat format;
 
         TableMetadata(String tableName) {
             this.tableName = tableName;
             this.partNum = -1;
             this.pageNum = -1;
             this.schema = new Schema();
+            this.format = TableFormat.BITMAP;
         }
 
         TableMetadata(Record record) {
             tableName = record.getValue(0).getString();
             partNum = record.getValue(1).getInt();
             pageNum = record.getValue(2).getLong();
-            schema = Schema.fromBytes(ByteBuffer.wrap(record.getValue(3).toBytes()));
+            Buffer schemaBuf = ByteBuffer.wrap(record.getValue(3).toBytes());
+            schema = Schema.fromBytes(schemaBuf);
+            format = TableFormat.fromInt(schemaBuf.get());
         }
 
         Record toRecord() {
             byte[] schemaBytes = schema.toBytes();
             byte[] padded = new byte[MAX_SCHEMA_SIZE];
             System.arraycopy(schemaBytes, 0, padded, 0, schemaBytes.length);
+            padded[schemaBytes.length] = (byte) format.ordinal();
             return new Record(tableName, partNum, pageNum, padded);
         }
     }
@@ -444,13 +644,18 @@ public class Database implements AutoCloseable {
         return null;
     }
 
-    // TableMetadata -> Table object
+    // TableMetadata -> Table object, shared by all transactions until the table is dropped
     private Table tableFromMetadata(TableMetadata metadata) {
-        String tableName = normalize(metadata.tableName);
-        LockContext tableContext = getTableContext(tableName);
-        long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
-        PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
-        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        return tables.compute(metadata.partNum, (partNum, table) -> {
+            if (table != null && table.getName().equals(metadata.tableName)) {
+                return table;
+            }
+            String tableName = normalize(metadata.tableName);
+            LockContext tableContext = getTableContext(tableName);
+            long page0 = DiskSpaceManager.getVirtualPageNum(partNum, 0);
+            PageDirectory pd = new PageDirectory(bufferManager, partNum, page0, (short) 0, tableContext);
+            return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats, metadata.format);
+        });
     }
 
     /**
@@ -481,6 +686,29 @@ public class Database implements AutoCloseable {
         return result;
     }
 
+    /**
+     * Names what each partition in use holds, for reporting per-partition
+     * statistics: the log, the metadata tables, each table (by its name) and each
+     * index (as table.column), read from the metadata tables. Temporary
+     * partitions are not listed. Like scanTableMetadataRecords, takes no locks.
+     *
+     * @return partition number to name of the table or index it holds, in order
+     */
+    public SortedMap<Integer, String> getPartitionNames() {
+        SortedMap<Integer, String> names = new TreeMap<>();
+        names.put(LogManager.LOG_PARTITION, "_log");
+        names.put(1, TABLE_INFO_TABLE_NAME);
+        names.put(2, INDEX_INFO_TABLE_NAME);
+        for (Record record : scanTableMetadataRecords()) {
+            names.put(record.getValue(1).getInt(), record.getValue(0).getString());
+        }
+        for (Record record : scanIndexMetadataRecords()) {
+            names.put(record.getValue(3).getInt(),
+                      record.getValue(0).getString() + "." + record.getValue(1).getString());
+        }
+        return names;
+    }
+
     /**
      * @param tableName
      * @param columnName
@@ -607,6 +835,7 @@ public class Database implements AutoCloseable {
         Map<String, Table> tempTables;
         long tempTableCounter;
         boolean recoveryTransaction;
+        BufferRing bufferRing;
 
         private TransactionContextImpl(long tNum, boolean recoveryTransaction) {
             this.transNum = tNum;
@@ -626,15 +855,33 @@ public class Database implements AutoCloseable {
             return Database.this.getWorkMem();
         }
 
+        @Override
+        public short getEffectivePageSize() {
+            return PageDirectory.effectivePageSize(bufferManager);
+        }
+
+        @Override
+        public BufferRing getBufferRing(int numPages) {
+            if (!bufferManager.shouldUseRing(numPages)) return null;
+            if (bufferRing == null) bufferRing = bufferManager.createRing(getWorkMemSize());
+            return bufferRing;
+        }
+
         @Override
         public String createTempTable(Schema schema) {
+            return createTempTable(schema, null);
+        }
+
+        @Override
+        public String createTempTable(Schema schema, BufferRing ring) {
             String tempTableName = "tempTable" + tempTableCounter++;
             String tableName = prefixTempTableName(tempTableName);
 
-            int partNum = diskSpaceManager.allocPart();
+            // temporary tables never outlive the transaction, so are neither logged nor synced
+            int partNum = diskSpaceManager.allocTempPart();
             long pageNum = diskSpaceManager.allocPage(partNum);
             // We can use dummy contexts since this table will only be visible from the current transaction
-            PageDirectory pageDirectory = new PageDirectory(bufferManager, partNum, pageNum, (short) 0, new DummyLockContext("_dummyPageDir"));
+            PageDirectory pageDirectory = new PageDirectory(bufferManager, partNum, pageNum, (short) 0, new DummyLockContext("_dummyPageDir"), ring);
             tempTables.put(tempTableName, new Table(tableName, schema, pageDirectory, new DummyLockContext("_dummyTempTable" + tempTableName), stats));
             return tempTableName;
         }
@@ -734,6 +981,11 @@ public class Database implements AutoCloseable {
             return getTable(tableName).iterator();
         }
 
+        @Override
+        public BacktrackingIterator<Record> getRecordIterator(String tableName, BufferRing ring) {
+            return getTable(tableName).iterator(ring);
+        }
+
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
             tableName = aliases.getOrDefault(tableName, tableName);
@@ -761,6 +1013,65 @@ public class Database implements AutoCloseable {
             return rid;
         }
 
+        @Override
+        public List<RecordId> addRecords(String tableName, Iterator<Record> records) {
+            Table tab = getTable(tableName);
+            if (tab == null) {
+                throw new DatabaseException("table `" + tableName + "` does not exist!");
+            }
+            tableName = tab.getName();
+            List<Pair<RecordId, BPlusTreeMetadata>> indices = getTableIndicesMetadata(tableName);
+            if (indices.isEmpty()) {
+                return tab.addRecords(records);
+            }
+
+            // the records are needed again for their index keys, and are all checked
+            // before any is added, so that the table and its indices never disagree
+            // about a batch that fails part way
+            List<Record> added = new ArrayList<>();
+            Schema schema = tab.getSchema();
+            while (records.hasNext()) {
+                added.add(schema.verify(records.next()));
+            }
+            List<String> colNames = schema.getFieldNames();
+            List<BPlusTree> trees = new ArrayList<>();
+            for (Pair<RecordId, BPlusTreeMetadata> p: indices) {
+                BPlusTree tree = indexFromMetadata(p.getSecond());
+                String colName = tree.getMetadata().getColName();
+                int column = colNames.indexOf(colName);
+                // a key repeated in the batch, or already in the index, would make a put fail
+                List<DataBox> keys = new ArrayList<>();
+                for (Record record : added) {
+                    keys.add(record.getValue(column));
+                }
+                Collections.sort(keys);
+                for (int i = 0; i < keys.size(); ++i) {
+                    DataBox key = keys.get(i);
+                    if ((i > 0 && key.compareTo(keys.get(i - 1)) == 0) || tree.get(key).isPresent()) {
+                        throw new DatabaseException("duplicate key " + key + " for index on `" + tableName + "."
+                                                    + colName + "`");
+                    }
+                }
+                trees.add(tree);
+            }
+            List<RecordId> rids = tab.addRecords(added.iterator());
+
+            // each index gets its new entries in key order, so that consecutive puts
+            // go to the same leaf
+            for (BPlusTree tree : trees) {
+                int column = colNames.indexOf(tree.getMetadata().getColName());
+                List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+                for (int i = 0; i < rids.size(); ++i) {
+                    entries.add(new Pair<>(added.get(i).getValue(column), rids.get(i)));
+                }
+                entries.sort(Comparator.comparing(Pair::getFirst));
+                for (Pair<DataBox, RecordId> entry : entries) {
+                    tree.put(entry.getFirst(), entry.getSecond());
+                }
+            }
+            return rids;
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
             Table tab = getTable(tableName);
@@ -1013,6 +1324,9 @@ public class Database implements AutoCloseable {
         protected void startRollback() {
             recoveryManager.abort(transNum);
             this.cleanup();
+            // undoing the transaction's changes to data and header pages goes around
+            // the page directories, whose state must then be read again
+            tables.clear();
         }
 
         @Override
@@ -1035,7 +1349,7 @@ public class Database implements AutoCloseable {
         }
 
         @Override
-        public void createTable(Schema s, String tableName) {
+        public void createTable(Schema s, String tableName, TableFormat format) {
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1050,8 +1364,11 @@ public class Database implements AutoCloseable {
             }
             TableMetadata metadata = new TableMetadata(tableName);
             metadata.partNum = diskSpaceManager.allocPart();
+            // a partition freed other than by dropTable (by recovery) may still have a Table
+            tables.remove(metadata.partNum);
             metadata.pageNum = diskSpaceManager.allocPage(metadata.partNum);
             metadata.schema = s;
+            metadata.format = format;
             synchronized (tableMetadata) {
                 tableMetadata.addRecord(metadata.toRecord());
             }
@@ -1080,6 +1397,7 @@ public class Database implements AutoCloseable {
             synchronized(tableMetadata) {
                 metadata = new TableMetadata(tableMetadata.deleteRecord(rid));
             }
+            tables.remove(metadata.partNum);
             bufferManager.freePart(metadata.partNum);
         }
 
@@ -1121,7 +1439,7 @@ public class Database implements AutoCloseable {
                 throw new DatabaseException("index already exists on " + tableName + "(" + columnName + ")");
             }
 
-            int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, colType);
+            int order = BPlusTree.maxOrder(bufferManager.getEffectivePageSize(), colType);
             Record indexEntry = new Record(tableName, columnName, order,
                     diskSpaceManager.allocPart(),
                     diskSpaceManager.INVALID_PAGE_NUM,
@@ -1173,6 +1491,11 @@ public class Database implements AutoCloseable {
             transactionContext.addRecord(tableName, values);
         }
 
+        @Override
+        public void insertAll(String tableName, Iterator<Record> records) {
+            transactionContext.addRecords(tableName, records);
+        }
+
         @Override
         public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {
             update(tableName, targetColumnName, targetValue, null, null, null);
@@ -1209,6 +1532,7 @@ public class Database implements AutoCloseable {
         @Override
         public void rollbackToSavepoint(String savepointName) {
             recoveryManager.rollbackToSavepoint(transNum, savepointName);
+            tables.clear();
         }
 
         @Override
@@ -1302,9 +1626,7 @@ public class Database implements AutoCloseable {
             Table tb = tableFromMetadata(pair.getSecond());
 
             try (Transaction t = beginTransaction()) {
-                for (Record r : rows) {
-                    t.insert(name, r);
-                }
+                t.insertAll(name, rows.iterator());
             }
 
             // refresh histograms so that query cost estimation works
@@ -6,7 +6,9 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.TableFormat;
 
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
@@ -122,7 +124,18 @@ public abstract class Transaction implements AutoCloseable {
      * @param s schema of new table
      * @param tableName name of new table
      */
-    public abstract void createTable(Schema s, String tableName);
+    public void createTable(Schema s, String tableName) {
+        createTable(s, tableName, TableFormat.BITMAP);
+    }
+
+    /**
+     * Creates a table whose data pages are in the given format (see Table).
+     *
+     * @param s schema of new table
+     * @param tableName name of new table
+     * @param format format of the new table's data pages
+     */
+    public abstract void createTable(Schema s, String tableName, TableFormat format);
 
     /**
      * Drops a table. Equivalent to
@@ -205,6 +218,16 @@ public abstract class Transaction implements AutoCloseable {
      */
     public abstract void insert(String tableName, Record record);
 
+    /**
+     * Inserts rows into a table, like calling insert on each of them, but
+     * filling each data page before writing it and updating each index of the
+     * table with all the new rows at once.
+     *
+     * @param tableName name of table to insert into
+     * @param records the records to be inserted
+     */
+    public abstract void insertAll(String tableName, Iterator<Record> records);
+
     /**
      * Updates rows in a table. Equivalent to
      *      UPDATE tableName SET targetColumnName = targetValue(targetColumnName)
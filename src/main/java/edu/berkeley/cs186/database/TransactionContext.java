@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
@@ -11,6 +12,7 @@ import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Condition;
@@ -88,6 +90,23 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract int getWorkMemSize();
 
+    /**
+     * @return the space available for records on each page of a table
+     */
+    public abstract short getEffectivePageSize();
+
+    /**
+     * Returns this transaction's buffer ring, a small set of buffer frames sized
+     * from the work memory, if an operation reading or writing numPages pages is
+     * large enough that it should go through the ring instead of the shared buffer
+     * pool (see BufferRing).
+     *
+     * @param numPages number of pages the operation reads or writes
+     * @return this transaction's buffer ring, or null if the operation should use
+     * the shared buffer pool
+     */
+    public abstract BufferRing getBufferRing(int numPages);
+
     @Override
     public abstract void close();
 
@@ -100,6 +119,16 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract String createTempTable(Schema schema);
 
+    /**
+     * Create a temporary table within this transaction, whose pages are loaded
+     * through the given buffer ring rather than the shared buffer pool.
+     *
+     * @param schema the table schema
+     * @param ring ring to load the table's pages through, or null for the shared pool
+     * @return name of the tempTable
+     */
+    public abstract String createTempTable(Schema schema, BufferRing ring);
+
     /**
      * Deletes all temporary tables within this transaction.
      */
@@ -156,11 +185,26 @@ public abstract class TransactionContext implements AutoCloseable {
      */
     public abstract BacktrackingIterator<Record> getRecordIterator(String tableName);
 
+    /**
+     * Returns a backtracking iterator over all of the records in `tableName`,
+     * loading pages that are not in memory through `ring`.
+     */
+    public abstract BacktrackingIterator<Record> getRecordIterator(String tableName, BufferRing ring);
+
     public abstract boolean contains(String tableName, String columnName, DataBox key);
 
     // Record Operations ///////////////////////////////////////////////////////
     public abstract RecordId addRecord(String tableName, Record record);
 
+    /**
+     * Adds records to a table and its indices in batches (see Table#addRecords).
+     * If the table has indices, a record that does not match the table's schema,
+     * or a key that is repeated in the batch or already in one of the indices,
+     * fails the whole batch before any record is added.
+     * @return record ids of the records, in order
+     */
+    public abstract List<RecordId> addRecords(String tableName, Iterator<Record> records);
+
     public abstract RecordId deleteRecord(String tableName, RecordId rid);
 
     public abstract void deleteRecordWhere(String tableName, String predColumnName, PredicateOperator predOperator,
@@ -10,7 +10,13 @@ import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.cli.parser.TokenMgrError;
 import edu.berkeley.cs186.database.cli.visitor.StatementListVisitor;
 import edu.berkeley.cs186.database.concurrency.LockManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.DiskStats;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferStats;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.LatencyHistogram;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
@@ -165,6 +171,71 @@ public class CommandLineInterface {
         new PrettyPrinter(out).printSchema(s);
     }
 
+    private void printBufferStats(BufferManager bufferManager, DiskSpaceManager diskSpaceManager) {
+        BufferStats stats = bufferManager.getStats();
+        this.out.printf("Buffer size: %d pages (%d sub-pools)\n", bufferManager.getBufferSize(),
+                bufferManager.getNumPools());
+        this.out.printf("Hits: %d, misses: %d (%.2f%% hit ratio)\n", stats.getHits(), stats.getMisses(),
+                100 * stats.getHitRatio());
+        this.out.printf("Evictions: %d clean, %d dirty\n", stats.getCleanEvictions(), stats.getDirtyEvictions());
+        this.out.printf("Pin waits: %d (%.3f ms total)\n", stats.getPinWaits(), stats.getPinWaitNanos() / 1e6);
+        LatencyHistogram flushes = stats.getFlushLatency();
+        this.out.printf("Flushes: %d, mean %.1f us, p50 <= %d us, p99 <= %d us, max %.1f us\n",
+                flushes.getCount(), flushes.getMeanNanos() / 1e3, flushes.getPercentileNanos(50) / 1000,
+                flushes.getPercentileNanos(99) / 1000, flushes.getMaxNanos() / 1e3);
+        this.out.printf("Dirty pages: %d\n", bufferManager.getNumDirtyPages());
+        if (diskSpaceManager instanceof DiskSpaceManagerImpl) {
+            DiskStats diskStats = ((DiskSpaceManagerImpl) diskSpaceManager).getStats();
+            this.out.printf("Page writes: %d in %d write ops, %d syncs (write amplification %.2f ops/page)\n",
+                    diskStats.getPagesWritten(), diskStats.getWriteOps(), diskStats.getSyncs(),
+                    diskStats.getWriteAmplification());
+        }
+
+        Map<Integer, Integer> dirtyCounts = bufferManager.getDirtyPageCounts();
+        Set<Integer> partNums = new TreeSet<>(stats.getPartitions());
+        partNums.addAll(dirtyCounts.keySet());
+        List<Record> records = new ArrayList<>();
+        for (int partNum : partNums) {
+            records.add(new Record(partNum, stats.getHits(partNum), stats.getMisses(partNum),
+                    String.format("%.2f%%", 100 * stats.getHitRatio(partNum)),
+                    dirtyCounts.getOrDefault(partNum, 0)));
+        }
+        new PrettyPrinter(out).printRecords(Arrays.asList("partition", "hits", "misses", "hit_ratio", "dirty"),
+                records.iterator());
+    }
+
+    private void printDiskStats(Database db) {
+        if (!(db.getDiskSpaceManager() instanceof DiskSpaceManagerImpl)) {
+            this.out.println("No I/O statistics kept by this disk space manager.");
+            return;
+        }
+        DiskStats stats = ((DiskSpaceManagerImpl) db.getDiskSpaceManager()).getStats();
+        this.out.printf("Reads: %d pages (%d bytes), writes: %d pages (%d bytes) in %d write ops, %d syncs\n",
+                stats.getPagesRead(), stats.getBytesRead(), stats.getPagesWritten(), stats.getBytesWritten(),
+                stats.getWriteOps(), stats.getSyncs());
+        this.out.printf("Read latency: %s\n", stats.getReadLatency());
+        this.out.printf("Write latency: %s\n", stats.getWriteLatency());
+        this.out.printf("Sync latency: %s\n", stats.getSyncLatency());
+
+        Map<Integer, String> names = db.getPartitionNames();
+        List<Record> records = new ArrayList<>();
+        for (int partNum : stats.getPartitions()) {
+            LatencyHistogram reads = stats.getReadLatency(partNum);
+            LatencyHistogram writes = stats.getWriteLatency(partNum);
+            String name = names.getOrDefault(partNum,
+                    db.getDiskSpaceManager().isTempPart(partNum) ? "(temporary)" : "-");
+            records.add(new Record(partNum, name, stats.getPagesRead(partNum), stats.getBytesRead(partNum),
+                    reads.getPercentileNanos(50) / 1000, reads.getPercentileNanos(99) / 1000,
+                    reads.getMaxNanos() / 1000, stats.getPagesWritten(partNum), stats.getBytesWritten(partNum),
+                    stats.getWriteOps(partNum), writes.getPercentileNanos(50) / 1000,
+                    writes.getPercentileNanos(99) / 1000, writes.getMaxNanos() / 1000, stats.getSyncs(partNum),
+                    stats.getSyncLatency(partNum).getPercentileNanos(99) / 1000));
+        }
+        new PrettyPrinter(out).printRecords(Arrays.asList("partition", "name", "reads", "read_bytes",
+                "read_p50_us", "read_p99_us", "read_max_us", "writes", "write_bytes", "write_ops", "write_p50_us",
+                "write_p99_us", "write_max_us", "syncs", "sync_p99_us"), records.iterator());
+    }
+
     private void parseMetaCommand(String input, Database db) {
         input = input.substring(1); // Shave off the initial slash
         String[] tokens = input.split("\\s+");
@@ -189,6 +260,34 @@ public class CommandLineInterface {
             List<Record> records = db.scanIndexMetadataRecords();
             new PrettyPrinter(out).printRecords(db.getIndexInfoSchema().getFieldNames(),
                     records.iterator());
+        } else if (cmd.equals("buffer")) {
+            if (tokens.length == 2 && tokens[1].equals("reset")) {
+                db.getBufferManager().getStats().reset();
+                if (db.getDiskSpaceManager() instanceof DiskSpaceManagerImpl) {
+                    ((DiskSpaceManagerImpl) db.getDiskSpaceManager()).getStats().reset();
+                }
+                this.out.println("Buffer statistics reset.");
+            } else if (tokens.length == 3 && tokens[1].equals("resize")) {
+                int numPages;
+                try {
+                    numPages = Integer.parseInt(tokens[2]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("`%s` is not a number of pages", tokens[2]));
+                }
+                db.resizeBuffer(numPages);
+                this.out.printf("Buffer resized to %d pages.\n", numPages);
+            } else {
+                printBufferStats(db.getBufferManager(), db.getDiskSpaceManager());
+            }
+        } else if (cmd.equals("io")) {
+            if (tokens.length == 2 && tokens[1].equals("reset")) {
+                if (db.getDiskSpaceManager() instanceof DiskSpaceManagerImpl) {
+                    ((DiskSpaceManagerImpl) db.getDiskSpaceManager()).getStats().reset();
+                }
+                this.out.println("I/O statistics reset.");
+            } else {
+                printDiskStats(db);
+            }
         } else if (cmd.equals("locks")) {
             if (tc == null) {
                 this.out.println("No locks held, because not currently in a transaction.");
@@ -43,6 +43,10 @@ public class Server {
         // Use the following after completing project 5 (recovery)
         // Database db = new Database("demo", 25, new LockManager(), new ClockEvictionPolicy(), true);
 
+        // Use the following to split the buffer cache into sub-pools, so that clients
+        // fetching pages concurrently don't all wait on one buffer manager lock
+        // Database db = new Database("demo", 1024, new LockManager(), new Database.Options().bufferPools(4));
+
         Server server = new Server();
         server.listen(db);
         db.close();
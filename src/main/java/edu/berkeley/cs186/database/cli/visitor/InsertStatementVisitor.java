@@ -37,9 +37,7 @@ class InsertStatementVisitor extends StatementVisitor {
     @Override
     public void execute(Transaction transaction, PrintStream out) {
         try {
-            for (Record record: values) {
-                transaction.insert(this.tableName, record);
-            }
+            transaction.insertAll(this.tableName, values.iterator());
             out.println("INSERT");
         } catch (Exception e) {
             out.println(e.getMessage());
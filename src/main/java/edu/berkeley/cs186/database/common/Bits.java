@@ -1,8 +1,9 @@
 package edu.berkeley.cs186.database.common;
 
 /**
- * Utilities for getting, setting, and counting bits within a byte or array of
- * bytes.
+ * Utilities for getting, setting, counting and searching for bits within a byte
+ * or array of bytes. Counting and searching over arrays work a 64-bit word at a
+ * time.
  */
 public class Bits {
     public enum Bit { ZERO, ONE }
@@ -80,17 +81,113 @@ public class Bits {
      *   - countBits(0b11111101) == 7
      */
     public static int countBits(byte b) {
-        return Integer.bitCount(b);
+        return Integer.bitCount(b & 0xFF);
     }
 
     /**
      * Counts the number of set bits.
      */
     public static int countBits(byte[] bytes) {
+        return countBits(bytes, 0, bytes.length * 8);
+    }
+
+    /**
+     * Counts the number of set bits among bits from (inclusive) to to (exclusive),
+     * a 64-bit word at a time.
+     */
+    public static int countBits(byte[] bytes, int from, int to) {
+        checkRange(bytes, from, to);
+        if (from == to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
         int count = 0;
-        for (byte b : bytes) {
-            count += countBits(b);
+        for (int w = first; w <= last; ++w) {
+            long word = getWord(bytes, w);
+            if (w == first) {
+                word &= -1L >>> (from & 63);
+            }
+            if (w == last) {
+                word &= -1L << (-to & 63);
+            }
+            count += Long.bitCount(word);
         }
         return count;
     }
+
+    /**
+     * Finds the first set bit at or after from, and before to, a 64-bit word at a
+     * time. For example:
+     *
+     *   - nextSetBit(new byte[]{0b00000000, 0b00100000}, 0, 16) == 10
+     *   - nextSetBit(new byte[]{0b00000000, 0b00100000}, 11, 16) == 16
+     *
+     * @return index of the bit, or to if there is none
+     */
+    public static int nextSetBit(byte[] bytes, int from, int to) {
+        checkRange(bytes, from, to);
+        return nextBit(bytes, from, to, 0);
+    }
+
+    /**
+     * Finds the first unset bit at or after from, and before to, a 64-bit word at a
+     * time. For example:
+     *
+     *   - nextClearBit(new byte[]{(byte) 0b11111111, 0b01111111}, 0, 16) == 8
+     *   - nextClearBit(new byte[]{(byte) 0b11111111, 0b01111111}, 9, 16) == 16
+     *
+     * @return index of the bit, or to if there is none
+     */
+    public static int nextClearBit(byte[] bytes, int from, int to) {
+        checkRange(bytes, from, to);
+        return nextBit(bytes, from, to, -1L);
+    }
+
+    // Finds the first bit in [from, to) of the words xor flip that is set
+    private static int nextBit(byte[] bytes, int from, int to, long flip) {
+        if (from == to) {
+            return to;
+        }
+        int w = from >>> 6;
+        long word = (getWord(bytes, w) ^ flip) & (-1L >>> (from & 63));
+        while (word == 0) {
+            ++w;
+            if (w << 6 >= to) {
+                return to;
+            }
+            word = getWord(bytes, w) ^ flip;
+        }
+        return Math.min((w << 6) + Long.numberOfLeadingZeros(word), to);
+    }
+
+    /**
+     * Gets the wth 64 bits of a byte array as a long, with bit 64 * w (the most
+     * significant bit of byte 8 * w) as its most significant bit. Bits past the
+     * end of the array are 0.
+     */
+    private static long getWord(byte[] bytes, int w) {
+        int offset = w << 3;
+        if (offset + 8 <= bytes.length) {
+            return (bytes[offset] & 0xFFL) << 56 | (bytes[offset + 1] & 0xFFL) << 48
+                   | (bytes[offset + 2] & 0xFFL) << 40 | (bytes[offset + 3] & 0xFFL) << 32
+                   | (bytes[offset + 4] & 0xFFL) << 24 | (bytes[offset + 5] & 0xFFL) << 16
+                   | (bytes[offset + 6] & 0xFFL) << 8 | (bytes[offset + 7] & 0xFFL);
+        }
+        long word = 0;
+        for (int i = 0; i < 8; ++i) {
+            word <<= 8;
+            if (offset + i < bytes.length) {
+                word |= bytes[offset + i] & 0xFFL;
+            }
+        }
+        return word;
+    }
+
+    private static void checkRange(byte[] bytes, int from, int to) {
+        if (from < 0 || from > to || to > bytes.length * 8) {
+            String err = String.format("bytes.length = %d; from = %d; to = %d.", bytes.length, from, to);
+            throw new IllegalArgumentException(err);
+        }
+    }
 }
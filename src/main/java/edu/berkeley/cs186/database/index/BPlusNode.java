@@ -255,7 +255,7 @@ abstract class BPlusNode {
      */
     public static BPlusNode fromBytes(BPlusTreeMetadata metadata, BufferManager bufferManager,
                                       LockContext treeContext, long pageNum) {
-        Page p = bufferManager.fetchPage(treeContext, pageNum);
+        Page p = bufferManager.fetchPageForRead(treeContext, pageNum);
         try {
             Buffer buf = p.getBuffer();
             byte b = buf.get();
@@ -99,7 +99,7 @@ public class BPlusTree {
             throw new BPlusTreeException(msg);
         }
 
-        int maxOrder = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, metadata.getKeySchema());
+        int maxOrder = BPlusTree.maxOrder(bufferManager.getEffectivePageSize(), metadata.getKeySchema());
         if (metadata.getOrder() > maxOrder) {
             String msg = String.format(
                     "You cannot construct a B+ tree with order %d greater than the " +
@@ -439,12 +439,12 @@ public class BPlusTree {
         private LeafNode node;
         int pos;
         public BPlusTreeIterator(LeafNode node) {
-            this.node = node;
-            pos = 0;
+            this(node, 0);
         }
         public BPlusTreeIterator(LeafNode node, int pos) {
             this.node = node;
             this.pos = pos;
+            node.prefetchRightSibling();
         }
         @Override
         public boolean hasNext() {
@@ -466,6 +466,7 @@ public class BPlusTree {
             } else {
                 if(node.getRightSibling().isPresent()) {
                     node = node.getRightSibling().get();
+                    node.prefetchRightSibling();
                     pos = 0;
                     return next();
                 }
@@ -168,18 +168,26 @@ class InnerNode extends BPlusNode {
     }
 
     private void sync() {
-        page.pin();
+        byte[] newBytes = toBytes();
+        boolean changed;
+        // compare under a read pin, so that unchanged nodes never need exclusive access
+        page.pinForRead();
         try {
             Buffer b = page.getBuffer();
-            byte[] newBytes = toBytes();
             byte[] bytes = new byte[newBytes.length];
             b.get(bytes);
-            if (!Arrays.equals(bytes, newBytes)) {
-                page.getBuffer().put(toBytes());
-            }
+            changed = !Arrays.equals(bytes, newBytes);
         } finally {
             page.unpin();
         }
+        if (changed) {
+            page.pin();
+            try {
+                page.getBuffer().put(newBytes);
+            } finally {
+                page.unpin();
+            }
+        }
     }
 
     // Just for testing.
@@ -378,7 +386,7 @@ class InnerNode extends BPlusNode {
      */
     public static InnerNode fromBytes(BPlusTreeMetadata metadata,
                                       BufferManager bufferManager, LockContext treeContext, long pageNum) {
-        Page page = bufferManager.fetchPage(treeContext, pageNum);
+        Page page = bufferManager.fetchPageForRead(treeContext, pageNum);
         Buffer buf = page.getBuffer();
 
         byte nodeType = buf.get();
@@ -271,20 +271,36 @@ class LeafNode extends BPlusNode {
         return Optional.of(LeafNode.fromBytes(metadata, bufferManager, treeContext, pageNum));
     }
 
+    /**
+     * Asks the buffer manager to read the right sibling of this leaf, if any, ahead of
+     * time. Used by scans over the leaves.
+     */
+    void prefetchRightSibling() {
+        rightSibling.ifPresent(bufferManager::prefetch);
+    }
+
     /** Serializes this leaf to its page. */
     private void sync() {
-        page.pin();
+        byte[] newBytes = toBytes();
+        boolean changed;
+        // compare under a read pin, so that unchanged nodes never need exclusive access
+        page.pinForRead();
         try {
             Buffer b = page.getBuffer();
-            byte[] newBytes = toBytes();
             byte[] bytes = new byte[newBytes.length];
             b.get(bytes);
-            if (!Arrays.equals(bytes, newBytes)) {
-                page.getBuffer().put(toBytes());
-            }
+            changed = !Arrays.equals(bytes, newBytes);
         } finally {
             page.unpin();
         }
+        if (changed) {
+            page.pin();
+            try {
+                page.getBuffer().put(newBytes);
+            } finally {
+                page.unpin();
+            }
+        }
     }
 
     // Just for testing.
@@ -418,7 +434,7 @@ class LeafNode extends BPlusNode {
      */
     public static LeafNode fromBytes(BPlusTreeMetadata metadata, BufferManager bufferManager,
                                      LockContext treeContext, long pageNum) {
-        Page page = bufferManager.fetchPage(treeContext, pageNum);
+        Page page = bufferManager.fetchPageForRead(treeContext, pageNum);
         Buffer buf = page.getBuffer();
 
         byte nodeType = buf.get();
@@ -1,12 +1,27 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
 public interface DiskSpaceManager extends AutoCloseable {
-    short PAGE_SIZE = 4096; // size of a page in bytes
+    short PAGE_SIZE = 4096; // default size of a page in bytes, and the smallest allowed
+    int MAX_PAGE_SIZE = 32768; // largest allowed size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
 
     @Override
     void close();
 
+    /**
+     * Size of every page managed by this disk space manager, in bytes: a power of two
+     * from PAGE_SIZE to MAX_PAGE_SIZE, chosen when the database is created. The
+     * default implementation returns PAGE_SIZE.
+     *
+     * @return page size in bytes
+     */
+    default int getPageSize() {
+        return PAGE_SIZE;
+    }
+
     /**
      * Allocates a new partition.
      *
@@ -22,6 +37,28 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     int allocPart(int partNum);
 
+    /**
+     * Allocates a new temporary partition, whose contents never have to survive a
+     * crash or a restart. Its allocation, the allocation and freeing of its pages,
+     * writes to its pages (see isTempPart) and its freeing are not logged, and it is
+     * never synced; it should be freed before the database is closed. The default
+     * implementation allocates an ordinary partition.
+     *
+     * @return partition number of the new partition
+     */
+    default int allocTempPart() {
+        return allocPart();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return whether the partition was allocated with allocTempPart (and has not
+     * been freed since), in which case changes to its pages need not be logged
+     */
+    default boolean isTempPart(int partNum) {
+        return false;
+    }
+
     /**
      * Releases a partition from use.
 
@@ -65,6 +102,167 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Reads a page into a byte buffer, which may be direct. The page is read into
+     * the page of bytes starting at the buffer's position; the position itself is
+     * left unchanged. The default implementation goes through readPage(long, byte[]).
+     *
+     * @param page number of page to be read
+     * @param buf byte buffer with exactly a page of bytes remaining
+     */
+    default void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != getPageSize()) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
+        if (buf.hasArray() && buf.arrayOffset() + buf.position() == 0 && buf.array().length == getPageSize()) {
+            readPage(page, buf.array());
+            return;
+        }
+        byte[] bytes = new byte[getPageSize()];
+        readPage(page, bytes);
+        buf.duplicate().put(bytes);
+    }
+
+    /**
+     * Writes to a page from a byte buffer, which may be direct. The page of bytes
+     * starting at the buffer's position is written; the position itself is left
+     * unchanged. The default implementation goes through writePage(long, byte[]).
+     *
+     * @param page number of page to be written
+     * @param buf byte buffer with exactly a page of bytes remaining
+     */
+    default void writePage(long page, ByteBuffer buf) {
+        if (buf.remaining() != getPageSize()) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
+        if (buf.hasArray() && buf.arrayOffset() + buf.position() == 0 && buf.array().length == getPageSize()) {
+            writePage(page, buf.array());
+            return;
+        }
+        byte[] bytes = new byte[getPageSize()];
+        buf.duplicate().get(bytes);
+        writePage(page, bytes);
+    }
+
+    /**
+     * Starts reading a page, without waiting for it to be read. The page is read into
+     * the page of bytes starting at the buffer's position, as with readPage; the
+     * buffer must not be used until the returned future completes. The default
+     * implementation reads the page before returning.
+     *
+     * @param page number of page to be read
+     * @param buf byte buffer with exactly a page of bytes remaining
+     * @return future completed once the page has been read, or completed exceptionally
+     * (e.g. with a PageException) if it could not be
+     */
+    default CompletableFuture<Void> readPageAsync(long page, ByteBuffer buf) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            readPage(page, buf);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Starts writing a page, without waiting for it to be written. The page of bytes
+     * starting at the buffer's position is written, as with writePage; the buffer
+     * must not be modified until the returned future completes. A write started inside
+     * a write batch (see beginWriteBatch) belongs to the batch, as long as the batch
+     * is still open when the write is carried out. The default implementation writes
+     * the page before returning.
+     *
+     * @param page number of page to be written
+     * @param buf byte buffer with exactly a page of bytes remaining
+     * @return future completed once the page has been written, or completed exceptionally
+     * (e.g. with a PageException) if it could not be
+     */
+    default CompletableFuture<Void> writePageAsync(long page, ByteBuffer buf) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            writePage(page, buf);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Writes several pages, like calling writePage on each, but lets the disk space
+     * manager combine the writes: pages are written in (partition, page) order, runs
+     * of adjacent pages may be written by a single gathering write, and each partition
+     * is synced once. If a page cannot be written (e.g. it is not allocated), a
+     * PageException is thrown, and the other pages of its partition may not have been
+     * written. The default implementation writes the pages one at a time in a write
+     * batch.
+     *
+     * @param pages numbers of pages to be written
+     * @param bufs byte buffers with exactly a page of bytes remaining, with the new
+     *             contents of the page at the same index in pages
+     */
+    default void writePages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("writePages expects a buffer for each page");
+        }
+        beginWriteBatch();
+        try {
+            for (int i = 0; i < pages.length; ++i) {
+                writePage(pages[i], bufs[i]);
+            }
+        } finally {
+            endWriteBatch();
+        }
+    }
+
+    /**
+     * Starts a batch of page writes by the calling thread. Until the matching
+     * endWriteBatch, data pages the thread writes (or zeroes by allocating them)
+     * are not synced to disk one at a time; endWriteBatch syncs each partition
+     * written to once, and only then reports the pages to the recovery manager as
+     * written (RecoveryManager#diskIOHook), so the dirty page table never forgets
+     * a page before it is durable. A page that may have changed again since the
+     * batch wrote it (see setWrittenPageCheck) is not reported, since its newer
+     * changes are not on disk. Writes to the log partition are always synced
+     * immediately, so the log still reaches disk before the data pages it covers.
+     * Batches may be nested; only the outermost one syncs. The default
+     * implementation does nothing, for disk space managers that do not sync.
+     */
+    default void beginWriteBatch() {}
+
+    /**
+     * Ends a batch of page writes started by beginWriteBatch, syncing every
+     * partition written to by the batch if it is the outermost one.
+     */
+    default void endWriteBatch() {}
+
+    /**
+     * Decides, once a write batch has synced a page, whether the page is reported
+     * to the recovery manager as written.
+     */
+    @FunctionalInterface
+    interface WrittenPageCheck {
+        /**
+         * Runs report unless the page may have changed since it was written,
+         * keeping it from changing until report returns.
+         * @param page number of page written by the batch
+         * @param pageLSN pageLSN of the page as it was written
+         * @param report tells the recovery manager that the page is on disk
+         */
+        void reportIfUnchanged(long page, long pageLSN, Runnable report);
+    }
+
+    /**
+     * Sets the check endWriteBatch makes before reporting each page the batch
+     * wrote. Without one, every page is reported. The default implementation does
+     * nothing, as pages are never reported late.
+     *
+     * @param check check to make, typically by the buffer manager caching the pages
+     */
+    default void setWrittenPageCheck(WrittenPageCheck check) {}
+
     /**
      * Checks if a page is allocated
      *
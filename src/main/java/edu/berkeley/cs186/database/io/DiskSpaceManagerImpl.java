@@ -1,13 +1,28 @@
 package edu.berkeley.cs186.database.io;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -23,13 +38,28 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * Each header page stores a bitmap, indicating whether each of the data pages has been allocated,
  * and manages 32K pages. The master page stores 16-bit integers for each of the header pages indicating
- * the number of data pages that have been allocated under the header page (managing 2K header pages).
- * A single partition may therefore have a maximum of 64M data pages.
+ * the number of data pages that have been allocated under the header page (managing 2K - 1 header pages),
+ * followed by the page size. A single partition may therefore have a maximum of almost 64M data pages.
  *
- * Master and header pages are cached permanently in memory; changes to these are immediately flushed to
- * disk. This imposes a fairly small memory overhead (128M partitions have 2 pages cached). This caching
+ * The page size is chosen when the database is created, and is the same for every partition: any power
+ * of two from 4K (PAGE_SIZE) to 32K (MAX_PAGE_SIZE). The layout above does not depend on it: with larger
+ * pages, only the first 4K of the master page and of each header page are used. Partition files written
+ * before the page size was stored have 0 in its place, and 4K pages.
+ *
+ * Master and header pages are cached permanently in memory; changes to these are written to disk the
+ * next time the partition is synced (or closed), so that allocating and freeing pages costs no I/O of its
+ * own. This imposes a fairly small memory overhead (128M partitions have 2 pages cached). This caching
  * is done separately from the buffer manager's caching.
  *
+ * Pages are allocated from extents: a partition reserves a run of free, adjacent data pages (zeroing
+ * them with a single write) and hands them out in order, so that a growing partition stays contiguous
+ * on disk. Extents start at MIN_EXTENT_PAGES pages and double in size up to MAX_EXTENT_PAGES. The
+ * reservation itself is only kept in memory.
+ *
+ * Temporary partitions (allocTempPart) are not backed by a partition file: see TempPartitionHandle.
+ * Their pages spill to scratch files named temp-<partition number>, which are deleted when the
+ * partition is freed, or on startup if left behind by a crash.
+ *
  * Virtual page numbers are 64-bit integers (Java longs) assigned to data pages in the following format:
  *       partition number * 10^10 + n
  * for the n-th data page of the partition (indexed from 0). This particular format (instead of a simpler
@@ -46,12 +76,20 @@ import java.util.concurrent.locks.ReentrantLock;
  * - etc.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
-    static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
+    static final int MAX_HEADER_PAGES = PAGE_SIZE / 2 - 1; // 2 bytes per header page, and 2 for the page size
     static final int DATA_PAGES_PER_HEADER = PAGE_SIZE * 8; // 1 bit per data page
+    static final int MIN_EXTENT_PAGES = 4;
+    static final int MAX_EXTENT_PAGES = 64;
+
+    // Default number of temporary partition pages kept in memory
+    static final int DEFAULT_TEMP_MEMORY_PAGES = 4096;
 
     // Name of base directory.
     private String dbDir;
 
+    // Size of every page, in bytes
+    private int pageSize;
+
     // Info about each partition.
     private Map<Integer, PartitionHandle> partInfo;
 
@@ -64,6 +102,38 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     // recovery manager
     private RecoveryManager recoveryManager;
 
+    // Number of threads carrying out asynchronous reads and writes
+    static final int NUM_IO_THREADS = 4;
+
+    // Threads carrying out asynchronous reads and writes, started on first use
+    private ExecutorService ioExecutor;
+
+    // Data page read, write and sync counters
+    private final DiskStats stats = new DiskStats();
+
+    // Memory available to temporary partitions, and the temporary partitions
+    private final TempPartitionHandle.MemoryBudget tempMemory =
+        new TempPartitionHandle.MemoryBudget(DEFAULT_TEMP_MEMORY_PAGES);
+    private final Set<Integer> tempParts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Data pages written by a thread inside a write batch and not yet synced, per
+     * partition and with the pageLSN each was last written with, along with how
+     * deeply the thread's batches are nested. Asynchronous writes started by the
+     * thread also add to its batch, so the batch is only accessed while
+     * synchronized on it.
+     */
+    private static class WriteBatch {
+        private int depth = 0;
+        private final Map<Integer, Map<Integer, Long>> unsynced = new TreeMap<>();
+    }
+
+    // Write batch of each thread that has one open
+    private final ThreadLocal<WriteBatch> writeBatch = new ThreadLocal<>();
+
+    // Check made before reporting a page written by a write batch to the recovery manager
+    private volatile WrittenPageCheck writtenPageCheck = (page, pageLSN, report) -> report.run();
+
     /**
      * Initialize the disk space manager using the given directory. Creates the directory
      * if not present.
@@ -71,7 +141,24 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
      * @param dbDir base directory of the database
      */
     public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager) {
+        this(dbDir, recoveryManager, PAGE_SIZE);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory, with pages of the given
+     * size. Creates the directory if not present. If the directory already has partitions,
+     * their page size is used instead.
+     *
+     * @param dbDir base directory of the database
+     * @param pageSize size of pages in bytes, a power of two from PAGE_SIZE to MAX_PAGE_SIZE
+     */
+    public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager, int pageSize) {
+        if (pageSize < PAGE_SIZE || pageSize > MAX_PAGE_SIZE || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("page size must be a power of two from " + PAGE_SIZE + " to "
+                                               + MAX_PAGE_SIZE + ", not " + pageSize);
+        }
         this.dbDir = dbDir;
+        this.pageSize = pageSize;
         this.recoveryManager = recoveryManager;
         this.partInfo = new HashMap<>();
         this.partNumCounter = new AtomicInteger(0);
@@ -89,6 +176,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new PageException("could not initialize disk space manager - directory is a file");
             }
             for (File f : files) {
+                if (f.getName().matches("temp-\\d+")) {
+                    // scratch file of a temporary partition
+                    if (!f.delete()) {
+                        throw new PageException("could not clean up scratch file - " + f.getName());
+                    }
+                    continue;
+                }
+                if (!f.getName().matches("\\d+")) {
+                    // not a partition (e.g. the buffer manager's warm-up list)
+                    continue;
+                }
                 if (f.length() == 0) {
                     if (!f.delete()) {
                         throw new PageException("could not clean up unused file - " + f.getName());
@@ -96,9 +194,13 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                     continue;
                 }
                 int fileNum = Integer.parseInt(f.getName());
+                if (maxFileNum == -1) {
+                    // the first partition found decides the page size, and the rest must agree
+                    this.pageSize = PartitionHandle.readPageSize(f);
+                }
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = this.newPartitionHandle(fileNum, recoveryManager);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -106,8 +208,68 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    /**
+     * Creates the handle of a partition, which is opened afterwards. Subclasses may
+     * return handles that access partition files differently. Called from the
+     * constructor, for each existing partition.
+     *
+     * @param partNum partition number
+     * @param recoveryManager recovery manager
+     * @return handle for the partition
+     */
+    PartitionHandle newPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new PartitionHandle(partNum, recoveryManager, this.stats, this.pageSize);
+    }
+
+    @Override
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * @return counters of data page reads, writes and syncs, in total and per partition
+     */
+    public DiskStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Sets how many pages of temporary partitions, across all of them, are kept in
+     * memory before further pages spill to scratch files. Pages already in memory
+     * stay there.
+     *
+     * @param numPages number of pages
+     */
+    public void setTempMemoryPages(int numPages) {
+        if (numPages < 0) {
+            throw new IllegalArgumentException("cannot keep a negative number of pages in memory");
+        }
+        this.tempMemory.setMaxPages(numPages);
+    }
+
+    /**
+     * @return number of pages of temporary partitions currently kept in memory
+     */
+    public int getTempMemoryPagesUsed() {
+        return this.tempMemory.getUsedPages();
+    }
+
     @Override
     public void close() {
+        ExecutorService ioExecutor;
+        synchronized (this) {
+            ioExecutor = this.ioExecutor;
+            this.ioExecutor = null;
+        }
+        if (ioExecutor != null) {
+            // let outstanding reads and writes finish
+            ioExecutor.shutdown();
+            try {
+                ioExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         for (Map.Entry<Integer, PartitionHandle> part : this.partInfo.entrySet()) {
             try {
                 part.getValue().close();
@@ -128,6 +290,29 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         return this.allocPartHelper(partNum);
     }
 
+    @Override
+    public int allocTempPart() {
+        int partNum = this.partNumCounter.getAndIncrement();
+        TempPartitionHandle pi = new TempPartitionHandle(partNum, this.tempMemory, this.stats, this.pageSize);
+        pi.open(dbDir + "/temp-" + partNum);
+        this.managerLock.lock();
+        try {
+            if (this.partInfo.containsKey(partNum)) {
+                throw new IllegalStateException("partition number " + partNum + " already exists");
+            }
+            this.partInfo.put(partNum, pi);
+            this.tempParts.add(partNum);
+        } finally {
+            this.managerLock.unlock();
+        }
+        return partNum;
+    }
+
+    @Override
+    public boolean isTempPart(int partNum) {
+        return this.tempParts.contains(partNum);
+    }
+
     private int allocPartHelper(int partNum) {
         PartitionHandle pi;
 
@@ -137,7 +322,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = this.newPartitionHandle(partNum, recoveryManager);
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -175,6 +360,22 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
+            WriteBatch batch = this.writeBatch.get();
+            if (batch != null) {
+                synchronized (batch) {
+                    batch.unsynced.remove(partNum);
+                }
+            }
+            if (this.tempParts.remove(partNum)) {
+                // nothing to log, and the scratch file goes with the handle
+                try {
+                    pi.close();
+                } catch (IOException e) {
+                    throw new PageException("could not close partition " + partNum + ": " + e.getMessage());
+                }
+                return;
+            }
+
             try {
                 pi.freeDataPages();
                 pi.close();
@@ -207,8 +408,8 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
+            // pages of an extent are zeroed when it is reserved
             int pageNum = pi.allocPage();
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -234,7 +435,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.allocPage(headerIndex, pageIndex);
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            this.writePageHelper(pi, partNum, pageNum, ByteBuffer.wrap(new byte[this.pageSize]), this.writeBatch.get());
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -266,7 +467,15 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
     @Override
     public void readPage(long page, byte[] buf) {
-        if (buf.length != PAGE_SIZE) {
+        if (buf.length != this.pageSize) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
+        this.readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != this.pageSize) {
             throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -280,7 +489,9 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
-            pi.readPage(pageNum, buf);
+            long start = System.nanoTime();
+            pi.readPage(pageNum, buf.duplicate());
+            this.stats.recordRead(partNum, this.pageSize, System.nanoTime() - start);
         } catch (IOException e) {
             throw new PageException("could not read partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -290,7 +501,20 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
     @Override
     public void writePage(long page, byte[] buf) {
-        if (buf.length != PAGE_SIZE) {
+        if (buf.length != this.pageSize) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
+        this.writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) {
+        this.writePage(page, buf, this.writeBatch.get());
+    }
+
+    // Writes a page, as part of the given write batch (if not null).
+    private void writePage(long page, ByteBuffer buf, WriteBatch batch) {
+        if (buf.remaining() != this.pageSize) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -304,7 +528,120 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
-            pi.writePage(pageNum, buf);
+            this.writePageHelper(pi, partNum, pageNum, buf.duplicate(), batch);
+        } catch (IOException e) {
+            throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
+        } finally {
+            pi.partitionLock.unlock();
+        }
+    }
+
+    // Writes a data page of a partition whose lock is held, leaving the sync to the end
+    // of the given write batch if it is not null and still open.
+    private void writePageHelper(PartitionHandle pi, int partNum, int pageNum, ByteBuffer buf,
+                                 WriteBatch batch) throws IOException {
+        if (batch != null && partNum != LogManager.LOG_PARTITION) {
+            synchronized (batch) {
+                if (batch.depth > 0) {
+                    long pageLSN = getPageLSN(buf);
+                    pi.writePageUnsynced(pageNum, buf);
+                    batch.unsynced.computeIfAbsent(partNum, p -> new TreeMap<>()).put(pageNum, pageLSN);
+                    return;
+                }
+            }
+        }
+        pi.writePage(pageNum, buf);
+    }
+
+    /**
+     * Writes the pages of each partition with one gathering write per run of
+     * adjacent pages, and syncs each partition once (or leaves the syncs to the
+     * current write batch). Different partitions are written concurrently.
+     */
+    @Override
+    public void writePages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("writePages expects a buffer for each page");
+        }
+        // sort by (partition, page), which is the order of virtual page numbers
+        Integer[] order = new Integer[pages.length];
+        for (int i = 0; i < pages.length; ++i) {
+            if (bufs[i].remaining() != this.pageSize) {
+                throw new IllegalArgumentException("writePages expects page-sized buffers");
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> pages[i]));
+
+        WriteBatch batch = this.writeBatch.get();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        RuntimeException error = null;
+        int start = 0;
+        while (start < order.length) {
+            int partNum = DiskSpaceManager.getPartNum(pages[order[start]]);
+            int end = start + 1;
+            while (end < order.length && DiskSpaceManager.getPartNum(pages[order[end]]) == partNum) {
+                ++end;
+            }
+            int[] pageNums = new int[end - start];
+            ByteBuffer[] partBufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; ++i) {
+                pageNums[i - start] = DiskSpaceManager.getPageNum(pages[order[i]]);
+                partBufs[i - start] = bufs[order[i]].duplicate();
+            }
+            if (end == order.length) {
+                // the last partition is written by the calling thread
+                try {
+                    this.writePartitionPages(partNum, pageNums, partBufs, batch);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            } else {
+                writes.add(CompletableFuture.runAsync(() -> this.writePartitionPages(partNum, pageNums, partBufs,
+                        batch), this.getIOExecutor()));
+            }
+            start = end;
+        }
+        // wait for every partition, even if one of them failed
+        for (CompletableFuture<Void> write : writes) {
+            try {
+                write.join();
+            } catch (CompletionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Writes data pages of a partition, as part of the given write batch (if not null).
+    private void writePartitionPages(int partNum, int[] pageNums, ByteBuffer[] bufs, WriteBatch batch) {
+        this.managerLock.lock();
+        PartitionHandle pi;
+        try {
+            pi = getPartInfo(partNum);
+            pi.partitionLock.lock();
+        } finally {
+            this.managerLock.unlock();
+        }
+        try {
+            Map<Integer, Long> written = new TreeMap<>();
+            for (int i = 0; i < pageNums.length; ++i) {
+                written.put(pageNums[i], getPageLSN(bufs[i]));
+            }
+            pi.writePagesUnsynced(pageNums, bufs);
+            if (batch != null && partNum != LogManager.LOG_PARTITION) {
+                synchronized (batch) {
+                    if (batch.depth > 0) {
+                        batch.unsynced.computeIfAbsent(partNum, p -> new TreeMap<>()).putAll(written);
+                        return;
+                    }
+                }
+            }
+            pi.sync(written.keySet());
         } catch (IOException e) {
             throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -312,6 +649,88 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> readPageAsync(long page, ByteBuffer buf) {
+        return CompletableFuture.runAsync(() -> this.readPage(page, buf), this.getIOExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> writePageAsync(long page, ByteBuffer buf) {
+        WriteBatch batch = this.writeBatch.get();
+        return CompletableFuture.runAsync(() -> this.writePage(page, buf, batch), this.getIOExecutor());
+    }
+
+    private synchronized ExecutorService getIOExecutor() {
+        if (this.ioExecutor == null) {
+            this.ioExecutor = Executors.newFixedThreadPool(NUM_IO_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "disk-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.ioExecutor;
+    }
+
+    // pageLSN of a page about to be written from buf
+    private static long getPageLSN(ByteBuffer buf) {
+        return buf.getLong(buf.position() + BufferManager.PAGE_LSN_OFFSET);
+    }
+
+    @Override
+    public void beginWriteBatch() {
+        WriteBatch batch = this.writeBatch.get();
+        if (batch == null) {
+            batch = new WriteBatch();
+            this.writeBatch.set(batch);
+        }
+        synchronized (batch) {
+            ++batch.depth;
+        }
+    }
+
+    @Override
+    public void endWriteBatch() {
+        WriteBatch batch = this.writeBatch.get();
+        if (batch == null) {
+            throw new IllegalStateException("no write batch to end");
+        }
+        synchronized (batch) {
+            if (--batch.depth > 0) {
+                return;
+            }
+        }
+        // asynchronous writes carried out from now on are synced on their own
+        this.writeBatch.remove();
+        WrittenPageCheck check = this.writtenPageCheck;
+        for (Map.Entry<Integer, Map<Integer, Long>> entry : batch.unsynced.entrySet()) {
+            int partNum = entry.getKey();
+            this.managerLock.lock();
+            PartitionHandle pi;
+            try {
+                pi = this.partInfo.get(partNum);
+                if (pi == null) {
+                    // freed by another thread since: nothing left to sync
+                    continue;
+                }
+                pi.partitionLock.lock();
+            } finally {
+                this.managerLock.unlock();
+            }
+            try {
+                pi.sync(entry.getValue(), check);
+            } catch (IOException e) {
+                throw new PageException("could not sync partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void setWrittenPageCheck(WrittenPageCheck check) {
+        this.writtenPageCheck = check;
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
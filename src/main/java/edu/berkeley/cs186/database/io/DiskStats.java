@@ -0,0 +1,283 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.memory.LatencyHistogram;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a disk space manager on the reads and writes of data pages,
+ * in total and per partition: how many pages were read and written, how many bytes
+ * that was, how many write operations it took to write them (a gathering write
+ * of a run of adjacent pages is one operation), how many times a partition was
+ * synced, and the latency of reads, write operations and syncs. Master and header
+ * page reads and writes are not counted, except as part of the syncs that write
+ * them out. Every counter is a LongAdder; reads are not atomic snapshots.
+ *
+ * Obtained with DiskSpaceManagerImpl#getStats.
+ */
+public class DiskStats {
+    /**
+     * Counters of a single partition.
+     */
+    private static class PartitionCounters {
+        private final LongAdder pagesRead = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder pagesWritten = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder writeOps = new LongAdder();
+        private final LongAdder syncs = new LongAdder();
+        private final LatencyHistogram readLatency = new LatencyHistogram();
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        private final LatencyHistogram syncLatency = new LatencyHistogram();
+    }
+
+    private final Map<Integer, PartitionCounters> partitions = new ConcurrentHashMap<>();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+
+    DiskStats() {}
+
+    private PartitionCounters counters(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        if (counters == null) {
+            counters = this.partitions.computeIfAbsent(partNum, p -> new PartitionCounters());
+        }
+        return counters;
+    }
+
+    void recordRead(int partNum, int numBytes, long nanos) {
+        PartitionCounters counters = this.counters(partNum);
+        counters.pagesRead.increment();
+        counters.bytesRead.add(numBytes);
+        counters.readLatency.record(nanos);
+        this.readLatency.record(nanos);
+    }
+
+    void recordWrite(int partNum, int numPages, long numBytes, long nanos) {
+        PartitionCounters counters = this.counters(partNum);
+        counters.pagesWritten.add(numPages);
+        counters.bytesWritten.add(numBytes);
+        counters.writeOps.increment();
+        counters.writeLatency.record(nanos);
+        this.writeLatency.record(nanos);
+    }
+
+    void recordSync(int partNum, long nanos) {
+        PartitionCounters counters = this.counters(partNum);
+        counters.syncs.increment();
+        counters.syncLatency.record(nanos);
+        this.syncLatency.record(nanos);
+    }
+
+    /**
+     * @return the partitions with at least one data page read or written, or one
+     * sync, in order
+     */
+    public SortedSet<Integer> getPartitions() {
+        return new TreeSet<>(this.partitions.keySet());
+    }
+
+    /**
+     * @return number of data pages read
+     */
+    public long getPagesRead() {
+        long pages = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            pages += counters.pagesRead.sum();
+        }
+        return pages;
+    }
+
+    /**
+     * @return number of bytes of data pages read
+     */
+    public long getBytesRead() {
+        long bytes = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            bytes += counters.bytesRead.sum();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of data pages written
+     */
+    public long getPagesWritten() {
+        long pages = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            pages += counters.pagesWritten.sum();
+        }
+        return pages;
+    }
+
+    /**
+     * @return number of bytes of data pages written
+     */
+    public long getBytesWritten() {
+        long bytes = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            bytes += counters.bytesWritten.sum();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of write operations issued to write data pages
+     */
+    public long getWriteOps() {
+        long ops = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            ops += counters.writeOps.sum();
+        }
+        return ops;
+    }
+
+    /**
+     * @return number of times a partition was synced to disk
+     */
+    public long getSyncs() {
+        long syncs = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            syncs += counters.syncs.sum();
+        }
+        return syncs;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of data pages of the partition read
+     */
+    public long getPagesRead(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.pagesRead.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of bytes of data pages of the partition read
+     */
+    public long getBytesRead(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.bytesRead.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of data pages of the partition written
+     */
+    public long getPagesWritten(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.pagesWritten.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of bytes of data pages of the partition written
+     */
+    public long getBytesWritten(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.bytesWritten.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of write operations issued to write data pages of the partition
+     */
+    public long getWriteOps(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.writeOps.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of times the partition was synced to disk
+     */
+    public long getSyncs(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.syncs.sum();
+    }
+
+    /**
+     * @return histogram of the time taken to read a data page
+     */
+    public LatencyHistogram getReadLatency() {
+        return this.readLatency;
+    }
+
+    /**
+     * @return histogram of the time taken by a write operation (of one page, or of a
+     * run of adjacent pages)
+     */
+    public LatencyHistogram getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    /**
+     * @return histogram of the time taken to sync a partition, including writing out
+     * its master and header pages
+     */
+    public LatencyHistogram getSyncLatency() {
+        return this.syncLatency;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return histogram of the time taken to read a data page of the partition
+     */
+    public LatencyHistogram getReadLatency(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? new LatencyHistogram() : counters.readLatency;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return histogram of the time taken by a write operation on the partition
+     */
+    public LatencyHistogram getWriteLatency(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? new LatencyHistogram() : counters.writeLatency;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return histogram of the time taken to sync the partition
+     */
+    public LatencyHistogram getSyncLatency(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? new LatencyHistogram() : counters.syncLatency;
+    }
+
+    /**
+     * Write amplification, as the number of write and sync operations per data page
+     * written: 2 when every page is written and synced on its own, and approaching 0
+     * as pages are written in runs and synced together.
+     *
+     * @return operations per page written, or 0 if no pages were written
+     */
+    public double getWriteAmplification() {
+        long pages = this.getPagesWritten();
+        return pages == 0 ? 0 : (double) (this.getWriteOps() + this.getSyncs()) / pages;
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        this.partitions.clear();
+        this.readLatency.reset();
+        this.writeLatency.reset();
+        this.syncLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pages read=%d pages written=%d write ops=%d syncs=%d (%.2f ops/page) " +
+                "reads: %s writes: %s syncs: %s", getPagesRead(), getPagesWritten(), getWriteOps(),
+                getSyncs(), getWriteAmplification(), getReadLatency(), getWriteLatency(), getSyncLatency());
+    }
+}
@@ -0,0 +1,42 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * A disk space manager that lays out partitions exactly like DiskSpaceManagerImpl
+ * (the two can open each other's files), but reads and writes data pages through
+ * memory mappings of the partition files (see MappedPartitionHandle). Reading or
+ * writing a page is then a memory copy rather than a system call; syncing a page
+ * forces the mapped chunk it is in.
+ *
+ * Mapped files grow a chunk at a time, so a partition file may be larger than the
+ * pages allocated in it (the extra space is sparse on most file systems).
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory, with pages of the given
+     * size. Creates the directory if not present. If the directory already has partitions,
+     * their page size is used instead.
+     *
+     * @param dbDir base directory of the database
+     * @param pageSize size of pages in bytes, a power of two from PAGE_SIZE to MAX_PAGE_SIZE
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager, int pageSize) {
+        super(dbDir, recoveryManager, pageSize);
+    }
+
+    @Override
+    PartitionHandle newPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new MappedPartitionHandle(partNum, recoveryManager, this.getStats(), this.getPageSize());
+    }
+}
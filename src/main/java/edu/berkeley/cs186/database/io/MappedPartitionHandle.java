@@ -0,0 +1,138 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Partition handle that reads and writes data pages through memory mappings of
+ * the partition file instead of positional channel reads and writes, so that a
+ * page read or write is a plain memory copy. The file is mapped in chunks of
+ * CHUNK_PAGES pages, each mapped the first time a page in it is used; mapping a
+ * chunk past the end of the file grows the file to cover it. Master and header
+ * pages are still read and written through the file channel, which shares the
+ * OS page cache with the mappings.
+ *
+ * Chunks are only unmapped once garbage collected, since Java has no way to
+ * unmap a buffer explicitly.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // Number of pages (of the file, including header pages) per mapped chunk
+    static final int CHUNK_PAGES = 1024;
+
+    // Size of a mapped chunk in bytes
+    private final long chunkSize;
+
+    // Mapped chunks of the file, by chunk index; null until first used
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    // Chunks written to since they were last forced
+    private final BitSet dirtyChunks = new BitSet();
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager, DiskStats stats, int pageSize) {
+        super(partNum, recoveryManager, stats, pageSize);
+        this.chunkSize = (long) CHUNK_PAGES * pageSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            this.chunks = new MappedByteBuffer[0];
+            this.dirtyChunks.clear();
+        } finally {
+            this.partitionLock.unlock();
+        }
+        super.close();
+    }
+
+    /**
+     * Returns a view of a data page in its mapped chunk, mapping the chunk if needed.
+     * Assumes that the partition lock is held.
+     * @param pageNum data page number
+     * @return buffer positioned at the start of the page, with a page remaining
+     */
+    private ByteBuffer pageView(int pageNum) throws IOException {
+        long offset = this.dataPageOffset(pageNum);
+        int chunkIndex = (int) (offset / this.chunkSize);
+        if (chunkIndex >= this.chunks.length) {
+            this.chunks = Arrays.copyOf(this.chunks, Math.max(chunkIndex + 1, 2 * this.chunks.length));
+        }
+        MappedByteBuffer chunk = this.chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * this.chunkSize, this.chunkSize);
+            this.chunks[chunkIndex] = chunk;
+        }
+        ByteBuffer view = chunk.duplicate();
+        int position = (int) (offset - chunkIndex * this.chunkSize);
+        view.position(position);
+        view.limit(position + this.pageSize);
+        return view;
+    }
+
+    @Override
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        buf.put(this.pageView(pageNum));
+    }
+
+    @Override
+    void writePageUnsynced(int pageNum, ByteBuffer buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        ByteBuffer view = this.pageView(pageNum);
+        long start = System.nanoTime();
+        view.put(buf);
+        this.dirtyChunks.set((int) (this.dataPageOffset(pageNum) / this.chunkSize));
+        this.stats.recordWrite(this.partNum, 1, this.pageSize, System.nanoTime() - start);
+    }
+
+    @Override
+    void writePagesUnsynced(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        // a write into a mapping is a memory copy, so there is nothing to gather
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            this.writePageUnsynced(pageNums[i], bufs[i]);
+        }
+    }
+
+    @Override
+    void zeroPages(int pageNum, int numPages) throws IOException {
+        byte[] zeros = new byte[this.pageSize];
+        long start = System.nanoTime();
+        for (int i = pageNum; i < pageNum + numPages; ++i) {
+            this.pageView(i).put(zeros);
+            this.dirtyChunks.set((int) (this.dataPageOffset(i) / this.chunkSize));
+        }
+        this.stats.recordWrite(this.partNum, numPages, (long) numPages * this.pageSize,
+                               System.nanoTime() - start);
+    }
+
+    @Override
+    void force() throws IOException {
+        // master and header pages are written through the channel
+        long start = System.nanoTime();
+        if (this.writeMetadata()) {
+            this.fileChannel.force(false);
+            this.stats.recordSync(this.partNum, System.nanoTime() - start);
+        }
+        for (int i = this.dirtyChunks.nextSetBit(0); i >= 0; i = this.dirtyChunks.nextSetBit(i + 1)) {
+            start = System.nanoTime();
+            this.chunks[i].force();
+            this.stats.recordSync(this.partNum, System.nanoTime() - start);
+        }
+        this.dirtyChunks.clear();
+    }
+}
@@ -5,17 +5,23 @@ import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER;
+import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.MAX_EXTENT_PAGES;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.MAX_HEADER_PAGES;
+import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.MIN_EXTENT_PAGES;
 
 class PartitionHandle implements AutoCloseable {
     // Lock on the partition.
@@ -23,7 +29,7 @@ class PartitionHandle implements AutoCloseable {
 
     // Underlying OS file/file channel.
     private RandomAccessFile file;
-    private FileChannel fileChannel;
+    FileChannel fileChannel;
 
     // Contents of the master page of this partition
     // Ideally would be an unsigned short array but Java doesn't have unsigned types
@@ -32,18 +38,56 @@ class PartitionHandle implements AutoCloseable {
     // Contents of the various header pages of this partition
     private byte[][] headerPages;
 
+    // Per header page, a data page index below which every page is allocated
+    private int[] freeHints;
+
+    // Whether the master page, and which header pages, changed since last written
+    private boolean masterPageDirty;
+    private final BitSet dirtyHeaderPages = new BitSet();
+
+    // Reserved extent: the data pages from extentNext up to (excluding) extentEnd
+    // are zeroed, and handed out by allocPage() in order if still free
+    private int extentNext;
+    private int extentEnd;
+
+    // Size of the next extent to reserve
+    private int extentPages = MIN_EXTENT_PAGES;
+
     // Recovery manager
     private RecoveryManager recoveryManager;
 
     // Partition number
-    private int partNum;
+    final int partNum;
+
+    // Read, write and sync counters of the disk space manager
+    final DiskStats stats;
+
+    // Size of every page of the partition, in bytes
+    final int pageSize;
 
-    PartitionHandle(int partNum, RecoveryManager recoveryManager) {
+    PartitionHandle(int partNum, RecoveryManager recoveryManager, DiskStats stats, int pageSize) {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
+        this.freeHints = new int[MAX_HEADER_PAGES];
         this.partitionLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
+        this.stats = stats;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Reads the page size stored in the master page of a partition file.
+     * @param file OS file partition is stored in
+     * @return page size in bytes
+     */
+    static int readPageSize(File file) {
+        try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+            f.seek(PartitionHandle.pageSizeOffset());
+            return PartitionHandle.decodePageSize(f.readShort());
+        } catch (IOException e) {
+            throw new PageException("Could not read file: " + e.getMessage());
+        }
     }
 
     /**
@@ -63,14 +107,21 @@ class PartitionHandle implements AutoCloseable {
                 // old file, read in master page + header pages
                 ByteBuffer b = ByteBuffer.wrap(new byte[PAGE_SIZE]);
                 this.fileChannel.read(b, PartitionHandle.masterPageOffset());
+                int storedPageSize = PartitionHandle.decodePageSize(b.getShort(PartitionHandle.pageSizeOffset()));
+                if (storedPageSize != this.pageSize) {
+                    throw new PageException("partition " + this.partNum + " has " + storedPageSize
+                                            + " byte pages, expected " + this.pageSize);
+                }
                 b.position(0);
                 for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
                     this.masterPage[i] = Short.toUnsignedInt(b.getShort());
-                    if (PartitionHandle.headerPageOffset(i) < length) {
+                    if (this.headerPageOffset(i) < length) {
                         // Load header pages that were already in the file
                         byte[] headerPage = new byte[PAGE_SIZE];
                         this.headerPages[i] = headerPage;
-                        this.fileChannel.read(ByteBuffer.wrap(headerPage), PartitionHandle.headerPageOffset(i));
+                        this.fileChannel.read(ByteBuffer.wrap(headerPage), this.headerPageOffset(i));
+                        // recount, since older versions could store too high a count
+                        this.masterPage[i] = Bits.countBits(headerPage);
                     }
                 }
             }
@@ -83,6 +134,9 @@ class PartitionHandle implements AutoCloseable {
     public void close() throws IOException {
         this.partitionLock.lock();
         try {
+            if (this.fileChannel.isOpen()) {
+                this.writeMetadata();
+            }
             Arrays.fill(this.headerPages, null);
             this.file.close();
             this.fileChannel.close();
@@ -92,13 +146,15 @@ class PartitionHandle implements AutoCloseable {
     }
 
     /**
-     * Writes the master page to disk.
+     * Writes the master page to disk. Only its first PAGE_SIZE bytes are used, whatever
+     * the page size.
      */
     private void writeMasterPage() throws IOException {
         ByteBuffer b = ByteBuffer.wrap(new byte[PAGE_SIZE]);
         for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
             b.putShort((short) masterPage[i]);
         }
+        b.putShort((short) this.pageSize);
         b.position(0);
         this.fileChannel.write(b, PartitionHandle.masterPageOffset());
     }
@@ -109,14 +165,50 @@ class PartitionHandle implements AutoCloseable {
      */
     private void writeHeaderPage(int headerIndex) throws IOException {
         ByteBuffer b = ByteBuffer.wrap(this.headerPages[headerIndex]);
-        this.fileChannel.write(b, PartitionHandle.headerPageOffset(headerIndex));
+        this.fileChannel.write(b, this.headerPageOffset(headerIndex));
     }
 
     /**
-     * Allocates a new page in the partition.
+     * Writes the master page and the header pages changed since they were last
+     * written, if any. Assumes that the partition lock is held.
+     * @return whether anything was written
+     */
+    boolean writeMetadata() throws IOException {
+        if (!this.masterPageDirty) {
+            return false;
+        }
+        for (int i = this.dirtyHeaderPages.nextSetBit(0); i >= 0; i = this.dirtyHeaderPages.nextSetBit(i + 1)) {
+            this.writeHeaderPage(i);
+        }
+        this.writeMasterPage();
+        this.dirtyHeaderPages.clear();
+        this.masterPageDirty = false;
+        return true;
+    }
+
+    /**
+     * Allocates a new page in the partition, the next free page of the reserved
+     * extent (reserving a new extent first if there is none). The page is zeroed.
      * @return data page number
      */
     int allocPage() throws IOException {
+        while (this.extentNext < this.extentEnd) {
+            int pageNum = this.extentNext++;
+            if (this.isNotAllocatedPage(pageNum)) {
+                return this.allocPage(pageNum / DATA_PAGES_PER_HEADER, pageNum % DATA_PAGES_PER_HEADER);
+            }
+        }
+        this.reserveExtent();
+        int pageNum = this.extentNext++;
+        return this.allocPage(pageNum / DATA_PAGES_PER_HEADER, pageNum % DATA_PAGES_PER_HEADER);
+    }
+
+    /**
+     * Reserves a new extent: the first free data page of the partition, followed by
+     * up to extentPages - 1 free pages directly after it (under the same header page),
+     * zeroing them all with a single write.
+     */
+    private void reserveExtent() throws IOException {
         int headerIndex = -1;
         for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
             if (this.masterPage[i] < DATA_PAGES_PER_HEADER) {
@@ -130,22 +222,41 @@ class PartitionHandle implements AutoCloseable {
 
         byte[] headerBytes = this.headerPages[headerIndex];
 
-        int pageIndex = -1;
+        int pageIndex;
+        int endIndex;
         if (headerBytes == null) {
             pageIndex = 0;
+            endIndex = this.extentPages;
         } else {
-            for (int i = 0; i < DATA_PAGES_PER_HEADER; i++) {
-                if (Bits.getBit(headerBytes, i) == Bits.Bit.ZERO) {
-                    pageIndex = i;
-                    break;
-                }
-            }
-            if (pageIndex == -1) {
+            pageIndex = Bits.nextClearBit(headerBytes, this.freeHints[headerIndex], DATA_PAGES_PER_HEADER);
+            if (pageIndex == DATA_PAGES_PER_HEADER) {
                 throw new PageException("header page should have free space, but doesn't");
             }
+            this.freeHints[headerIndex] = pageIndex;
+            endIndex = Bits.nextSetBit(headerBytes, pageIndex + 1,
+                                       Math.min(pageIndex + this.extentPages, DATA_PAGES_PER_HEADER));
         }
+        this.extentNext = headerIndex * DATA_PAGES_PER_HEADER + pageIndex;
+        this.extentEnd = headerIndex * DATA_PAGES_PER_HEADER + endIndex;
+        this.extentPages = Math.min(2 * this.extentPages, MAX_EXTENT_PAGES);
+        this.zeroPages(this.extentNext, this.extentEnd - this.extentNext);
+    }
 
-        return this.allocPage(headerIndex, pageIndex);
+    /**
+     * Zeroes a run of data pages that are adjacent in the file, without syncing.
+     * Assumes that the partition lock is held.
+     * @param pageNum first data page number
+     * @param numPages number of pages
+     */
+    void zeroPages(int pageNum, int numPages) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate(numPages * this.pageSize);
+        long offset = this.dataPageOffset(pageNum);
+        long start = System.nanoTime();
+        while (zeros.hasRemaining()) {
+            offset += this.fileChannel.write(zeros, offset);
+        }
+        this.stats.recordWrite(this.partNum, numPages, (long) numPages * this.pageSize,
+                               System.nanoTime() - start);
     }
 
     /**
@@ -168,7 +279,7 @@ class PartitionHandle implements AutoCloseable {
         }
 
         Bits.setBit(headerBytes, pageIndex, Bits.Bit.ONE);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
+        ++this.masterPage[headerIndex];
 
         int pageNum = pageIndex + headerIndex * DATA_PAGES_PER_HEADER;
 
@@ -178,8 +289,7 @@ class PartitionHandle implements AutoCloseable {
             recoveryManager.logAllocPage(transaction.getTransNum(), vpn);
         }
         recoveryManager.diskIOHook(vpn);
-        this.writeMasterPage();
-        this.writeHeaderPage(headerIndex);
+        this.markMetadataDirty(headerIndex);
 
         return pageNum;
     }
@@ -204,30 +314,39 @@ class PartitionHandle implements AutoCloseable {
         TransactionContext transaction = TransactionContext.getTransaction();
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         if (transaction != null) {
-            byte[] contents = new byte[PAGE_SIZE];
+            byte[] contents = new byte[this.pageSize];
             readPage(pageNum, contents);
-            int halfway = BufferManager.RESERVED_SPACE + BufferManager.EFFECTIVE_PAGE_SIZE / 2;
-            recoveryManager.logPageWrite(
-                    transaction.getTransNum(),
-                    vpn,
-                    (short) 0,
-                    Arrays.copyOfRange(contents, BufferManager.RESERVED_SPACE, halfway),
-                    new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2]
-            );
-            recoveryManager.logPageWrite(
-                    transaction.getTransNum(),
-                    vpn,
-                    (short) (BufferManager.EFFECTIVE_PAGE_SIZE / 2),
-                    Arrays.copyOfRange(contents, halfway, PAGE_SIZE),
-                    new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2]
-            );
+            // log the wipe of the page in as few records as fit on a log page each
+            int effectivePageSize = this.pageSize - BufferManager.RESERVED_SPACE;
+            int chunkSize = BufferManager.maxLoggedWriteSize(this.pageSize);
+            for (int offset = 0; offset < effectivePageSize; offset += chunkSize) {
+                int length = Math.min(chunkSize, effectivePageSize - offset);
+                int start = BufferManager.RESERVED_SPACE + offset;
+                recoveryManager.logPageWrite(
+                        transaction.getTransNum(),
+                        vpn,
+                        (short) offset,
+                        Arrays.copyOfRange(contents, start, start + length),
+                        new byte[length]
+                );
+            }
             recoveryManager.logFreePage(transaction.getTransNum(), vpn);
         }
         recoveryManager.diskIOHook(vpn);
         Bits.setBit(headerBytes, pageIndex, Bits.Bit.ZERO);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
-        this.writeMasterPage();
-        this.writeHeaderPage(headerIndex);
+        --this.masterPage[headerIndex];
+        this.freeHints[headerIndex] = Math.min(this.freeHints[headerIndex], pageIndex);
+        this.markMetadataDirty(headerIndex);
+    }
+
+    /**
+     * Notes that the master page and a header page changed, to be written out by
+     * the next writeMetadata.
+     * @param headerIndex which header page
+     */
+    private void markMetadataDirty(int headerIndex) {
+        this.masterPageDirty = true;
+        this.dirtyHeaderPages.set(headerIndex);
     }
 
     /**
@@ -236,11 +355,20 @@ class PartitionHandle implements AutoCloseable {
      * @param buf output buffer to be filled with page - assumed to be page size
      */
     void readPage(int pageNum, byte[] buf) throws IOException {
+        this.readPage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Reads in a data page. Assumes that the partition lock is held. A direct buffer
+     * is filled by the channel without an intermediate copy.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to have a page remaining
+     */
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        this.fileChannel.read(buf, this.dataPageOffset(pageNum));
     }
 
     /**
@@ -249,15 +377,115 @@ class PartitionHandle implements AutoCloseable {
      * @param buf input buffer with new contents of page - assumed to be page size
      */
     void writePage(int pageNum, byte[] buf) throws IOException {
+        this.writePage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Writes to a data page. Assumes that the partition lock is held. A direct buffer
+     * is written by the channel without an intermediate copy.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page - assumed to have a page remaining
+     */
+    void writePage(int pageNum, ByteBuffer buf) throws IOException {
+        this.writePageUnsynced(pageNum, buf);
+        this.force();
+
+        long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
+        recoveryManager.diskIOHook(vpn);
+    }
+
+    /**
+     * Writes to a data page without syncing the file, and without telling the recovery
+     * manager: the page only counts as written once sync is called with it. Assumes
+     * that the partition lock is held.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page - assumed to have a page remaining
+     */
+    void writePageUnsynced(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        long start = System.nanoTime();
+        this.fileChannel.write(buf, this.dataPageOffset(pageNum));
+        this.stats.recordWrite(this.partNum, 1, this.pageSize, System.nanoTime() - start);
+    }
 
-        long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
-        recoveryManager.diskIOHook(vpn);
+    /**
+     * Writes to several data pages without syncing the file, like writePageUnsynced,
+     * but with each run of pages that are adjacent in the file written by a single
+     * gathering write. Nothing is written if any of the pages is not allocated.
+     * Assumes that the partition lock is held.
+     * @param pageNums data page numbers to write to, in increasing order
+     * @param bufs input buffers with new contents of the pages, in the same order -
+     *             assumed to each have a page remaining
+     */
+    void writePagesUnsynced(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        int start = 0;
+        while (start < pageNums.length) {
+            // the run ends at the first page not directly after the one before it
+            // (a header page, or a page not being written, lies in between)
+            int end = start + 1;
+            while (end < pageNums.length && this.dataPageOffset(pageNums[end])
+                    == this.dataPageOffset(pageNums[end - 1]) + this.pageSize) {
+                ++end;
+            }
+            ByteBuffer[] run = Arrays.copyOfRange(bufs, start, end);
+            long runBytes = (long) (end - start) * this.pageSize;
+            long remaining = runBytes;
+            long startNanos = System.nanoTime();
+            this.fileChannel.position(this.dataPageOffset(pageNums[start]));
+            while (remaining > 0) {
+                remaining -= this.fileChannel.write(run);
+            }
+            this.stats.recordWrite(this.partNum, end - start, runBytes, System.nanoTime() - startNanos);
+            start = end;
+        }
+    }
+
+    /**
+     * Syncs the file once, then tells the recovery manager that each of the given
+     * data pages, written with writePageUnsynced, is on disk. Assumes that the
+     * partition lock is held.
+     * @param pageNums data page numbers written since the last sync
+     */
+    void sync(Collection<Integer> pageNums) throws IOException {
+        this.force();
+        for (int pageNum : pageNums) {
+            recoveryManager.diskIOHook(DiskSpaceManager.getVirtualPageNum(partNum, pageNum));
+        }
+    }
+
+    /**
+     * Syncs the file once, then tells the recovery manager that each of the given
+     * data pages, written with writePageUnsynced by a write batch, is on disk,
+     * unless check finds that the page may have changed since it was written.
+     * Assumes that the partition lock is held.
+     * @param pageLSNs data page numbers written by the batch, with the pageLSN each
+     *                 was last written with
+     * @param check check to make before reporting each page
+     */
+    void sync(Map<Integer, Long> pageLSNs, DiskSpaceManager.WrittenPageCheck check) throws IOException {
+        this.force();
+        for (Map.Entry<Integer, Long> entry : pageLSNs.entrySet()) {
+            long vpn = DiskSpaceManager.getVirtualPageNum(partNum, entry.getKey());
+            check.reportIfUnchanged(vpn, entry.getValue(), () -> recoveryManager.diskIOHook(vpn));
+        }
+    }
+
+    /**
+     * Writes out pending master and header page changes, then forces all writes out
+     * to disk. Assumes that the partition lock is held.
+     */
+    void force() throws IOException {
+        long start = System.nanoTime();
+        this.writeMetadata();
+        this.fileChannel.force(false);
+        this.stats.recordSync(this.partNum, System.nanoTime() - start);
     }
 
     /**
@@ -285,10 +513,10 @@ class PartitionHandle implements AutoCloseable {
         for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
             if (masterPage[i] > 0) {
                 byte[] headerPage = headerPages[i];
-                for (int j = 0; j < DATA_PAGES_PER_HEADER; ++j) {
-                    if (Bits.getBit(headerPage, j) == Bits.Bit.ONE) {
-                        this.freePage(i * DATA_PAGES_PER_HEADER + j);
-                    }
+                int j = Bits.nextSetBit(headerPage, 0, DATA_PAGES_PER_HEADER);
+                while (j < DATA_PAGES_PER_HEADER) {
+                    this.freePage(i * DATA_PAGES_PER_HEADER + j);
+                    j = Bits.nextSetBit(headerPage, j + 1, DATA_PAGES_PER_HEADER);
                 }
             }
         }
@@ -301,11 +529,28 @@ class PartitionHandle implements AutoCloseable {
         return 0;
     }
 
+    /**
+     * @return offset in OS file for the page size, stored in the master page after the
+     * number of allocated pages under each header page
+     */
+    private static int pageSizeOffset() {
+        return MAX_HEADER_PAGES * Short.BYTES;
+    }
+
+    /**
+     * @param stored page size as stored in a master page
+     * @return page size in bytes
+     */
+    private static int decodePageSize(short stored) {
+        // 0 in files from before the page size was stored, which had 4K pages
+        return stored == 0 ? PAGE_SIZE : Short.toUnsignedInt(stored);
+    }
+
     /**
      * @param headerIndex which header page
      * @return offset in OS file for header page
      */
-    private static long headerPageOffset(int headerIndex) {
+    long headerPageOffset(int headerIndex) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10 11
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D][H]...
@@ -315,14 +560,14 @@ class PartitionHandle implements AutoCloseable {
         // of data pages per header plus 1 to account for the header page
         // itself (in the above example this coefficient would be 5)
         long spacingCoeff = DATA_PAGES_PER_HEADER + 1; // Promote to long
-        return (1 + headerIndex * spacingCoeff) * PAGE_SIZE;
+        return (1 + headerIndex * spacingCoeff) * this.pageSize;
     }
 
     /**
      * @param pageNum data page number
      * @return offset in OS file for data page
      */
-    private static long dataPageOffset(int pageNum) {
+    long dataPageOffset(int pageNum) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D]
@@ -335,6 +580,6 @@ class PartitionHandle implements AutoCloseable {
         // - add how many data pages precede the given data page
         //   (this works out conveniently to the page's page number)
         long otherHeaders = pageNum / DATA_PAGES_PER_HEADER;
-        return (2 + otherHeaders + pageNum) * PAGE_SIZE;
+        return (2 + otherHeaders + pageNum) * this.pageSize;
     }
 }
\ No newline at end of file
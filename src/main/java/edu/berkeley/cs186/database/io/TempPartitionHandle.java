@@ -0,0 +1,197 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle of a temporary partition, whose contents never have to survive a crash or
+ * a restart. Nothing about it is logged (it uses a DummyRecoveryManager) or synced,
+ * and its master and header pages only exist in memory.
+ *
+ * Data pages are kept in memory, as long as the memory budget shared by all
+ * temporary partitions allows; pages written once the budget is used up spill to a
+ * scratch file, which is only created when the first page spills, and deleted when
+ * the partition is closed. Pages that were never written read as zeroes.
+ */
+class TempPartitionHandle extends PartitionHandle {
+    /**
+     * Number of temporary partition pages that may be kept in memory, shared by
+     * every temporary partition of a disk space manager.
+     */
+    static class MemoryBudget {
+        private final AtomicInteger used = new AtomicInteger();
+        private volatile int maxPages;
+
+        MemoryBudget(int maxPages) {
+            this.maxPages = maxPages;
+        }
+
+        void setMaxPages(int maxPages) {
+            this.maxPages = maxPages;
+        }
+
+        int getUsedPages() {
+            return this.used.get();
+        }
+
+        private boolean tryReserve() {
+            int used;
+            do {
+                used = this.used.get();
+                if (used >= this.maxPages) {
+                    return false;
+                }
+            } while (!this.used.compareAndSet(used, used + 1));
+            return true;
+        }
+
+        private void release(int numPages) {
+            this.used.addAndGet(-numPages);
+        }
+    }
+
+    private final MemoryBudget budget;
+
+    // Pages kept in memory
+    private final Map<Integer, byte[]> pages = new HashMap<>();
+
+    // Pages whose current contents are in the scratch file
+    private final BitSet spilled = new BitSet();
+
+    // Scratch file, opened when the first page spills
+    private String fileName;
+    private RandomAccessFile scratch;
+
+    TempPartitionHandle(int partNum, MemoryBudget budget, DiskStats stats, int pageSize) {
+        super(partNum, new DummyRecoveryManager(), stats, pageSize);
+        this.budget = budget;
+    }
+
+    /**
+     * Remembers where the scratch file goes, without creating it.
+     * @param fileName name of OS file pages spill to
+     */
+    @Override
+    void open(String fileName) {
+        this.fileName = fileName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            this.budget.release(this.pages.size());
+            this.pages.clear();
+            this.spilled.clear();
+            if (this.scratch != null) {
+                this.scratch.close();
+                this.scratch = null;
+                if (!new File(this.fileName).delete()) {
+                    throw new IOException("could not delete scratch file " + this.fileName);
+                }
+            }
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    boolean writeMetadata() {
+        return false;
+    }
+
+    @Override
+    void force() {}
+
+    @Override
+    void freePage(int pageNum) throws IOException {
+        super.freePage(pageNum);
+        this.discard(pageNum);
+    }
+
+    @Override
+    void zeroPages(int pageNum, int numPages) {
+        for (int i = pageNum; i < pageNum + numPages; ++i) {
+            this.discard(i);
+        }
+    }
+
+    @Override
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        byte[] page = this.pages.get(pageNum);
+        if (page != null) {
+            buf.put(page);
+        } else if (this.spilled.get(pageNum)) {
+            this.scratchChannel().read(buf, this.dataPageOffset(pageNum));
+        } else {
+            buf.put(new byte[this.pageSize]);
+        }
+    }
+
+    @Override
+    void writePageUnsynced(int pageNum, ByteBuffer buf) throws IOException {
+        if (this.isNotAllocatedPage(pageNum)) {
+            throw new PageException("page " + pageNum + " is not allocated");
+        }
+        byte[] page = this.pages.get(pageNum);
+        if (page == null && this.budget.tryReserve()) {
+            page = new byte[this.pageSize];
+            this.pages.put(pageNum, page);
+            this.spilled.clear(pageNum);
+        }
+        if (page != null) {
+            buf.get(page);
+            return;
+        }
+        long start = System.nanoTime();
+        this.scratchChannel().write(buf, this.dataPageOffset(pageNum));
+        this.spilled.set(pageNum);
+        this.stats.recordWrite(this.partNum, 1, this.pageSize, System.nanoTime() - start);
+    }
+
+    @Override
+    void writePagesUnsynced(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            this.writePageUnsynced(pageNums[i], bufs[i]);
+        }
+    }
+
+    /**
+     * @return number of data pages of this partition kept in memory
+     */
+    int getNumMemoryPages() {
+        return this.pages.size();
+    }
+
+    // Drops the contents of a page, so that it reads as zeroes
+    private void discard(int pageNum) {
+        if (this.pages.remove(pageNum) != null) {
+            this.budget.release(1);
+        }
+        this.spilled.clear(pageNum);
+    }
+
+    private FileChannel scratchChannel() throws IOException {
+        if (this.scratch == null) {
+            this.scratch = new RandomAccessFile(this.fileName, "rw");
+        }
+        return this.scratch.getChannel();
+    }
+}
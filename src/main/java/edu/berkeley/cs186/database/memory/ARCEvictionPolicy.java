@@ -0,0 +1,166 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Implementation of the ARC (adaptive replacement cache) eviction policy
+ * (Megiddo and Modha, 2003). Resident pages are split between T1, pages
+ * referenced once since being loaded, and T2, pages referenced at least twice.
+ * The page numbers of pages recently evicted from each are remembered in ghost
+ * lists B1 and B2, and a reload of a page found in one of them shifts the target
+ * size of T1 towards the list that would have kept it. Scans only pass through
+ * T1, while pages referenced repeatedly stay in T2.
+ *
+ * The buffer manager picks a victim before it knows which page will be loaded,
+ * so unlike the original algorithm the victim list is chosen from the target size
+ * alone. Repeated hits to the same frame with no hit to another frame in between
+ * count as a single reference.
+ */
+public class ARCEvictionPolicy implements EvictionPolicy {
+    private static class Tag extends FrameList.Node {
+        // set when chosen by evict, so cleanup can tell eviction apart from freeing
+        private boolean evicted;
+
+        private Tag(BufferFrame frame) {
+            super(frame);
+        }
+    }
+
+    private final FrameList t1;
+    private final FrameList t2;
+    private final LinkedHashSet<Long> b1;
+    private final LinkedHashSet<Long> b2;
+    // Target size of T1
+    private double target;
+    private int numFrames;
+    private BufferFrame lastHit;
+
+    public ARCEvictionPolicy() {
+        this.t1 = new FrameList();
+        this.t2 = new FrameList();
+        this.b1 = new LinkedHashSet<>();
+        this.b2 = new LinkedHashSet<>();
+        this.target = 0;
+        this.numFrames = 0;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        Tag tag = new Tag(frame);
+        frame.tag = tag;
+        long pageNum = frame.getPageNum();
+        if (this.b1.remove(pageNum)) {
+            // would have been a hit with a larger T1
+            double delta = Math.max(1.0, (double) this.b2.size() / Math.max(1, this.b1.size()));
+            this.target = Math.min(this.numFrames, this.target + delta);
+            this.t2.addLast(tag);
+        } else if (this.b2.remove(pageNum)) {
+            // would have been a hit with a larger T2
+            double delta = Math.max(1.0, (double) this.b1.size() / Math.max(1, this.b2.size()));
+            this.target = Math.max(0, this.target - delta);
+            this.t2.addLast(tag);
+        } else {
+            this.t1.addLast(tag);
+        }
+        this.lastHit = frame;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        if (frame == this.lastHit) {
+            return;
+        }
+        this.lastHit = frame;
+        this.t2.addLast((Tag) frame.tag);
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.numFrames = frames.length;
+        BufferFrame evicted;
+        if (this.t1.size() > 0 && this.t1.size() >= this.target) {
+            evicted = this.t1.firstUnpinned();
+            if (evicted == null) {
+                evicted = this.t2.firstUnpinned();
+            }
+        } else {
+            evicted = this.t2.firstUnpinned();
+            if (evicted == null) {
+                evicted = this.t1.firstUnpinned();
+            }
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        ((Tag) evicted.tag).evicted = true;
+        return evicted;
+    }
+
+    /**
+     * Called by the background writer to find the frames that are next in line
+     * for eviction: the least recently used frames of T1, then of T2.
+     * @param frames Array of all frames (same length every call)
+     * @param num maximum number of frames to return
+     * @return up to num frames, roughly in the order they would be evicted
+     */
+    @Override
+    public synchronized List<BufferFrame> upcomingEvictions(BufferFrame[] frames, int num) {
+        List<BufferFrame> upcoming = new ArrayList<>();
+        this.t1.addFirstFrames(upcoming, num);
+        this.t2.addFirstFrames(upcoming, num);
+        return upcoming;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag tag = (Tag) frame.tag;
+        FrameList list = tag.getList();
+        if (list != null) {
+            list.remove(tag);
+        }
+        if (tag.evicted) {
+            if (list == this.t1) {
+                this.b1.add(frame.getPageNum());
+            } else if (list == this.t2) {
+                this.b2.add(frame.getPageNum());
+            }
+            // |T1| + |B1| <= c, and all four lists together hold at most 2c pages
+            trim(this.b1, this.numFrames - this.t1.size());
+            trim(this.b2, 2 * this.numFrames - this.t1.size() - this.t2.size() - this.b1.size());
+        }
+        if (frame == this.lastHit) {
+            this.lastHit = null;
+        }
+    }
+
+    private static void trim(LinkedHashSet<Long> ghosts, int maxSize) {
+        Iterator<Long> oldest = ghosts.iterator();
+        while (ghosts.size() > Math.max(0, maxSize)) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background thread that periodically writes out dirty pages which are about to
+ * be evicted, so that a fetch which has to evict a page usually finds a clean one
+ * and does not have to wait for a write (and the log flush before it).
+ *
+ * Each pass asks the eviction policy of every sub-pool for the next lookahead
+ * frames it would consider for eviction, and flushes those that are dirty and
+ * unpinned, in page number order. Pages that are pinned, or latched by another
+ * thread, are skipped until the next pass.
+ *
+ * Started with BufferManager#startBackgroundWriter.
+ */
+public class BackgroundWriter {
+    private final BufferManager bufferManager;
+    private final long intervalMillis;
+    private final int lookahead;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // Statistics, only updated by the writer thread
+    private final AtomicLong numPasses = new AtomicLong(0);
+    private final AtomicLong numPagesCleaned = new AtomicLong(0);
+    private final AtomicLong totalPassNanos = new AtomicLong(0);
+    private volatile long lastPassNanos = 0;
+    private volatile int lastPassPagesCleaned = 0;
+
+    BackgroundWriter(BufferManager bufferManager, long intervalMillis, int lookahead) {
+        if (intervalMillis <= 0 || lookahead <= 0) {
+            throw new IllegalArgumentException("background writer interval and lookahead must be positive");
+        }
+        this.bufferManager = bufferManager;
+        this.intervalMillis = intervalMillis;
+        this.lookahead = lookahead;
+        this.thread = new Thread(this::run, "buffer-background-writer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    /**
+     * Stops the writer, waiting for a pass in progress to finish.
+     */
+    void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (this.running) {
+            this.runPass();
+            try {
+                Thread.sleep(this.intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs a single pass over the buffer pool.
+     */
+    private void runPass() {
+        long start = System.nanoTime();
+        int cleaned = this.bufferManager.cleanUpcomingEvictions(this.lookahead);
+        long elapsed = System.nanoTime() - start;
+
+        this.lastPassNanos = elapsed;
+        this.lastPassPagesCleaned = cleaned;
+        this.totalPassNanos.addAndGet(elapsed);
+        this.numPagesCleaned.addAndGet(cleaned);
+        this.numPasses.incrementAndGet();
+    }
+
+    /**
+     * @return whether the writer thread is running
+     */
+    public boolean isRunning() {
+        return this.running && this.thread.isAlive();
+    }
+
+    /**
+     * @return number of passes made over the buffer pool so far
+     */
+    public long getNumPasses() {
+        return this.numPasses.get();
+    }
+
+    /**
+     * @return total number of pages written out by the writer
+     */
+    public long getNumPagesCleaned() {
+        return this.numPagesCleaned.get();
+    }
+
+    /**
+     * @return number of pages written out in the most recent pass
+     */
+    public int getLastPassPagesCleaned() {
+        return this.lastPassPagesCleaned;
+    }
+
+    /**
+     * @return duration of the most recent pass, in nanoseconds
+     */
+    public long getLastPassNanos() {
+        return this.lastPassNanos;
+    }
+
+    /**
+     * @return total duration of all passes so far, in nanoseconds
+     */
+    public long getTotalPassNanos() {
+        return this.totalPassNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackgroundWriter(passes=%d, pages cleaned=%d, last pass=%d pages in %.3f ms)",
+                getNumPasses(), getNumPagesCleaned(), getLastPassPagesCleaned(), getLastPassNanos() / 1e6);
+    }
+}
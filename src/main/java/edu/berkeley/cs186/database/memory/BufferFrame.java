@@ -1,35 +1,44 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Buffer frame.
  */
 abstract class BufferFrame {
     Object tag = null;
-    private int pinCount = 0;
+    private AtomicInteger pinCount = new AtomicInteger(0);
 
     /**
      * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
-     * buffer frame gets pinned.
+     * buffer frame gets pinned. A frame pinned with pin() may be written to.
      */
     void pin() {
-        ++pinCount;
+        pinCount.incrementAndGet();
+    }
+
+    /**
+     * Pin buffer frame for reading only. Frames pinned for reading may be shared
+     * between several readers at once, but may not be written to.
+     */
+    void pinForRead() {
+        this.pin();
     }
 
     /**
      * Unpin buffer frame.
      */
     void unpin() {
-        if (!isPinned()) {
+        if (pinCount.getAndUpdate(count -> count > 0 ? count - 1 : count) == 0) {
             throw new IllegalStateException("cannot unpin unpinned frame");
         }
-        --pinCount;
     }
 
     /**
      * @return whether this frame is pinned
      */
     boolean isPinned() {
-        return pinCount > 0;
+        return pinCount.get() > 0;
     }
 
     /**
@@ -69,10 +78,18 @@ abstract class BufferFrame {
      */
     abstract BufferFrame requestValidFrame();
 
+    /**
+     * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
+     * Frame is pinned for reading on return.
+     */
+    BufferFrame requestValidFrameForRead() {
+        return requestValidFrame();
+    }
+
     /**
      * @return amount of space available to user of the frame
      */
-    short getEffectivePageSize() {
+    int getEffectivePageSize() {
         return BufferManager.EFFECTIVE_PAGE_SIZE;
     }
 
@@ -10,8 +10,20 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
@@ -19,6 +31,11 @@ import java.util.function.BiConsumer;
  * to the page loaded (evicting and loading a new page into the frame will result in
  * a new Frame object, with the same underlying byte array), with old Frame objects
  * backed by the same byte array marked as invalid.
+ *
+ * The buffer pool may be split into several independent sub-pools. Every page number
+ * hashes to exactly one sub-pool, and each sub-pool has its own frames, page table,
+ * free list, eviction policy and lock, so that requests for pages in different
+ * sub-pools never wait on each other.
  */
 public class BufferManager implements AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
@@ -26,75 +43,134 @@ public class BufferManager implements AutoCloseable {
     // fit on one page).
     public static final short RESERVED_SPACE = 36;
 
-    // Effective page size available to users of buffer manager.
+    // Offset of the pageLSN in the reserved space of a page
+    public static final int PAGE_LSN_OFFSET = 8;
+
+    // Effective page size available to users of buffer manager, with pages of the default
+    // size (see getEffectivePageSize for the page size actually in use).
     public static final short EFFECTIVE_PAGE_SIZE = (short) (DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE);
 
-    // Buffer frames
-    private Frame[] frames;
+    // Page size of the disk space manager, and the effective page size that leaves
+    private final int pageSize;
+    private final short effectivePageSize;
 
-    // Reference to the disk space manager underneath this buffer manager instance.
-    private DiskSpaceManager diskSpaceManager;
+    // Sub-pools of buffer frames, indexed by hash of page number
+    private SubPool[] pools;
+
+    // Background writer, if running
+    private BackgroundWriter backgroundWriter;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Thread loading pages to warm up the buffer pool, if running
+    private Thread warmUpThread;
 
-    // Lock on buffer manager
-    private ReentrantLock managerLock;
+    // Number of pages loaded by warm-up
+    private AtomicLong numWarmedUp = new AtomicLong();
 
-    // Eviction policy
-    private EvictionPolicy evictionPolicy;
+    // Whether frames are backed by direct (off-heap) memory
+    private boolean offHeap;
 
-    // Index of first free frame
-    private int firstFreeIndex;
+    // Reference to the disk space manager underneath this buffer manager instance.
+    private DiskSpaceManager diskSpaceManager;
 
     // Recovery manager
     private RecoveryManager recoveryManager;
 
     // Count of number of I/Os
-    private long numIOs = 0;
+    private AtomicLong numIOs = new AtomicLong();
+
+    // Hit, miss, eviction, pin wait and flush latency counters
+    private final BufferStats stats = new BufferStats();
+
+    // Number of consecutive pages of a partition that must be fetched in order for
+    // the partition to be read ahead
+    static final int SEQUENTIAL_THRESHOLD = 4;
+
+    // Number of times resize tries to latch the frames it removes before giving up,
+    // and how long it waits between tries, in milliseconds
+    private static final int RESIZE_ATTEMPTS = 100;
+    private static final long RESIZE_RETRY_MILLIS = 10;
+
+    // Number of pages to read ahead of a sequential scan; 0 disables read-ahead
+    private volatile int readAhead = 0;
+
+    // Thread loading prefetched pages, created when read-ahead is first enabled
+    private ExecutorService prefetchExecutor;
+
+    // Pages queued for prefetching
+    private Set<Long> prefetching = ConcurrentHashMap.newKeySet();
+    private Queue<Long> prefetchQueue = new ConcurrentLinkedQueue<>();
+
+    // Maximum number of prefetched pages read from disk at once
+    static final int PREFETCH_BATCH = 16;
+
+    // Sequential access detection state, per partition
+    private Map<Integer, ScanState> scanStates = new ConcurrentHashMap<>();
+
+    // Counts of pages prefetched, prefetched pages later fetched, and prefetched
+    // pages evicted without ever being fetched
+    private AtomicLong numPrefetched = new AtomicLong();
+    private AtomicLong numPrefetchHits = new AtomicLong();
+    private AtomicLong numPrefetchUnused = new AtomicLong();
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
      * underlying byte array. Free frames use the index field to create a (singly) linked
      * list between free frames.
+     *
+     * Each frame has a reader/writer latch: a frame pinned for reading is latched in
+     * shared mode, so any number of readers may pin it at once, while a frame pinned
+     * for writing (and any change to the frame itself, such as eviction) requires the
+     * latch in exclusive mode. A thread holding the latch in shared mode may not ask
+     * for it in exclusive mode, since two readers doing so would wait on each other forever.
      */
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        // Page-sized buffer holding the page; a heap buffer, or a slice of a direct buffer
+        ByteBuffer contents;
+        private final SubPool pool;
         private int index;
         private long pageNum;
-        private boolean dirty;
-        private ReentrantLock frameLock;
-        private boolean logPage;
+        private volatile boolean dirty;
+        // Set while the page has been prefetched but not yet fetched
+        private final AtomicBoolean prefetched = new AtomicBoolean(false);
+        private final ReentrantReadWriteLock frameLock;
+        private final boolean logPage;
+        // Whether the page is in a temporary partition, whose changes are not logged
+        private final boolean tempPage;
+        // Ring the page was loaded through, if any, so that reloads go through it too
+        private BufferRing ring;
 
-        Frame(byte[] contents, int nextFree) {
-            this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
+        Frame(SubPool pool, ByteBuffer contents, int nextFree) {
+            this(pool, contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
         Frame(Frame frame) {
-            this(frame.contents, frame.index, frame.pageNum);
+            this(frame.pool, frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(SubPool pool, ByteBuffer contents, int index, long pageNum) {
+            this.pool = pool;
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
             this.dirty = false;
-            this.frameLock = new ReentrantLock();
+            this.frameLock = new ReentrantReadWriteLock();
             int partNum = DiskSpaceManager.getPartNum(pageNum);
             this.logPage = partNum == LogManager.LOG_PARTITION;
+            this.tempPage = pageNum != DiskSpaceManager.INVALID_PAGE_NUM && diskSpaceManager.isTempPart(partNum);
         }
 
         /**
          * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
-         * buffer frame gets pinned.
+         * buffer frame gets pinned. Takes the frame latch in exclusive mode.
          */
         @Override
         public void pin() {
-            this.frameLock.lock();
+            this.lockExclusive();
 
             if (!this.isValid()) {
+                this.frameLock.writeLock().unlock();
                 throw new IllegalStateException("pinning invalidated frame");
             }
 
@@ -102,12 +178,103 @@ public class BufferManager implements AutoCloseable {
         }
 
         /**
-         * Unpin buffer frame.
+         * Pin buffer frame for reading; cannot be evicted while pinned. Takes the frame
+         * latch in shared mode.
+         */
+        @Override
+        public void pinForRead() {
+            this.lockShared();
+
+            if (!this.isValid()) {
+                this.frameLock.readLock().unlock();
+                throw new IllegalStateException("pinning invalidated frame");
+            }
+
+            super.pin();
+        }
+
+        /**
+         * Unpin buffer frame. Shared holds are released before exclusive ones; since a
+         * thread can only take a shared hold on top of an exclusive one (never the other
+         * way around), the frame stays exclusively latched until every exclusive pin is
+         * released.
          */
         @Override
         public void unpin() {
             super.unpin();
-            this.frameLock.unlock();
+            if (this.frameLock.getReadHoldCount() > 0) {
+                this.frameLock.readLock().unlock();
+            } else {
+                this.frameLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Records a fetch of the page, counting it as a prefetch hit if the page was prefetched.
+         */
+        private void notePrefetchHit() {
+            if (this.prefetched.get() && this.prefetched.compareAndSet(true, false)) {
+                numPrefetchHits.incrementAndGet();
+            }
+        }
+
+        /**
+         * Counts the page as an unused prefetch if it was prefetched and never fetched.
+         */
+        private void discardPrefetch() {
+            if (this.prefetched.getAndSet(false)) {
+                numPrefetchUnused.incrementAndGet();
+            }
+        }
+
+        /**
+         * Pins the buffer frame if it still holds the given page, without going through
+         * the sub-pool. Used for lookups made without the sub-pool lock.
+         *
+         * @return whether the frame was pinned
+         */
+        private boolean tryPin(long pageNum, boolean forRead) {
+            if (forRead) {
+                this.lockShared();
+            } else {
+                this.lockExclusive();
+            }
+            if (!this.isValid() || this.pageNum != pageNum) {
+                if (forRead) {
+                    this.frameLock.readLock().unlock();
+                } else {
+                    this.frameLock.writeLock().unlock();
+                }
+                return false;
+            }
+            super.pin();
+            return true;
+        }
+
+        /**
+         * Takes the frame latch in exclusive mode, failing instead of deadlocking if the
+         * current thread only holds it in shared mode.
+         */
+        private void lockExclusive() {
+            if (this.frameLock.getReadHoldCount() > 0 && !this.frameLock.isWriteLockedByCurrentThread()) {
+                throw new IllegalStateException("cannot pin frame for writing while it is pinned for reading");
+            }
+            if (!this.frameLock.writeLock().tryLock()) {
+                long start = System.nanoTime();
+                this.frameLock.writeLock().lock();
+                stats.recordPinWait(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Takes the frame latch in shared mode.
+         */
+        private void lockShared() {
+            if (!this.frameLock.readLock().tryLock()) {
+                long start = System.nanoTime();
+                this.frameLock.readLock().lock();
+                stats.recordPinWait(System.nanoTime() - start);
+            }
         }
 
         /**
@@ -132,6 +299,7 @@ public class BufferManager implements AutoCloseable {
             if (this.isValid()) {
                 this.flush();
             }
+            this.discardPrefetch();
             this.index = INVALID_INDEX;
             this.contents = null;
         }
@@ -143,8 +311,9 @@ public class BufferManager implements AutoCloseable {
             if (isFreed()) {
                 throw new IllegalStateException("cannot free free frame");
             }
-            int nextFreeIndex = firstFreeIndex;
-            firstFreeIndex = this.index;
+            this.discardPrefetch();
+            int nextFreeIndex = pool.firstFreeIndex;
+            pool.firstFreeIndex = this.index;
             this.index = ~nextFreeIndex;
         }
 
@@ -152,8 +321,8 @@ public class BufferManager implements AutoCloseable {
             if (!isFreed()) {
                 throw new IllegalStateException("cannot unfree used frame");
             }
-            int index = firstFreeIndex;
-            firstFreeIndex = ~this.index;
+            int index = pool.firstFreeIndex;
+            pool.firstFreeIndex = ~this.index;
             this.index = index;
         }
 
@@ -170,7 +339,7 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         void flush() {
-            this.frameLock.lock();
+            this.frameLock.readLock().lock();
             super.pin();
             try {
                 if (!this.isValid()) {
@@ -179,15 +348,17 @@ public class BufferManager implements AutoCloseable {
                 if (!this.dirty) {
                     return;
                 }
-                if (!this.logPage) {
+                long start = System.nanoTime();
+                if (!this.logPage && !this.tempPage) {
                     recoveryManager.pageFlushHook(this.getPageLSN());
                 }
                 BufferManager.this.diskSpaceManager.writePage(pageNum, contents);
                 BufferManager.this.incrementIOs();
                 this.dirty = false;
+                stats.recordFlush(System.nanoTime() - start);
             } finally {
                 super.unpin();
-                this.frameLock.unlock();
+                this.frameLock.readLock().unlock();
             }
         }
 
@@ -199,13 +370,13 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         void readBytes(short position, short num, byte[] buf) {
-            this.pin();
+            this.pinForRead();
             try {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
-                BufferManager.this.evictionPolicy.hit(this);
+                this.getBytes(position + dataOffset(), buf, 0, num);
+                pool.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
             }
@@ -226,21 +397,22 @@ public class BufferManager implements AutoCloseable {
                 }
                 int offset = position + dataOffset();
                 TransactionContext transaction = TransactionContext.getTransaction();
-                if (transaction != null && !logPage) {
+                if (transaction != null && !logPage && !tempPage) {
                     List<Pair<Integer, Integer>> changedRanges = getChangedBytes(offset, num, buf);
                     for (Pair<Integer, Integer> range : changedRanges) {
                         int start = range.getFirst();
                         int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
+                        byte[] before = new byte[len];
+                        this.getBytes(start + offset, before, 0, len);
                         byte[] after = Arrays.copyOfRange(buf, start, start + len);
                         long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
                                        after);
                         this.setPageLSN(pageLSN);
                     }
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
+                this.putBytes(offset, buf, 0, num);
                 this.dirty = true;
-                BufferManager.this.evictionPolicy.hit(this);
+                pool.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
             }
@@ -252,7 +424,7 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         Frame requestValidFrame() {
-            this.frameLock.lock();
+            this.lockExclusive();
             try {
                 if (this.isFreed()) {
                     throw new PageException("page already freed");
@@ -261,24 +433,46 @@ public class BufferManager implements AutoCloseable {
                     this.pin();
                     return this;
                 }
-                return BufferManager.this.fetchPageFrame(this.pageNum);
+                return pool.fetchPageFrame(this.pageNum, false, false, this.ring);
+            } finally {
+                this.frameLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
+         * Page is pinned for reading on return.
+         */
+        @Override
+        Frame requestValidFrameForRead() {
+            // validity only changes under the exclusive latch, so the shared latch is enough
+            this.frameLock.readLock().lock();
+            try {
+                if (this.isFreed()) {
+                    throw new PageException("page already freed");
+                }
+                if (this.isValid()) {
+                    this.pinForRead();
+                    return this;
+                }
             } finally {
-                this.frameLock.unlock();
+                this.frameLock.readLock().unlock();
             }
+            return pool.fetchPageFrame(this.pageNum, true, false, this.ring);
         }
 
         @Override
-        short getEffectivePageSize() {
+        int getEffectivePageSize() {
             if (logPage) {
-                return DiskSpaceManager.PAGE_SIZE;
+                return pageSize;
             } else {
-                return BufferManager.EFFECTIVE_PAGE_SIZE;
+                return effectivePageSize;
             }
         }
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            return this.contents.getLong(PAGE_LSN_OFFSET);
         }
 
         @Override
@@ -299,7 +493,7 @@ public class BufferManager implements AutoCloseable {
          */
         private List<Pair<Integer, Integer>> getChangedBytes(int offset, int num, byte[] buf) {
             List<Pair<Integer, Integer>> ranges = new ArrayList<>();
-            int maxRange = EFFECTIVE_PAGE_SIZE / 2;
+            int maxRange = maxLoggedWriteSize(pageSize);
             int startIndex = -1;
             int skip = -1;
             for (int i = 0; i < num; ++i) {
@@ -307,7 +501,7 @@ public class BufferManager implements AutoCloseable {
                     ranges.add(new Pair<>(startIndex, maxRange));
                     startIndex = -1;
                     skip = -1;
-                } else if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                } else if (buf[i] == contents.get(offset + i) && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -315,7 +509,7 @@ public class BufferManager implements AutoCloseable {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (buf[i] != contents.get(offset + i)) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -328,8 +522,35 @@ public class BufferManager implements AutoCloseable {
             return ranges;
         }
 
+        /**
+         * Copies len bytes of the page, starting at offset, into dst. Does not move the
+         * position of contents, so that readers sharing the frame do not interfere.
+         */
+        private void getBytes(int offset, byte[] dst, int dstOffset, int len) {
+            if (this.contents.hasArray()) {
+                System.arraycopy(this.contents.array(), this.contents.arrayOffset() + offset, dst, dstOffset, len);
+            } else {
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset);
+                b.get(dst, dstOffset, len);
+            }
+        }
+
+        /**
+         * Copies len bytes from src into the page, starting at offset.
+         */
+        private void putBytes(int offset, byte[] src, int srcOffset, int len) {
+            if (this.contents.hasArray()) {
+                System.arraycopy(src, srcOffset, this.contents.array(), this.contents.arrayOffset() + offset, len);
+            } else {
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset);
+                b.put(src, srcOffset, len);
+            }
+        }
+
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            this.contents.putLong(PAGE_LSN_OFFSET, pageLSN);
         }
 
         private short dataOffset() {
@@ -342,266 +563,1417 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Creates a new buffer manager.
-     *
-     * @param diskSpaceManager the underlying disk space manager
-     * @param bufferSize size of buffer (in pages)
-     * @param evictionPolicy eviction policy to use
+     * A page read started by SubPool#startPrefetch, into a latched frame.
      */
-    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
-                         int bufferSize, EvictionPolicy evictionPolicy) {
-        this.frames = new Frame[bufferSize];
-        for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
-        }
-        this.firstFreeIndex = 0;
-        this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
-        this.managerLock = new ReentrantLock();
-        this.evictionPolicy = evictionPolicy;
-        this.recoveryManager = recoveryManager;
-    }
+    private static class PendingRead {
+        private final Frame frame;
+        private final CompletableFuture<Void> future;
 
-    @Override
-    public void close() {
-        this.managerLock.lock();
-        try {
-            for (Frame frame : this.frames) {
-                frame.frameLock.lock();
-                try {
-                    if (frame.isPinned()) {
-                        throw new IllegalStateException("closing buffer manager but frame still pinned");
-                    }
-                    if (!frame.isValid()) {
-                        continue;
-                    }
-                    evictionPolicy.cleanup(frame);
-                    frame.invalidate();
-                } finally {
-                    frame.frameLock.unlock();
-                }
-            }
-        } finally {
-            this.managerLock.unlock();
+        private PendingRead(Frame frame, CompletableFuture<Void> future) {
+            this.frame = frame;
+            this.future = future;
         }
     }
 
     /**
-     * Fetches a buffer frame with data for the specified page. Reuses existing
-     * buffer frame if page already loaded in memory. Pins the buffer frame.
-     * Cannot be used outside the package.
-     *
-     * @param pageNum page number
-     * @return buffer frame with specified page loaded
+     * A sub-pool of the buffer pool: a set of frames, along with the page table, free list,
+     * eviction policy and lock that manage them. Pages are assigned to sub-pools by
+     * BufferManager#poolFor and are only ever loaded into frames of their own sub-pool.
      */
-    Frame fetchPageFrame(long pageNum) {
-        this.managerLock.lock();
-        Frame newFrame;
-        Frame evictedFrame;
-        // figure out what frame to load data to, and update manager state
-        try {
-            if (!this.diskSpaceManager.pageAllocated(pageNum)) {
-                throw new PageException("page " + pageNum + " not allocated");
-            }
-            if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
-            }
-            // prioritize free frames over eviction
-            if (this.firstFreeIndex < this.frames.length) {
-                evictedFrame = this.frames[this.firstFreeIndex];
-                evictedFrame.setUsed();
-            } else {
-                evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
-                evictionPolicy.cleanup(evictedFrame);
-            }
-            int frameIndex = evictedFrame.index;
-            newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
-            evictionPolicy.init(newFrame);
-
-            evictedFrame.frameLock.lock();
-            newFrame.frameLock.lock();
-
-            this.pageToFrame.put(pageNum, frameIndex);
-        } finally {
-            this.managerLock.unlock();
-        }
-        // flush evicted frame
-        try {
-            evictedFrame.invalidate();
-        } finally {
-            evictedFrame.frameLock.unlock();
-        }
-        // read new page into frame
-        try {
-            newFrame.pageNum = pageNum;
-            newFrame.pin();
-            BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
-            this.incrementIOs();
-            return newFrame;
-        } catch (PageException e) {
-            newFrame.unpin();
-            throw e;
-        } finally {
-            newFrame.frameLock.unlock();
-        }
-    }
+    private class SubPool {
+        // Index of this sub-pool in pools
+        private final int poolIndex;
 
-    /**
-     * Fetches the specified page, with a loaded and pinned buffer frame.
-     *
-     * @param parentContext lock context of the **parent** of the page being fetched
-     * @param pageNum       page number]
-     * @return specified page
-     */
-    public Page fetchPage(LockContext parentContext, long pageNum) {
-        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
-    }
+        // Buffer frames; replaced (under the sub-pool lock) when the buffer pool is resized
+        private volatile Frame[] frames;
 
-    /**
-     * Fetches a buffer frame for a new page. Pins the buffer frame. Cannot be used outside the package.
-     *
-     * @param partNum partition number for new page
-     * @return buffer frame for the new page
-     */
-    Frame fetchNewPageFrame(int partNum) {
-        long pageNum = this.diskSpaceManager.allocPage(partNum);
-        this.managerLock.lock();
-        try {
-            return fetchPageFrame(pageNum);
-        } finally {
-            this.managerLock.unlock();
-        }
-    }
+        // Map of page number to frame index; rebuilt when the buffer pool is resized
+        private volatile PageTable pageToFrame;
 
-    /**
-     * Fetches a new page, with a loaded and pinned buffer frame.
-     *
-     * @param parentContext parent lock context of the new page
-     * @param partNum       partition number for new page
-     * @return the new page
-     */
-    public Page fetchNewPage(LockContext parentContext, int partNum) {
-        Frame newFrame = this.fetchNewPageFrame(partNum);
-        return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
-    }
+        // Lock on this sub-pool
+        private ReentrantLock poolLock;
 
-    /**
-     * Frees a page - evicts the page from cache, and tells the disk space manager
-     * that the page is no longer needed. Page must be pinned before this call,
-     * and cannot be used after this call (aside from unpinning).
-     *
-     * @param page page to free
-     */
-    public void freePage(Page page) {
-        this.managerLock.lock();
-        try {
-            TransactionContext transaction = TransactionContext.getTransaction();
-            int frameIndex = this.pageToFrame.get(page.getPageNum());
+        // Eviction policy
+        private EvictionPolicy evictionPolicy;
 
-            Frame frame = this.frames[frameIndex];
-            if (transaction != null) page.flush();
-            this.pageToFrame.remove(page.getPageNum(), frameIndex);
-            evictionPolicy.cleanup(frame);
-            frame.setFree();
+        // Index of first free frame
+        private int firstFreeIndex;
 
-            this.frames[frameIndex] = new Frame(frame);
-            diskSpaceManager.freePage(page.getPageNum());
-        } finally {
-            this.managerLock.unlock();
+        private SubPool(int poolIndex, int numFrames, EvictionPolicy evictionPolicy, boolean offHeap) {
+            this.poolIndex = poolIndex;
+            this.frames = new Frame[numFrames];
+            ByteBuffer[] pages = allocatePages(numFrames, offHeap);
+            for (int i = 0; i < numFrames; ++i) {
+                this.frames[i] = new Frame(this, pages[i], i + 1);
+            }
+            this.firstFreeIndex = 0;
+            this.pageToFrame = new PageTable(numFrames);
+            this.poolLock = new ReentrantLock();
+            this.evictionPolicy = evictionPolicy;
         }
-    }
 
-    /**
-     * Frees a partition - evicts all relevant pages from cache, and tells the disk space manager
-     * that the partition is no longer needed. No pages in the partition may be pinned before this call,
-     * and cannot be used after this call.
-     *
-     * @param partNum partition number to free
-     */
-    public void freePart(int partNum) {
-        this.managerLock.lock();
-        try {
-            for (int i = 0; i < frames.length; ++i) {
-                Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
-                    evictionPolicy.cleanup(frame);
-                    frame.flush();
-                    frame.setFree();
-                    frames[i] = new Frame(frame);
+        private void close() {
+            this.poolLock.lock();
+            try {
+                for (Frame frame : this.frames) {
+                    frame.frameLock.writeLock().lock();
+                    try {
+                        if (frame.isPinned()) {
+                            throw new IllegalStateException("closing buffer manager but frame still pinned");
+                        }
+                        if (!frame.isValid()) {
+                            continue;
+                        }
+                        evictionPolicy.cleanup(frame);
+                        frame.invalidate();
+                    } finally {
+                        frame.frameLock.writeLock().unlock();
+                    }
                 }
+            } finally {
+                this.poolLock.unlock();
             }
+        }
 
-            diskSpaceManager.freePart(partNum);
-        } finally {
-            this.managerLock.unlock();
+        /**
+         * Fetches a buffer frame with data for the specified page, which must hash to
+         * this sub-pool. Pins the buffer frame, for reading only if forRead is set.
+         */
+        private Frame fetchPageFrame(long pageNum, boolean forRead) {
+            return this.fetchPageFrame(pageNum, forRead, false, null);
         }
-    }
 
-    /**
-     * Calls flush on the frame of a page and unloads the page from the frame. If the page
-     * is not loaded, this does nothing.
-     * @param pageNum page number of page to evict
-     */
-    public void evict(long pageNum) {
-        managerLock.lock();
-        try {
-            if (!pageToFrame.containsKey(pageNum)) {
+        /**
+         * Loads the specified page into this sub-pool, if it is not already loaded,
+         * marking it as prefetched. Does not leave the frame pinned.
+         */
+        private void prefetchPage(long pageNum) {
+            if (this.pageToFrame.get(pageNum) >= 0) {
                 return;
             }
-            evict(pageToFrame.get(pageNum));
-        } finally {
-            managerLock.unlock();
+            this.fetchPageFrame(pageNum, true, true, null).unpin();
         }
-    }
-
-    private void evict(int i) {
-        Frame frame = frames[i];
-        frame.frameLock.lock();
-        try {
-            if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
-                evictionPolicy.cleanup(frame);
 
-                frames[i] = new Frame(frame.contents, this.firstFreeIndex);
-                this.firstFreeIndex = i;
-
-                frame.invalidate();
+        /**
+         * Claims a frame for the specified page, if it is not already loaded, and starts
+         * reading the page into it asynchronously, adding the read to pending. The frame
+         * stays latched and pinned by the current thread until the read is finished with
+         * finishPrefetch.
+         */
+        private void startPrefetch(long pageNum, List<PendingRead> pending) {
+            if (this.pageToFrame.get(pageNum) >= 0) {
+                return;
             }
-        } finally {
-            frame.frameLock.unlock();
+            this.fetchPageFrame(pageNum, false, true, null, pending);
         }
-    }
 
-    /**
-     * Calls evict on every frame in sequence.
-     */
-    public void evictAll() {
-        for (int i = 0; i < frames.length; ++i) {
-            evict(i);
+        /**
+         * Fetches a buffer frame with data for the specified page, like
+         * fetchPageFrame(pageNum, forRead, prefetch, ring, null).
+         */
+        private Frame fetchPageFrame(long pageNum, boolean forRead, boolean prefetch, BufferRing ring) {
+            return this.fetchPageFrame(pageNum, forRead, prefetch, ring, null);
         }
-    }
 
-    /**
-     * Calls the passed in method with the page number of every loaded page.
-     * @param process method to consume page numbers. The first parameter is the page number,
-     *                and the second parameter is a boolean indicating whether the page is dirty
-     *                (has an unflushed change).
-     */
-    public void iterPageNums(BiConsumer<Long, Boolean> process) {
-        for (Frame frame : frames) {
-            frame.frameLock.lock();
+        /**
+         * Fetches a buffer frame with data for the specified page. If the page has to be
+         * loaded and ring is not null, it is loaded into the next frame of the ring,
+         * replacing the page there if that frame is unpinned and still holds it, and
+         * otherwise into a free frame or one chosen by the eviction policy.
+         *
+         * If pending is not null, the page is only loaded if it is not already in the
+         * sub-pool (null is returned otherwise), and it is read asynchronously: the read
+         * is added to pending, and the frame is returned still latched and pinned.
+         */
+        private Frame fetchPageFrame(long pageNum, boolean forRead, boolean prefetch, BufferRing ring,
+                                     List<PendingRead> pending) {
+            // fast path: a page already in the sub-pool is pinned without the sub-pool lock
+            // (the page table and frames may be from either side of a resize)
+            int hitIndex = this.pageToFrame.get(pageNum);
+            Frame[] frames = this.frames;
+            if (hitIndex >= 0 && pending != null) {
+                return null;
+            }
+            if (hitIndex >= 0 && hitIndex < frames.length) {
+                Frame hitFrame = frames[hitIndex];
+                if (hitFrame.tryPin(pageNum, forRead)) {
+                    if (!prefetch) {
+                        hitFrame.notePrefetchHit();
+                        stats.recordHit(DiskSpaceManager.getPartNum(pageNum));
+                    }
+                    return hitFrame;
+                }
+            }
+
+            this.poolLock.lock();
+            Frame newFrame;
+            Frame evictedFrame;
+            boolean evicting = true;
+            // figure out what frame to load data to, and update sub-pool state
             try {
-                if (frame.isValid()) {
-                    process.accept(frame.pageNum, frame.dirty);
+                if (!diskSpaceManager.pageAllocated(pageNum)) {
+                    throw new PageException("page " + pageNum + " not allocated");
+                }
+                hitIndex = this.pageToFrame.get(pageNum);
+                if (hitIndex >= 0 && pending != null) {
+                    return null;
+                }
+                if (hitIndex >= 0) {
+                    newFrame = this.frames[hitIndex];
+                    if (forRead) {
+                        newFrame.pinForRead();
+                    } else {
+                        newFrame.pin();
+                    }
+                    if (!prefetch) {
+                        newFrame.notePrefetchHit();
+                        stats.recordHit(DiskSpaceManager.getPartNum(pageNum));
+                    }
+                    return newFrame;
                 }
+                Frame ringFrame = ring == null ? null : (Frame) ring.current(this.poolIndex);
+                if (ringFrame != null && ringFrame.isValid() && !ringFrame.isPinned()
+                        && this.frames[ringFrame.index] == ringFrame) {
+                    // recycle the ring's own frame
+                    evictedFrame = ringFrame;
+                    this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
+                    evictionPolicy.cleanup(evictedFrame);
+                    ring.noteRecycled();
+                } else if (this.firstFreeIndex < this.frames.length) {
+                    // prioritize free frames over eviction
+                    evictedFrame = this.frames[this.firstFreeIndex];
+                    evictedFrame.setUsed();
+                    evicting = false;
+                } else {
+                    evictedFrame = (Frame) evictionPolicy.evict(frames);
+                    this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
+                    evictionPolicy.cleanup(evictedFrame);
+                }
+                int frameIndex = evictedFrame.index;
+                newFrame = new Frame(this, evictedFrame.contents, frameIndex, pageNum);
+                // latch the new frame before publishing it, so that lookups without the
+                // sub-pool lock wait for the page to be read in
+                newFrame.frameLock.writeLock().lock();
+                this.frames[frameIndex] = newFrame;
+                evictionPolicy.init(newFrame);
+                if (ring != null) {
+                    newFrame.ring = ring;
+                    ring.advance(this.poolIndex, newFrame);
+                }
+
+                evictedFrame.frameLock.writeLock().lock();
+
+                this.pageToFrame.put(pageNum, frameIndex);
             } finally {
-                frame.frameLock.unlock();
+                this.poolLock.unlock();
             }
-        }
+            if (!prefetch) {
+                stats.recordMiss(DiskSpaceManager.getPartNum(pageNum));
+            }
+            // flush evicted frame
+            try {
+                if (evicting) {
+                    stats.recordEviction(evictedFrame.dirty);
+                }
+                evictedFrame.invalidate();
+            } finally {
+                evictedFrame.frameLock.writeLock().unlock();
+            }
+            // read new page into frame; a reader downgrades to a shared latch once loaded
+            boolean reading = false;
+            try {
+                newFrame.pageNum = pageNum;
+                newFrame.pin();
+                if (pending != null) {
+                    pending.add(new PendingRead(newFrame, diskSpaceManager.readPageAsync(pageNum, newFrame.contents)));
+                    reading = true;
+                    return newFrame;
+                }
+                diskSpaceManager.readPage(pageNum, newFrame.contents);
+                incrementIOs();
+                if (prefetch) {
+                    newFrame.prefetched.set(true);
+                    numPrefetched.incrementAndGet();
+                }
+                if (forRead) {
+                    // trade the pin's exclusive hold for a shared one; the pin count is
+                    // unchanged, and unpin releases the shared hold
+                    newFrame.frameLock.readLock().lock();
+                    newFrame.frameLock.writeLock().unlock();
+                }
+                return newFrame;
+            } catch (PageException e) {
+                newFrame.unpin();
+                throw e;
+            } finally {
+                if (!reading) {
+                    newFrame.frameLock.writeLock().unlock();
+                }
+            }
+        }
+
+        /**
+         * Waits for a read started by startPrefetch and releases its frame, marking the
+         * frame as prefetched if the read succeeded.
+         */
+        private void finishPrefetch(PendingRead read) {
+            Frame frame = read.frame;
+            try {
+                read.future.join();
+                incrementIOs();
+                frame.prefetched.set(true);
+                numPrefetched.incrementAndGet();
+            } catch (CompletionException e) {
+                // page freed since it was found allocated: the frame is left as is, like
+                // a failed synchronous read
+            } finally {
+                frame.unpin();
+                frame.frameLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Removes a page from this sub-pool, returning its frame to the free list. The
+         * sub-pool lock must be held.
+         */
+        private void freeFrame(int frameIndex) {
+            Frame frame = this.frames[frameIndex];
+            this.pageToFrame.remove(frame.getPageNum(), frameIndex);
+            evictionPolicy.cleanup(frame);
+            frame.setFree();
+            this.frames[frameIndex] = new Frame(frame);
+        }
+
+        private void evict(long pageNum) {
+            this.poolLock.lock();
+            try {
+                int frameIndex = this.pageToFrame.get(pageNum);
+                if (frameIndex < 0) {
+                    return;
+                }
+                evict(frameIndex);
+            } finally {
+                this.poolLock.unlock();
+            }
+        }
+
+        private void evict(int i) {
+            Frame[] frames = this.frames;
+            if (i >= frames.length) {
+                // the sub-pool shrank
+                return;
+            }
+            Frame frame = frames[i];
+            frame.frameLock.writeLock().lock();
+            try {
+                if (frame.isValid() && !frame.isPinned()) {
+                    this.evictLatched(i, frame);
+                }
+            } finally {
+                frame.frameLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Unloads the page in frame i, flushing it if it is dirty, and puts the frame
+         * on the free list. The frame must be valid, unpinned and exclusively latched.
+         */
+        private void evictLatched(int i, Frame frame) {
+            this.pageToFrame.remove(frame.pageNum, frame.index);
+            evictionPolicy.cleanup(frame);
+
+            this.frames[i] = new Frame(this, frame.contents, this.firstFreeIndex);
+            this.firstFreeIndex = i;
+
+            stats.recordEviction(frame.dirty);
+            frame.invalidate();
+        }
+
+        /**
+         * Latches the frames that shrinking this sub-pool to numFrames frames would
+         * remove, if none of them are pinned or latched by another thread. The sub-pool
+         * lock must be held.
+         *
+         * @return whether the frames were latched; if not, none of them are left latched
+         */
+        private boolean latchRemovedFrames(int numFrames) {
+            for (int i = numFrames; i < this.frames.length; ++i) {
+                Frame frame = this.frames[i];
+                if (!frame.frameLock.writeLock().tryLock()) {
+                    this.unlatchRemovedFrames(numFrames, i);
+                    return false;
+                }
+                if (frame.isPinned()) {
+                    this.unlatchRemovedFrames(numFrames, i + 1);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Releases the latches taken by latchRemovedFrames on frames numFrames through end - 1.
+         */
+        private void unlatchRemovedFrames(int numFrames, int end) {
+            for (int i = numFrames; i < end; ++i) {
+                this.frames[i].frameLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Grows or shrinks this sub-pool to numFrames frames. New frames go on the free
+         * list. When shrinking, the pages in the removed frames are evicted (dirty pages
+         * are written out first), and their memory is released; the removed frames must
+         * have been latched with latchRemovedFrames. The sub-pool lock must be held.
+         */
+        private void resize(int numFrames) {
+            int oldNumFrames = this.frames.length;
+            if (numFrames > oldNumFrames) {
+                Frame[] frames = Arrays.copyOf(this.frames, numFrames);
+                ByteBuffer[] pages = allocatePages(numFrames - oldNumFrames, offHeap);
+                // the end of the free list is marked by the old number of frames, so the
+                // existing free list runs on into the new frames
+                for (int i = oldNumFrames; i < numFrames; ++i) {
+                    frames[i] = new Frame(this, pages[i - oldNumFrames], i + 1);
+                }
+                this.frames = frames;
+            } else if (numFrames < oldNumFrames) {
+                Frame[] removed = Arrays.copyOfRange(this.frames, numFrames, oldNumFrames);
+                try {
+                    for (int i = numFrames; i < oldNumFrames; ++i) {
+                        Frame frame = removed[i - numFrames];
+                        if (frame.isValid()) {
+                            this.evictLatched(i, frame);
+                        }
+                    }
+                } finally {
+                    for (Frame frame : removed) {
+                        frame.frameLock.writeLock().unlock();
+                    }
+                }
+                // rebuild the free list out of the remaining free frames
+                Frame[] frames = Arrays.copyOf(this.frames, numFrames);
+                int nextFree = numFrames;
+                for (int i = numFrames - 1; i >= 0; --i) {
+                    if (frames[i].isFreed()) {
+                        frames[i] = new Frame(this, frames[i].contents, nextFree);
+                        nextFree = i;
+                    }
+                }
+                this.firstFreeIndex = nextFree;
+                this.frames = frames;
+            } else {
+                return;
+            }
+            PageTable pageToFrame = new PageTable(numFrames);
+            for (int i = 0; i < numFrames; ++i) {
+                Frame frame = this.frames[i];
+                if (frame.isValid()) {
+                    pageToFrame.put(frame.pageNum, i);
+                }
+            }
+            this.pageToFrame = pageToFrame;
+        }
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, EvictionPolicy evictionPolicy) {
+        this(diskSpaceManager, recoveryManager, bufferSize, () -> evictionPolicy, 1);
+    }
+
+    /**
+     * Creates a new buffer manager, with the buffer split into numPools independent sub-pools.
+     * Each sub-pool gets its own eviction policy, so policyFactory must return a new instance
+     * on every call when numPools is more than one.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param policyFactory creates the eviction policy of each sub-pool
+     * @param numPools number of sub-pools to split the buffer into
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, Supplier<EvictionPolicy> policyFactory, int numPools) {
+        this(diskSpaceManager, recoveryManager, bufferSize, policyFactory, numPools, false);
+    }
+
+    /**
+     * Creates a new buffer manager, optionally keeping the contents of its frames off
+     * the Java heap. Off-heap frames are slices of large direct buffers: they add nothing
+     * to garbage collection work, and are read from and written to disk without being
+     * copied through a temporary buffer first. The memory is only returned to the OS
+     * once the buffer manager is garbage collected, and counts against the JVM's
+     * -XX:MaxDirectMemorySize rather than -Xmx.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param policyFactory creates the eviction policy of each sub-pool
+     * @param numPools number of sub-pools to split the buffer into
+     * @param offHeap whether to allocate frames in direct (off-heap) memory
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, Supplier<EvictionPolicy> policyFactory, int numPools,
+                         boolean offHeap) {
+        if (numPools < 1 || numPools > bufferSize) {
+            throw new IllegalArgumentException("number of buffer pools must be between 1 and the buffer size");
+        }
+        this.diskSpaceManager = diskSpaceManager;
+        this.recoveryManager = recoveryManager;
+        this.pageSize = diskSpaceManager.getPageSize();
+        this.effectivePageSize = (short) (this.pageSize - RESERVED_SPACE);
+        this.pools = new SubPool[numPools];
+        for (int i = 0; i < numPools; ++i) {
+            // spread the remainder over the first few sub-pools
+            int numFrames = bufferSize / numPools + (i < bufferSize % numPools ? 1 : 0);
+            this.pools[i] = new SubPool(i, numFrames, policyFactory.get(), offHeap);
+        }
+        this.offHeap = offHeap;
+        diskSpaceManager.setWrittenPageCheck(this::reportIfUnchanged);
+    }
+
+    /**
+     * Allocates the page-sized buffers backing numFrames frames. Off-heap pages are carved
+     * out of as few direct buffers as possible (a single buffer holds at most 2GB).
+     */
+    private ByteBuffer[] allocatePages(int numFrames, boolean offHeap) {
+        ByteBuffer[] pages = new ByteBuffer[numFrames];
+        if (!offHeap) {
+            for (int i = 0; i < numFrames; ++i) {
+                pages[i] = ByteBuffer.wrap(new byte[this.pageSize]);
+            }
+            return pages;
+        }
+        int pagesPerChunk = Integer.MAX_VALUE / this.pageSize;
+        for (int start = 0; start < numFrames; start += pagesPerChunk) {
+            int chunkPages = Math.min(pagesPerChunk, numFrames - start);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(chunkPages * this.pageSize);
+            for (int i = 0; i < chunkPages; ++i) {
+                chunk.limit((i + 1) * this.pageSize);
+                chunk.position(i * this.pageSize);
+                pages[start + i] = chunk.slice();
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Grows or shrinks the buffer pool to bufferSize frames, without stopping the
+     * buffer manager. The frames are split among the sub-pools as they are when the
+     * buffer manager is created. When shrinking, the pages in the frames removed are
+     * evicted, dirty pages being written out first, and the memory of the frames is
+     * released (off-heap frames carved out of a direct buffer along with frames that
+     * remain only return their memory once all of them are gone). Frames to be removed
+     * that are pinned are waited for, up to about a second, after which the buffer
+     * pool is left as it was.
+     *
+     * @param bufferSize new size of buffer (in pages)
+     * @throws IllegalStateException if the frames to be removed stay pinned
+     */
+    public void resize(int bufferSize) {
+        if (bufferSize < this.pools.length) {
+            throw new IllegalArgumentException("buffer size must be at least the number of buffer pools");
+        }
+        int[] sizes = new int[this.pools.length];
+        for (int i = 0; i < this.pools.length; ++i) {
+            sizes[i] = bufferSize / this.pools.length + (i < bufferSize % this.pools.length ? 1 : 0);
+        }
+        for (int attempt = 0; attempt < RESIZE_ATTEMPTS; ++attempt) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RESIZE_RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            // every sub-pool lock is held (always acquired in the same order), so that
+            // either every sub-pool is resized or none is
+            for (SubPool pool : this.pools) {
+                pool.poolLock.lock();
+            }
+            try {
+                int latched = 0;
+                while (latched < this.pools.length && this.pools[latched].latchRemovedFrames(sizes[latched])) {
+                    ++latched;
+                }
+                if (latched < this.pools.length) {
+                    for (int i = 0; i < latched; ++i) {
+                        this.pools[i].unlatchRemovedFrames(sizes[i], this.pools[i].frames.length);
+                    }
+                    continue;
+                }
+                this.diskSpaceManager.beginWriteBatch();
+                try {
+                    for (int i = 0; i < this.pools.length; ++i) {
+                        this.pools[i].resize(sizes[i]);
+                    }
+                } finally {
+                    this.diskSpaceManager.endWriteBatch();
+                }
+                return;
+            } finally {
+                for (int i = this.pools.length - 1; i >= 0; --i) {
+                    this.pools[i].poolLock.unlock();
+                }
+            }
+        }
+        throw new IllegalStateException("cannot shrink buffer pool - pages in frames to be removed are pinned");
+    }
+
+    /**
+     * @return number of frames in the buffer pool
+     */
+    public int getBufferSize() {
+        int numFrames = 0;
+        for (SubPool pool : this.pools) {
+            numFrames += pool.frames.length;
+        }
+        return numFrames;
+    }
+
+    /**
+     * @return size of every page, in bytes (that of the disk space manager)
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * @return space available to users of the buffer manager on each (non-log) page,
+     * after the space reserved for recovery
+     */
+    public short getEffectivePageSize() {
+        return this.effectivePageSize;
+    }
+
+    /**
+     * Largest number of bytes of a page that a single page write log record may cover:
+     * the before and after images of that many bytes, along with the rest of the record,
+     * must fit on a log page. Larger writes are logged in pieces.
+     *
+     * @param pageSize page size in bytes
+     * @return maximum length of a logged page write
+     */
+    public static int maxLoggedWriteSize(int pageSize) {
+        return (Math.min(pageSize, LogManager.MAX_LOG_PAGE_BYTES) - RESERVED_SPACE) / 2;
+    }
+
+    /**
+     * @return whether frame contents are kept off the Java heap
+     */
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    @Override
+    public void close() {
+        this.stopBackgroundWriter();
+        this.stopWarmUp();
+        synchronized (this) {
+            if (this.prefetchExecutor != null) {
+                this.prefetchExecutor.shutdownNow();
+                try {
+                    this.prefetchExecutor.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        this.diskSpaceManager.beginWriteBatch();
+        try {
+            this.flushDirtyPages();
+            for (SubPool pool : this.pools) {
+                pool.close();
+            }
+        } finally {
+            this.diskSpaceManager.endWriteBatch();
+        }
+    }
+
+    /**
+     * Starts a background writer, which every intervalMillis milliseconds flushes the
+     * dirty, unpinned pages among the next lookahead frames each sub-pool's eviction
+     * policy would evict. Any writer already running is stopped first.
+     *
+     * @param intervalMillis time to wait between passes, in milliseconds
+     * @param lookahead number of frames per sub-pool to look at in each pass
+     * @return the new background writer, from which its statistics can be read
+     */
+    public synchronized BackgroundWriter startBackgroundWriter(long intervalMillis, int lookahead) {
+        BackgroundWriter writer = new BackgroundWriter(this, intervalMillis, lookahead);
+        this.stopBackgroundWriter();
+        this.backgroundWriter = writer;
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * Stops the background writer, if one is running, waiting for its current pass to finish.
+     */
+    public synchronized void stopBackgroundWriter() {
+        if (this.backgroundWriter != null) {
+            this.backgroundWriter.stop();
+            this.backgroundWriter = null;
+        }
+    }
+
+    /**
+     * @return the running background writer, or null if there is none
+     */
+    public synchronized BackgroundWriter getBackgroundWriter() {
+        return this.backgroundWriter;
+    }
+
+    /**
+     * Lists the pages in the buffer pool, hottest first, so that they can be loaded
+     * again with warmUp after a restart. Pages are ordered by how late their sub-pool's
+     * eviction policy would evict them, alternating between sub-pools. Log pages are
+     * left out.
+     *
+     * @param maxPages maximum number of pages to list
+     * @return page numbers of up to maxPages pages in the buffer pool
+     */
+    public List<Long> getHotPageNums(int maxPages) {
+        List<List<Long>> perPool = new ArrayList<>();
+        for (SubPool pool : this.pools) {
+            List<Long> pageNums = new ArrayList<>();
+            pool.poolLock.lock();
+            try {
+                for (BufferFrame frame : pool.evictionPolicy.upcomingEvictions(pool.frames, pool.frames.length)) {
+                    if (frame.isValid() && DiskSpaceManager.getPartNum(frame.getPageNum()) != LogManager.LOG_PARTITION) {
+                        pageNums.add(frame.getPageNum());
+                    }
+                }
+            } finally {
+                pool.poolLock.unlock();
+            }
+            Collections.reverse(pageNums);
+            perPool.add(pageNums);
+        }
+        List<Long> hot = new ArrayList<>();
+        for (int i = 0; hot.size() < maxPages; ++i) {
+            boolean any = false;
+            for (List<Long> pageNums : perPool) {
+                if (i < pageNums.size() && hot.size() < maxPages) {
+                    hot.add(pageNums.get(i));
+                    any = true;
+                }
+            }
+            if (!any) {
+                break;
+            }
+        }
+        return hot;
+    }
+
+    /**
+     * Loads pages into the buffer pool in the background, in page number order (so
+     * that each partition is read sequentially), to warm up the pool after a restart.
+     * Pages that are already loaded or no longer allocated are skipped, as are pages
+     * whose sub-pool has no free frame left, so warm-up never evicts anything. Pages
+     * are not pinned, and are counted as prefetched. Any warm-up already running is
+     * stopped first.
+     *
+     * @param pageNums pages to load, typically from getHotPageNums before the restart
+     */
+    public synchronized void warmUp(Collection<Long> pageNums) {
+        this.stopWarmUp();
+        long[] sorted = new long[pageNums.size()];
+        int i = 0;
+        for (long pageNum : pageNums) {
+            sorted[i++] = pageNum;
+        }
+        Arrays.sort(sorted);
+        this.warmUpThread = new Thread(() -> {
+            for (long pageNum : sorted) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                SubPool pool = poolFor(pageNum);
+                // read without the sub-pool lock: at worst, one page too many is loaded
+                if (pool.firstFreeIndex >= pool.frames.length || pool.pageToFrame.get(pageNum) >= 0) {
+                    continue;
+                }
+                try {
+                    pool.prefetchPage(pageNum);
+                    numWarmedUp.incrementAndGet();
+                } catch (PageException | NoSuchElementException | IllegalStateException e) {
+                    // page or partition freed since the list was written, or every frame pinned
+                }
+            }
+        }, "buffer-warm-up");
+        this.warmUpThread.setDaemon(true);
+        this.warmUpThread.start();
+    }
+
+    /**
+     * Stops warm-up, if it is running, waiting for the page being loaded.
+     */
+    public synchronized void stopWarmUp() {
+        if (this.warmUpThread == null) {
+            return;
+        }
+        this.warmUpThread.interrupt();
+        boolean interrupted = false;
+        while (this.warmUpThread.isAlive()) {
+            try {
+                this.warmUpThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.warmUpThread = null;
+    }
+
+    /**
+     * @return whether warm-up is still loading pages
+     */
+    public synchronized boolean isWarmingUp() {
+        return this.warmUpThread != null && this.warmUpThread.isAlive();
+    }
+
+    /**
+     * @return number of pages loaded by warm-up
+     */
+    public long getNumWarmedUp() {
+        return this.numWarmedUp.get();
+    }
+
+    /**
+     * Flushes the dirty, unpinned pages among the next lookahead frames that each
+     * sub-pool's eviction policy would evict, in page number order, syncing them
+     * together at the end. Frames that are latched by another thread are skipped.
+     * Used by the background writer.
+     *
+     * @param lookahead number of frames per sub-pool to look at
+     * @return number of pages written
+     */
+    int cleanUpcomingEvictions(int lookahead) {
+        List<Frame> candidates = new ArrayList<>();
+        for (SubPool pool : this.pools) {
+            pool.poolLock.lock();
+            try {
+                for (BufferFrame frame : pool.evictionPolicy.upcomingEvictions(pool.frames, lookahead)) {
+                    Frame f = (Frame) frame;
+                    if (f.isValid() && f.dirty && !f.isPinned()) {
+                        candidates.add(f);
+                    }
+                }
+            } finally {
+                pool.poolLock.unlock();
+            }
+        }
+        candidates.sort(Comparator.comparingLong(Frame::getPageNum));
+        this.diskSpaceManager.beginWriteBatch();
+        try {
+            return this.flushAll(candidates);
+        } finally {
+            this.diskSpaceManager.endWriteBatch();
+        }
+    }
+
+    /**
+     * Flushes the given frames that are dirty and not in use with a single
+     * DiskSpaceManager#writePages call, so that runs of adjacent pages are written
+     * together and each partition is synced once. Frames that are latched by another
+     * thread are skipped. If a page was freed from under us, the pages are written
+     * one at a time instead, skipping the freed ones.
+     *
+     * @param frames frames to flush
+     * @return number of pages written
+     */
+    private int flushAll(List<Frame> frames) {
+        List<Frame> flushing = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (Frame frame : frames) {
+                if (!frame.frameLock.readLock().tryLock()) {
+                    continue;
+                }
+                if (frame.isPinned() || !frame.isValid() || !frame.dirty) {
+                    frame.frameLock.readLock().unlock();
+                    continue;
+                }
+                flushing.add(frame);
+                if (!frame.logPage && !frame.tempPage) {
+                    this.recoveryManager.pageFlushHook(frame.getPageLSN());
+                }
+            }
+            long[] pageNums = new long[flushing.size()];
+            ByteBuffer[] bufs = new ByteBuffer[flushing.size()];
+            for (int i = 0; i < pageNums.length; ++i) {
+                pageNums[i] = flushing.get(i).pageNum;
+                bufs[i] = flushing.get(i).contents;
+            }
+            try {
+                this.diskSpaceManager.writePages(pageNums, bufs);
+            } catch (PageException e) {
+                int written = 0;
+                for (Frame frame : flushing) {
+                    try {
+                        this.diskSpaceManager.writePage(frame.pageNum, frame.contents);
+                        this.markFlushed(frame, start);
+                        ++written;
+                    } catch (PageException e2) {
+                        // page was freed from under us
+                    }
+                }
+                return written;
+            }
+            for (Frame frame : flushing) {
+                this.markFlushed(frame, start);
+            }
+            return flushing.size();
+        } finally {
+            for (Frame frame : flushing) {
+                frame.frameLock.readLock().unlock();
+            }
+        }
+    }
+
+    // Records that a frame latched by flushAll has been written out
+    private void markFlushed(Frame frame, long start) {
+        this.incrementIOs();
+        frame.dirty = false;
+        this.stats.recordFlush(System.nanoTime() - start);
+    }
+
+    /**
+     * Reports a page written by a write batch as on disk once the batch has synced it
+     * (see DiskSpaceManager#setWrittenPageCheck), unless its frame has been dirtied
+     * again or given a newer pageLSN since: the recovery manager would otherwise drop
+     * the page from the dirty page table while the newer change is only in memory.
+     * The frame stays latched while the page is reported, so that no change can slip
+     * in between. A frame latched by another thread may be changing, so its page is
+     * left in the dirty page table until its next write.
+     */
+    private void reportIfUnchanged(long pageNum, long pageLSN, Runnable report) {
+        SubPool pool = poolFor(pageNum);
+        int frameIndex = pool.pageToFrame.get(pageNum);
+        Frame[] frames = pool.frames;
+        if (frameIndex < 0) {
+            // not loaded: loading it again means reading it from disk, which waits
+            // for the partition lock held while the batch syncs
+            report.run();
+            return;
+        }
+        if (frameIndex >= frames.length) {
+            // the sub-pool is being resized
+            return;
+        }
+        Frame frame = frames[frameIndex];
+        if (!frame.frameLock.readLock().tryLock()) {
+            return;
+        }
+        try {
+            if (frame.isValid() && frame.pageNum == pageNum && (frame.dirty || frame.getPageLSN() != pageLSN)) {
+                return;
+            }
+            report.run();
+        } finally {
+            frame.frameLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param pageNum page number
+     * @return the sub-pool responsible for the page
+     */
+    private SubPool poolFor(long pageNum) {
+        return this.pools[(int) Math.floorMod(pageNum, (long) this.pools.length)];
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page. Reuses existing
+     * buffer frame if page already loaded in memory. Pins the buffer frame.
+     * Cannot be used outside the package.
+     *
+     * @param pageNum page number
+     * @return buffer frame with specified page loaded
+     */
+    Frame fetchPageFrame(long pageNum) {
+        Frame frame = poolFor(pageNum).fetchPageFrame(pageNum, false);
+        this.noteAccess(pageNum);
+        return frame;
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page, like fetchPageFrame,
+     * but pins the buffer frame for reading only, so that it may be shared with other
+     * readers. Cannot be used outside the package.
+     *
+     * @param pageNum page number
+     * @return buffer frame with specified page loaded
+     */
+    Frame fetchPageFrameForRead(long pageNum) {
+        Frame frame = poolFor(pageNum).fetchPageFrame(pageNum, true);
+        this.noteAccess(pageNum);
+        return frame;
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page, loading it through
+     * ring if it is not already in memory. Pins the buffer frame, for reading only
+     * if forRead is set. Fetches through a ring are not read ahead of, since that
+     * would load pages outside the ring. Cannot be used outside the package.
+     *
+     * @param pageNum page number
+     * @param forRead whether to pin the frame for reading only
+     * @param ring ring to load the page through, or null for the shared pool
+     * @return buffer frame with specified page loaded
+     */
+    Frame fetchPageFrame(long pageNum, boolean forRead, BufferRing ring) {
+        if (ring == null) {
+            return forRead ? fetchPageFrameForRead(pageNum) : fetchPageFrame(pageNum);
+        }
+        return poolFor(pageNum).fetchPageFrame(pageNum, forRead, false, ring);
+    }
+
+    /**
+     * Creates a ring of buffer frames, for an operation that should not push pages
+     * out of the shared buffer pool. The ring gets numPages frames, split evenly
+     * among the sub-pools, but never more than a quarter of the frames of a
+     * sub-pool, and never less than one frame per sub-pool.
+     *
+     * @param numPages number of frames to give the ring
+     * @return the new ring
+     */
+    public BufferRing createRing(int numPages) {
+        if (numPages < 1) {
+            throw new IllegalArgumentException("buffer ring must have at least one frame");
+        }
+        int[] slotsPerPool = new int[this.pools.length];
+        for (int i = 0; i < this.pools.length; ++i) {
+            int share = numPages / this.pools.length + (i < numPages % this.pools.length ? 1 : 0);
+            slotsPerPool[i] = Math.max(1, Math.min(share, this.pools[i].frames.length / 4));
+        }
+        return new BufferRing(slotsPerPool);
+    }
+
+    /**
+     * Whether an operation reading or writing numPages pages should go through a
+     * ring rather than the shared buffer pool: that is, whether it would take up
+     * more than a quarter of the buffer pool.
+     *
+     * @param numPages number of pages read or written
+     * @return whether to use a ring
+     */
+    public boolean shouldUseRing(int numPages) {
+        return numPages > this.getBufferSize() / 4;
+    }
+
+    /**
+     * Sets the number of pages to read ahead. Once a partition is being read
+     * sequentially (SEQUENTIAL_THRESHOLD consecutive pages have been fetched in
+     * order), the next numPages pages are loaded in the background, so that the scan
+     * finds them in memory. Callers that know which pages they will need next may also
+     * request them with prefetch. Setting this to 0 (the default) disables read-ahead.
+     *
+     * @param numPages number of pages to read ahead
+     */
+    public synchronized void setReadAhead(int numPages) {
+        if (numPages < 0) {
+            throw new IllegalArgumentException("cannot read ahead a negative number of pages");
+        }
+        if (numPages > 0 && this.prefetchExecutor == null) {
+            this.prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "buffer-read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.readAhead = numPages;
+    }
+
+    /**
+     * @return number of pages read ahead of a sequential scan, or 0 if read-ahead is disabled
+     */
+    public int getReadAhead() {
+        return this.readAhead;
+    }
+
+    /**
+     * Asynchronously loads a page into the buffer pool, if read-ahead is enabled and
+     * the page is not already loaded. The page is not pinned. Pages that are not
+     * allocated are ignored.
+     *
+     * Queued pages are loaded up to PREFETCH_BATCH at a time, with the reads of a
+     * batch issued together (see DiskSpaceManager#readPageAsync), so that they can
+     * overlap.
+     *
+     * @param pageNum page number
+     */
+    public void prefetch(long pageNum) {
+        if (this.readAhead == 0 || poolFor(pageNum).pageToFrame.get(pageNum) >= 0) {
+            return;
+        }
+        if (!this.prefetching.add(pageNum)) {
+            return;
+        }
+        this.prefetchQueue.add(pageNum);
+        try {
+            this.prefetchExecutor.execute(this::loadPrefetchQueue);
+        } catch (RejectedExecutionException e) {
+            // buffer manager closed
+            this.prefetchQueue.remove(pageNum);
+            this.prefetching.remove(pageNum);
+        }
+    }
+
+    /**
+     * Loads the pages queued by prefetch, a batch at a time. Runs on the read-ahead thread.
+     */
+    private void loadPrefetchQueue() {
+        List<Long> batch = new ArrayList<>();
+        List<PendingRead> pending = new ArrayList<>();
+        while (!this.prefetchQueue.isEmpty()) {
+            try {
+                Long pageNum;
+                while (batch.size() < PREFETCH_BATCH && (pageNum = this.prefetchQueue.poll()) != null) {
+                    batch.add(pageNum);
+                    poolFor(pageNum).startPrefetch(pageNum, pending);
+                }
+            } catch (PageException | IllegalStateException e) {
+                // page not allocated, or every frame pinned: the scan reads it itself
+            } finally {
+                for (PendingRead read : pending) {
+                    read.frame.pool.finishPrefetch(read);
+                }
+                this.prefetching.removeAll(batch);
+                batch.clear();
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Sequential access detection state for a partition.
+     */
+    private static class ScanState {
+        private long lastPageNum = DiskSpaceManager.INVALID_PAGE_NUM;
+        private int runLength = 0;
+        private long prefetchedThrough = DiskSpaceManager.INVALID_PAGE_NUM;
+    }
+
+    /**
+     * Records a fetch of a page, and reads ahead if its partition is being scanned
+     * sequentially.
+     */
+    private void noteAccess(long pageNum) {
+        int numPages = this.readAhead;
+        if (numPages == 0) {
+            return;
+        }
+        ScanState state = this.scanStates.computeIfAbsent(DiskSpaceManager.getPartNum(pageNum),
+                partNum -> new ScanState());
+        long from;
+        long to;
+        synchronized (state) {
+            if (pageNum == state.lastPageNum) {
+                return;
+            }
+            if (pageNum == state.lastPageNum + 1) {
+                ++state.runLength;
+            } else {
+                state.runLength = 1;
+                state.prefetchedThrough = pageNum;
+            }
+            state.lastPageNum = pageNum;
+            if (state.runLength < SEQUENTIAL_THRESHOLD) {
+                return;
+            }
+            from = Math.max(state.prefetchedThrough, pageNum) + 1;
+            to = pageNum + numPages;
+            if (from > to) {
+                return;
+            }
+            state.prefetchedThrough = to;
+        }
+        for (long p = from; p <= to; ++p) {
+            this.prefetch(p);
+        }
+    }
+
+    /**
+     * @return the buffer manager's hit, miss, eviction, pin wait and flush latency
+     * counters; the returned object is live, and keeps counting
+     */
+    public BufferStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return number of pages in the buffer pool that have been modified since they
+     * were last written out
+     */
+    public int getNumDirtyPages() {
+        int numDirty = 0;
+        for (int count : this.getDirtyPageCounts().values()) {
+            numDirty += count;
+        }
+        return numDirty;
+    }
+
+    /**
+     * @return number of dirty pages in the buffer pool, per partition, for
+     * partitions with at least one dirty page. Frames are read without taking
+     * any locks, so pages being loaded or written out at the time may be missed.
+     */
+    public SortedMap<Integer, Integer> getDirtyPageCounts() {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        for (SubPool pool : this.pools) {
+            for (Frame frame : pool.frames) {
+                if (frame.isValid() && frame.dirty) {
+                    counts.merge(DiskSpaceManager.getPartNum(frame.pageNum), 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead or warm-up
+     */
+    public long getNumPrefetched() {
+        return numPrefetched.get();
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead or warm-up that were later fetched
+     */
+    public long getNumPrefetchHits() {
+        return numPrefetchHits.get();
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead or warm-up that were evicted or
+     * freed without ever being fetched
+     */
+    public long getNumPrefetchUnused() {
+        return numPrefetchUnused.get();
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number]
+     * @return specified page
+     */
+    public Page fetchPage(LockContext parentContext, long pageNum) {
+        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+    }
+
+    /**
+     * Fetches the specified page, with a loaded buffer frame pinned for reading. Other
+     * readers may pin the same page concurrently, but the page may not be written to
+     * until it is unpinned and pinned again with Page#pin.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number
+     * @return specified page
+     */
+    public Page fetchPageForRead(LockContext parentContext, long pageNum) {
+        return this.frameToPage(parentContext, pageNum, this.fetchPageFrameForRead(pageNum));
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame. If the page
+     * is not in memory, it is loaded through the given ring (see BufferRing).
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number
+     * @param ring          ring to load the page through, or null for the shared pool
+     * @return specified page
+     */
+    public Page fetchPage(LockContext parentContext, long pageNum, BufferRing ring) {
+        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum, false, ring));
+    }
+
+    /**
+     * Like fetchPage(parentContext, pageNum, ring), but the page is pinned for reading only.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number
+     * @param ring          ring to load the page through, or null for the shared pool
+     * @return specified page
+     */
+    public Page fetchPageForRead(LockContext parentContext, long pageNum, BufferRing ring) {
+        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum, true, ring));
+    }
+
+    /**
+     * Fetches a buffer frame for a new page. Pins the buffer frame. Cannot be used outside the package.
+     *
+     * @param partNum partition number for new page
+     * @return buffer frame for the new page
+     */
+    Frame fetchNewPageFrame(int partNum) {
+        long pageNum = this.diskSpaceManager.allocPage(partNum);
+        return fetchPageFrame(pageNum);
+    }
+
+    /**
+     * Fetches a new page, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext parent lock context of the new page
+     * @param partNum       partition number for new page
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, int partNum) {
+        Frame newFrame = this.fetchNewPageFrame(partNum);
+        return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
+    }
+
+    /**
+     * Fetches a new page, with a loaded and pinned buffer frame from the given ring
+     * (see BufferRing).
+     *
+     * @param parentContext parent lock context of the new page
+     * @param partNum       partition number for new page
+     * @param ring          ring to load the page through, or null for the shared pool
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, int partNum, BufferRing ring) {
+        long pageNum = this.diskSpaceManager.allocPage(partNum);
+        Frame newFrame = this.fetchPageFrame(pageNum, false, ring);
+        return this.frameToPage(parentContext, pageNum, newFrame);
+    }
+
+    /**
+     * Frees a page - evicts the page from cache, and tells the disk space manager
+     * that the page is no longer needed. Page must be pinned before this call,
+     * and cannot be used after this call (aside from unpinning).
+     *
+     * @param page page to free
+     */
+    public void freePage(Page page) {
+        SubPool pool = poolFor(page.getPageNum());
+        pool.poolLock.lock();
+        try {
+            TransactionContext transaction = TransactionContext.getTransaction();
+            int frameIndex = pool.pageToFrame.get(page.getPageNum());
+
+            if (transaction != null) page.flush();
+            pool.freeFrame(frameIndex);
+            diskSpaceManager.freePage(page.getPageNum());
+        } finally {
+            pool.poolLock.unlock();
+        }
+    }
+
+    /**
+     * Frees a partition - evicts all relevant pages from cache, and tells the disk space manager
+     * that the partition is no longer needed. No pages in the partition may be pinned before this call,
+     * and cannot be used after this call.
+     *
+     * @param partNum partition number to free
+     */
+    public void freePart(int partNum) {
+        // pages of the partition may be in any sub-pool, so we hold every sub-pool lock
+        // (always acquired in the same order) until the disk space manager is done
+        for (SubPool pool : this.pools) {
+            pool.poolLock.lock();
+        }
+        try {
+            for (SubPool pool : this.pools) {
+                for (int i = 0; i < pool.frames.length; ++i) {
+                    Frame frame = pool.frames[i];
+                    if (frame.isValid() && DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                        frame.flush();
+                        pool.freeFrame(i);
+                    }
+                }
+            }
+
+            diskSpaceManager.freePart(partNum);
+            this.scanStates.remove(partNum);
+        } finally {
+            for (int i = this.pools.length - 1; i >= 0; --i) {
+                this.pools[i].poolLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Calls flush on the frame of a page and unloads the page from the frame. If the page
+     * is not loaded, this does nothing.
+     * @param pageNum page number of page to evict
+     */
+    public void evict(long pageNum) {
+        poolFor(pageNum).evict(pageNum);
+    }
+
+    /**
+     * Calls evict on every frame in sequence. Dirty pages are first written out
+     * together (see DiskSpaceManager#writePages), and everything written is synced
+     * to disk at the end, once per partition (see DiskSpaceManager#beginWriteBatch).
+     */
+    public void evictAll() {
+        this.diskSpaceManager.beginWriteBatch();
+        try {
+            // write the dirty pages out together first, then evict them one by one
+            this.flushDirtyPages();
+            for (SubPool pool : this.pools) {
+                for (int i = 0; i < pool.frames.length; ++i) {
+                    pool.evict(i);
+                }
+            }
+        } finally {
+            this.diskSpaceManager.endWriteBatch();
+        }
+    }
+
+    /**
+     * Writes out every dirty, unpinned page with flushAll.
+     */
+    private void flushDirtyPages() {
+        List<Frame> dirty = new ArrayList<>();
+        for (SubPool pool : this.pools) {
+            for (Frame frame : pool.frames) {
+                if (frame.isValid() && frame.dirty && !frame.isPinned()) {
+                    dirty.add(frame);
+                }
+            }
+        }
+        this.flushAll(dirty);
+    }
+
+    /**
+     * Calls the passed in method with the page number of every loaded page.
+     * @param process method to consume page numbers. The first parameter is the page number,
+     *                and the second parameter is a boolean indicating whether the page is dirty
+     *                (has an unflushed change).
+     */
+    public void iterPageNums(BiConsumer<Long, Boolean> process) {
+        for (SubPool pool : this.pools) {
+            for (Frame frame : pool.frames) {
+                frame.frameLock.readLock().lock();
+                try {
+                    if (frame.isValid()) {
+                        process.accept(frame.pageNum, frame.dirty);
+                    }
+                } finally {
+                    frame.frameLock.readLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of independent sub-pools the buffer is split into
+     */
+    public int getNumPools() {
+        return this.pools.length;
     }
 
     /**
@@ -611,7 +1983,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     public static boolean logIOs;
@@ -626,7 +1998,7 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.incrementAndGet();
     }
 
     /**
@@ -0,0 +1,79 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, private ring of buffer frames, for operations such as large scans,
+ * sort runs and hash partitions that touch many pages once each. Pages fetched
+ * through a ring that are not already in the buffer pool are loaded into the
+ * ring's own frames: once the ring is full, the next page replaces the oldest
+ * page in the ring (if it is not pinned) instead of whatever the eviction policy
+ * would choose, so the operation cannot push hot pages out of the shared pool.
+ * Pages that are already in the buffer pool are used where they are.
+ *
+ * The ring is split evenly among the sub-pools of the buffer manager, since a
+ * page can only be loaded into a frame of its own sub-pool; each part of the
+ * ring is only used under the lock of its sub-pool.
+ *
+ * Created with BufferManager#createRing.
+ */
+public class BufferRing {
+    // Frames in the ring, per sub-pool; null until first filled
+    private final BufferFrame[][] slots;
+    // Next slot to fill, per sub-pool
+    private final int[] next;
+    private final int size;
+    private final AtomicLong numRecycled = new AtomicLong();
+
+    BufferRing(int[] slotsPerPool) {
+        this.slots = new BufferFrame[slotsPerPool.length][];
+        this.next = new int[slotsPerPool.length];
+        int size = 0;
+        for (int i = 0; i < slotsPerPool.length; ++i) {
+            this.slots[i] = new BufferFrame[slotsPerPool[i]];
+            size += slotsPerPool[i];
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return the frame in the next slot of the ring for a sub-pool, which is
+     * replaced when a page is next loaded into the sub-pool through the ring, or
+     * null if the slot has not been filled yet
+     */
+    BufferFrame current(int poolIndex) {
+        return this.slots[poolIndex][this.next[poolIndex]];
+    }
+
+    /**
+     * Puts a newly loaded frame into the next slot of the ring for a sub-pool, and
+     * moves on to the slot after it.
+     */
+    void advance(int poolIndex, BufferFrame frame) {
+        this.slots[poolIndex][this.next[poolIndex]] = frame;
+        this.next[poolIndex] = (this.next[poolIndex] + 1) % this.slots[poolIndex].length;
+    }
+
+    void noteRecycled() {
+        this.numRecycled.incrementAndGet();
+    }
+
+    /**
+     * @return number of frames in the ring
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return number of times a frame of the ring was reused for another page
+     */
+    public long getNumRecycled() {
+        return this.numRecycled.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferRing(" + this.size + " frames, " + getNumRecycled() + " recycled)";
+    }
+}
@@ -0,0 +1,190 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a buffer manager: hits and misses per partition, evictions of
+ * clean and dirty pages, time spent waiting for frame latches when pinning, and
+ * the latency of page flushes. Every counter is a LongAdder, so that threads
+ * updating them never contend with each other; reads are not atomic snapshots.
+ *
+ * Fetches made by read-ahead are not counted as hits or misses, since no one is
+ * waiting for them.
+ *
+ * Obtained with BufferManager#getStats.
+ */
+public class BufferStats {
+    /**
+     * Hit and miss counts of a single partition.
+     */
+    private static class PartitionCounters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+
+    private final Map<Integer, PartitionCounters> partitions = new ConcurrentHashMap<>();
+    private final LongAdder cleanEvictions = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final LongAdder pinWaits = new LongAdder();
+    private final LongAdder pinWaitNanos = new LongAdder();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    BufferStats() {}
+
+    private PartitionCounters counters(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        if (counters == null) {
+            counters = this.partitions.computeIfAbsent(partNum, p -> new PartitionCounters());
+        }
+        return counters;
+    }
+
+    void recordHit(int partNum) {
+        this.counters(partNum).hits.increment();
+    }
+
+    void recordMiss(int partNum) {
+        this.counters(partNum).misses.increment();
+    }
+
+    void recordEviction(boolean dirty) {
+        (dirty ? this.dirtyEvictions : this.cleanEvictions).increment();
+    }
+
+    void recordPinWait(long nanos) {
+        this.pinWaits.increment();
+        this.pinWaitNanos.add(nanos);
+    }
+
+    void recordFlush(long nanos) {
+        this.flushLatency.record(nanos);
+    }
+
+    /**
+     * @return the partitions with at least one hit or miss, in order
+     */
+    public SortedSet<Integer> getPartitions() {
+        return new TreeSet<>(this.partitions.keySet());
+    }
+
+    /**
+     * @return number of fetches of a page already in the buffer pool
+     */
+    public long getHits() {
+        long hits = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            hits += counters.hits.sum();
+        }
+        return hits;
+    }
+
+    /**
+     * @return number of fetches that had to load the page
+     */
+    public long getMisses() {
+        long misses = 0;
+        for (PartitionCounters counters : this.partitions.values()) {
+            misses += counters.misses.sum();
+        }
+        return misses;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of fetches of a page of the partition already in the buffer pool
+     */
+    public long getHits(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.hits.sum();
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of fetches of a page of the partition that had to load the page
+     */
+    public long getMisses(int partNum) {
+        PartitionCounters counters = this.partitions.get(partNum);
+        return counters == null ? 0 : counters.misses.sum();
+    }
+
+    /**
+     * @return fraction of fetches that were hits, or 0 if there were none
+     */
+    public double getHitRatio() {
+        return hitRatio(this.getHits(), this.getMisses());
+    }
+
+    /**
+     * @param partNum partition number
+     * @return fraction of fetches of pages of the partition that were hits, or 0
+     * if there were none
+     */
+    public double getHitRatio(int partNum) {
+        return hitRatio(this.getHits(partNum), this.getMisses(partNum));
+    }
+
+    private static double hitRatio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * @return number of pages evicted that did not need to be written out first
+     */
+    public long getCleanEvictions() {
+        return this.cleanEvictions.sum();
+    }
+
+    /**
+     * @return number of pages evicted that had to be written out first
+     */
+    public long getDirtyEvictions() {
+        return this.dirtyEvictions.sum();
+    }
+
+    /**
+     * @return number of pins that had to wait for another thread to release the
+     * frame's latch
+     */
+    public long getPinWaits() {
+        return this.pinWaits.sum();
+    }
+
+    /**
+     * @return total time spent waiting for frame latches when pinning, in nanoseconds
+     */
+    public long getPinWaitNanos() {
+        return this.pinWaitNanos.sum();
+    }
+
+    /**
+     * @return histogram of the time taken to write out a dirty page, including
+     * flushing the log up to the page's LSN
+     */
+    public LatencyHistogram getFlushLatency() {
+        return this.flushLatency;
+    }
+
+    /**
+     * Clears all counters.
+     */
+    public void reset() {
+        this.partitions.clear();
+        this.cleanEvictions.reset();
+        this.dirtyEvictions.reset();
+        this.pinWaits.reset();
+        this.pinWaitNanos.reset();
+        this.flushLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d (%.2f%% hit) evictions: clean=%d dirty=%d " +
+                "pin waits=%d (%.3f ms) flushes: %s", getHits(), getMisses(), 100 * getHitRatio(),
+                getCleanEvictions(), getDirtyEvictions(), getPinWaits(), getPinWaitNanos() / 1e6,
+                getFlushLatency());
+    }
+}
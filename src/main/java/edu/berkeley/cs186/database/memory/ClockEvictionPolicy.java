@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of clock eviction policy, which works by adding a reference
  * bit to each frame, and running the algorithm.
@@ -39,6 +42,10 @@ public class ClockEvictionPolicy implements EvictionPolicy {
      */
     @Override
     public BufferFrame evict(BufferFrame[] frames) {
+        if (this.arm >= frames.length) {
+            // the buffer pool shrank under the arm
+            this.arm = 0;
+        }
         int iters = 0;
         // loop around the frames looking for a frame that has bit 0
         // iters is used to ensure that we don't loop forever - after two
@@ -58,6 +65,22 @@ public class ClockEvictionPolicy implements EvictionPolicy {
         return evicted;
     }
 
+    /**
+     * Called by the background writer to find the frames that are next in line
+     * for eviction: the frames just ahead of the clock arm.
+     * @param frames Array of all frames (same length every call)
+     * @param num maximum number of frames to return
+     * @return up to num frames, in the order the arm will reach them
+     */
+    @Override
+    public List<BufferFrame> upcomingEvictions(BufferFrame[] frames, int num) {
+        List<BufferFrame> upcoming = new ArrayList<>();
+        for (int i = 0; i < Math.min(num, frames.length); ++i) {
+            upcoming.add(frames[(this.arm + i) % frames.length]);
+        }
+        return upcoming;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Interface for eviction policies for the buffer manager.
  */
@@ -18,12 +21,24 @@ public interface EvictionPolicy {
 
     /**
      * Called when a frame needs to be evicted.
-     * @param frames Array of all frames (same length every call)
+     * @param frames Array of all frames (same length every call, unless the buffer pool is resized)
      * @return index of frame to be evicted
      * @throws IllegalStateException if everything is pinned
      */
     BufferFrame evict(BufferFrame[] frames);
 
+    /**
+     * Called by the background writer to find the frames that are next in line
+     * for eviction, so that they can be cleaned before they are chosen. Does not
+     * change the state of the policy. Defaults to the order of the frames array.
+     * @param frames Array of all frames (same length every call, unless the buffer pool is resized)
+     * @param num maximum number of frames to return
+     * @return up to num frames, in the order they would be considered for eviction
+     */
+    default List<BufferFrame> upcomingEvictions(BufferFrame[] frames, int num) {
+        return Arrays.asList(frames).subList(0, Math.min(num, frames.length));
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
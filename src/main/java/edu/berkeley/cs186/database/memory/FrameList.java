@@ -0,0 +1,95 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.List;
+
+/**
+ * Doubly-linked list of buffer frames, in order from least to most recently
+ * added, used by eviction policies that keep frames in several queues. Each
+ * frame is in at most one list at a time, and is found through its node, which
+ * policies keep in the frame's tag.
+ */
+class FrameList {
+    static class Node {
+        final BufferFrame frame;
+        private Node prev;
+        private Node next;
+        private FrameList list;
+
+        Node(BufferFrame frame) {
+            this.frame = frame;
+        }
+
+        /**
+         * @return the list this node is in, or null
+         */
+        FrameList getList() {
+            return this.list;
+        }
+    }
+
+    private final Node sentinel;
+    private int size;
+
+    FrameList() {
+        this.sentinel = new Node(null);
+        this.sentinel.prev = this.sentinel;
+        this.sentinel.next = this.sentinel;
+        this.size = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a node to the end (most recent) of this list, removing it from
+     * whatever list it was in before.
+     */
+    void addLast(Node node) {
+        if (node.list != null) {
+            node.list.remove(node);
+        }
+        node.prev = this.sentinel.prev;
+        node.next = this.sentinel;
+        this.sentinel.prev.next = node;
+        this.sentinel.prev = node;
+        node.list = this;
+        ++this.size;
+    }
+
+    /**
+     * Removes a node from this list.
+     */
+    void remove(Node node) {
+        if (node.list != this) {
+            return;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+        node.list = null;
+        --this.size;
+    }
+
+    /**
+     * @return the least recently added frame that is not pinned, or null if
+     * every frame in the list is pinned
+     */
+    BufferFrame firstUnpinned() {
+        for (Node node = this.sentinel.next; node != this.sentinel; node = node.next) {
+            if (!node.frame.isPinned()) {
+                return node.frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds up to num frames of this list to out, least recently added first.
+     */
+    void addFirstFrames(List<BufferFrame> out, int num) {
+        for (Node node = this.sentinel.next; node != this.sentinel && out.size() < num; node = node.next) {
+            out.add(node.frame);
+        }
+    }
+}
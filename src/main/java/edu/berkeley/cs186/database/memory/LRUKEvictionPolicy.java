@@ -0,0 +1,164 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the LRU-K eviction policy (O'Neil, O'Neil and Weikum, 1993),
+ * with K = 2 by default. The victim is the frame whose K-th most recent reference
+ * is oldest; frames referenced fewer than K times count as infinitely old, and are
+ * evicted first, least recently used first. Pages touched once by a scan are
+ * therefore evicted before pages that are used repeatedly.
+ *
+ * Reference history is kept for evicted pages too (for as many pages as there are
+ * frames), so a page that is reloaded shortly after eviction keeps its history.
+ * Repeated hits to the same frame with no hit to another frame in between count
+ * as a single reference.
+ */
+public class LRUKEvictionPolicy implements EvictionPolicy {
+    private static class Tag {
+        // times of the last K references, most recent first; 0 if none
+        private final long[] history;
+
+        private Tag(int k) {
+            this.history = new long[k];
+        }
+
+        private void reference(long time) {
+            System.arraycopy(history, 0, history, 1, history.length - 1);
+            history[0] = time;
+        }
+
+        private long kthReference() {
+            return history[history.length - 1];
+        }
+
+        private long lastReference() {
+            return history[0];
+        }
+    }
+
+    // Orders frames from first to last to be evicted
+    private static final Comparator<BufferFrame> EVICTION_ORDER =
+        Comparator.comparingLong((BufferFrame f) -> ((Tag) f.tag).kthReference())
+        .thenComparingLong(f -> ((Tag) f.tag).lastReference());
+
+    private final int k;
+    // logical clock, advanced on every reference
+    private long time;
+    private int numFrames;
+    private BufferFrame lastHit;
+    // reference history of recently evicted pages
+    private final Map<Long, long[]> retained;
+
+    public LRUKEvictionPolicy() {
+        this(2);
+    }
+
+    public LRUKEvictionPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        this.k = k;
+        this.time = 0;
+        this.numFrames = 0;
+        this.retained = new LinkedHashMap<Long, long[]>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+                return size() > Math.max(1, numFrames);
+            }
+        };
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        Tag tag = new Tag(this.k);
+        long[] history = this.retained.remove(frame.getPageNum());
+        if (history != null) {
+            System.arraycopy(history, 0, tag.history, 0, this.k);
+        }
+        tag.reference(++this.time);
+        frame.tag = tag;
+        this.lastHit = frame;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        if (frame == this.lastHit) {
+            return;
+        }
+        this.lastHit = frame;
+        ((Tag) frame.tag).reference(++this.time);
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.numFrames = frames.length;
+        BufferFrame evicted = null;
+        for (BufferFrame frame : frames) {
+            if (frame.isPinned() || !(frame.tag instanceof Tag)) {
+                continue;
+            }
+            if (evicted == null || EVICTION_ORDER.compare(frame, evicted) < 0) {
+                evicted = frame;
+            }
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        return evicted;
+    }
+
+    /**
+     * Called by the background writer to find the frames that are next in line
+     * for eviction.
+     * @param frames Array of all frames (same length every call)
+     * @param num maximum number of frames to return
+     * @return up to num frames, in the order they would be evicted
+     */
+    @Override
+    public synchronized List<BufferFrame> upcomingEvictions(BufferFrame[] frames, int num) {
+        List<BufferFrame> upcoming = new ArrayList<>();
+        for (BufferFrame frame : frames) {
+            if (frame.tag instanceof Tag) {
+                upcoming.add(frame);
+            }
+        }
+        upcoming.sort(EVICTION_ORDER);
+        return upcoming.subList(0, Math.min(num, upcoming.size()));
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag tag = (Tag) frame.tag;
+        this.retained.put(frame.getPageNum(), Arrays.copyOf(tag.history, this.k));
+        frame.tag = null;
+        if (frame == this.lastHit) {
+            this.lastHit = null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies, with power-of-two buckets: bucket i counts latencies of
+ * at least 2^i and less than 2^(i + 1) microseconds (bucket 0 also counts anything
+ * under a microsecond). Updates never contend with each other, so recording is
+ * cheap enough to do on every operation; reads are not atomic snapshots, and may
+ * miss updates made while they run.
+ */
+public class LatencyHistogram {
+    // 2^31 microseconds is over half an hour; anything longer goes in the last bucket
+    public static final int NUM_BUCKETS = 32;
+
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a latency.
+     * @param nanos latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = micros == 0 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+        this.buckets[Math.min(bucket, NUM_BUCKETS - 1)].increment();
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @param bucket bucket index, between 0 and NUM_BUCKETS - 1
+     * @return number of latencies recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return this.buckets[bucket].sum();
+    }
+
+    /**
+     * @return sum of all latencies recorded, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return this.totalNanos.sum();
+    }
+
+    /**
+     * @return mean latency, in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMeanNanos() {
+        long count = this.getCount();
+        return count == 0 ? 0 : (double) this.getTotalNanos() / count;
+    }
+
+    /**
+     * @return largest latency recorded, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls in (or the
+     * largest latency recorded, if that is lower).
+     * @param percentile percentile, between 0 and 100
+     * @return upper bound on the latency at the percentile, in nanoseconds, or 0
+     * if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS - 1; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << (i + 1)) * 1000, this.getMaxNanos());
+            }
+        }
+        return this.getMaxNanos();
+    }
+
+    /**
+     * Clears the histogram.
+     */
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+        this.count.reset();
+        this.totalNanos.reset();
+        this.maxNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50<=%dus p99<=%dus max=%.1fus", getCount(),
+                getMeanNanos() / 1e3, getPercentileNanos(50) / 1000, getPercentileNanos(99) / 1000,
+                getMaxNanos() / 1e3);
+    }
+}
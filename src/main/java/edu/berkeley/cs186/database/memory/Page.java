@@ -83,7 +83,7 @@ public class Page {
      * @return a new byte array with all the bytes in the file
      */
     private byte[] readBytes() {
-        byte[] data = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        byte[] data = new byte[frame.getEffectivePageSize()];
         getBuffer().get(data);
         return data;
     }
@@ -122,7 +122,7 @@ public class Page {
      * Completely wipe (zero out) the page.
      */
     public void wipe() {
-        byte[] zeros = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        byte[] zeros = new byte[frame.getEffectivePageSize()];
         writeBytes(zeros);
     }
 
@@ -134,12 +134,22 @@ public class Page {
     }
 
     /**
-     * Loads the page into a frame (if necessary) and pins it.
+     * Loads the page into a frame (if necessary) and pins it for writing. No other
+     * thread may pin the page while it is pinned for writing.
      */
     public void pin() {
         this.frame = this.frame.requestValidFrame();
     }
 
+    /**
+     * Loads the page into a frame (if necessary) and pins it for reading. Any number
+     * of threads may pin the page for reading at once. The page must not be written
+     * to, or pinned for writing, until it is unpinned.
+     */
+    public void pinForRead() {
+        this.frame = this.frame.requestValidFrameForRead();
+    }
+
     /**
      * Unpins the frame containing this page. Does not flush immediately.
      */
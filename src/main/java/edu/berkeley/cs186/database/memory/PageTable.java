@@ -0,0 +1,144 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Map from page number to frame index, used by the buffer manager in place of a
+ * Map<Long, Integer>. Entries are stored in two flat arrays with open addressing
+ * and linear probing, so lookups neither box the page number nor allocate.
+ *
+ * The table never holds more entries than there are frames, so it is sized once,
+ * at twice the number of frames (rounded up to a power of two), and never grows.
+ * Removal uses backward-shift deletion rather than tombstones.
+ *
+ * Modifications must be serialized by the caller (the sub-pool lock). Lookups may
+ * run concurrently with modifications without any lock: such a lookup may miss an
+ * entry that is being moved, or return the frame index of another page, so a caller
+ * looking up without the lock must check the frame it gets back and fall back to a
+ * locked lookup on a miss.
+ */
+class PageTable {
+    private static final long EMPTY = DiskSpaceManager.INVALID_PAGE_NUM;
+
+    // Page number in each slot, or EMPTY
+    private final AtomicLongArray keys;
+
+    // Frame index in each slot
+    private final AtomicIntegerArray values;
+
+    // capacity - 1; the capacity is a power of two
+    private final int mask;
+
+    // log2 of capacity, used to take the top bits of the hash
+    private final int shift;
+
+    PageTable(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+        this.keys = new AtomicLongArray(capacity);
+        this.values = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            this.keys.set(i, EMPTY);
+        }
+        this.mask = capacity - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * @param pageNum page number
+     * @return frame index of the page, or -1 if the page is not in the table
+     */
+    int get(long pageNum) {
+        for (int i = slot(pageNum), probes = 0; probes <= mask; i = (i + 1) & mask, ++probes) {
+            long key = keys.get(i);
+            if (key == pageNum) {
+                return values.get(i);
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param pageNum page number
+     * @return whether the page is in the table
+     */
+    boolean containsKey(long pageNum) {
+        return get(pageNum) >= 0;
+    }
+
+    /**
+     * Maps a page to a frame index, replacing any existing mapping for the page.
+     *
+     * @param pageNum page number
+     * @param frameIndex frame index
+     */
+    void put(long pageNum, int frameIndex) {
+        if (pageNum == EMPTY) {
+            throw new IllegalArgumentException("cannot map invalid page number");
+        }
+        for (int i = slot(pageNum); ; i = (i + 1) & mask) {
+            long key = keys.get(i);
+            if (key == pageNum) {
+                values.set(i, frameIndex);
+                return;
+            }
+            if (key == EMPTY) {
+                // value first, so a concurrent lookup never pairs the key with a stale value
+                values.set(i, frameIndex);
+                keys.set(i, pageNum);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for a page, if it is mapped to the given frame index.
+     *
+     * @param pageNum page number
+     * @param frameIndex frame index
+     * @return whether the mapping was removed
+     */
+    boolean remove(long pageNum, int frameIndex) {
+        int i = slot(pageNum);
+        for (int probes = 0; ; i = (i + 1) & mask, ++probes) {
+            long key = keys.get(i);
+            if (key == EMPTY || probes > mask) {
+                return false;
+            }
+            if (key == pageNum) {
+                if (values.get(i) != frameIndex) {
+                    return false;
+                }
+                break;
+            }
+        }
+        // shift back later entries of the probe sequence that would otherwise be cut off
+        int hole = i;
+        for (int j = (hole + 1) & mask; ; j = (j + 1) & mask) {
+            long key = keys.get(j);
+            if (key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            // entry at j may move to the hole only if its home slot is not in (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                values.set(hole, values.get(j));
+                keys.set(hole, key);
+                hole = j;
+            }
+        }
+        keys.set(hole, EMPTY);
+        return true;
+    }
+
+    private int slot(long pageNum) {
+        // Fibonacci hashing: page numbers of a partition are consecutive, and the
+        // multiplication spreads them over the top bits
+        return (int) ((pageNum * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
@@ -0,0 +1,149 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Implementation of the 2Q eviction policy (Johnson and Shasha, 1994). Pages
+ * loaded for the first time go into a FIFO queue (A1in); only pages that are
+ * loaded again soon after being evicted from it, while their page numbers are
+ * still remembered in a ghost queue (A1out), are admitted to the main LRU queue
+ * (Am). A large scan therefore only ever cycles through A1in, and cannot push
+ * frequently used pages out of Am.
+ *
+ * Repeated hits to the same frame with no hit to another frame in between (e.g.
+ * reading several records of a page in a row) count as a single reference.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+    // Fraction of frames A1in may hold before it is preferred for eviction
+    private static final double IN_FRACTION = 0.25;
+    // Number of evicted page numbers A1out remembers, as a fraction of the frames
+    private static final double OUT_FRACTION = 0.5;
+
+    private static class Tag extends FrameList.Node {
+        // set when chosen by evict, so cleanup can tell eviction apart from freeing
+        private boolean evicted;
+
+        private Tag(BufferFrame frame) {
+            super(frame);
+        }
+    }
+
+    private final FrameList in;
+    private final FrameList main;
+    private final LinkedHashSet<Long> out;
+    private int numFrames;
+    private BufferFrame lastHit;
+
+    public TwoQueueEvictionPolicy() {
+        this.in = new FrameList();
+        this.main = new FrameList();
+        this.out = new LinkedHashSet<>();
+        this.numFrames = 0;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        Tag tag = new Tag(frame);
+        frame.tag = tag;
+        if (this.out.remove(frame.getPageNum())) {
+            this.main.addLast(tag);
+        } else {
+            this.in.addLast(tag);
+        }
+        this.lastHit = frame;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        if (frame == this.lastHit) {
+            return;
+        }
+        this.lastHit = frame;
+        Tag tag = (Tag) frame.tag;
+        if (tag.getList() == this.main) {
+            this.main.addLast(tag);
+        }
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.numFrames = frames.length;
+        BufferFrame evicted;
+        if (this.in.size() > Math.max(1, (int) (IN_FRACTION * this.numFrames))) {
+            evicted = this.in.firstUnpinned();
+            if (evicted == null) {
+                evicted = this.main.firstUnpinned();
+            }
+        } else {
+            evicted = this.main.firstUnpinned();
+            if (evicted == null) {
+                evicted = this.in.firstUnpinned();
+            }
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        ((Tag) evicted.tag).evicted = true;
+        return evicted;
+    }
+
+    /**
+     * Called by the background writer to find the frames that are next in line
+     * for eviction: the oldest frames of A1in, then the least recently used of Am.
+     * @param frames Array of all frames (same length every call)
+     * @param num maximum number of frames to return
+     * @return up to num frames, roughly in the order they would be evicted
+     */
+    @Override
+    public synchronized List<BufferFrame> upcomingEvictions(BufferFrame[] frames, int num) {
+        List<BufferFrame> upcoming = new ArrayList<>();
+        this.in.addFirstFrames(upcoming, num);
+        this.main.addFirstFrames(upcoming, num);
+        return upcoming;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag tag = (Tag) frame.tag;
+        FrameList list = tag.getList();
+        if (list != null) {
+            list.remove(tag);
+        }
+        if (tag.evicted && list == this.in) {
+            // remember the page, so that a reload soon after goes to Am
+            this.out.add(frame.getPageNum());
+            int maxOut = Math.max(1, (int) (OUT_FRACTION * this.numFrames));
+            Iterator<Long> oldest = this.out.iterator();
+            while (this.out.size() > maxOut) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        if (frame == this.lastHit) {
+            this.lastHit = null;
+        }
+    }
+}
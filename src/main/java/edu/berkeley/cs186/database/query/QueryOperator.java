@@ -181,7 +181,17 @@ public abstract class QueryOperator implements Iterable<Record> {
      * iterator over a single page of records.
      */
     public static BacktrackingIterator<Record> getBlockIterator(Iterator<Record> records, Schema schema, int maxPages) {
-        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, schema);
+        return getBlockIterator(records, schema, maxPages, PageDirectory.EFFECTIVE_PAGE_SIZE);
+    }
+
+    /**
+     * Like getBlockIterator(records, schema, maxPages), for pages with
+     * `effectivePageSize` bytes for records (see
+     * TransactionContext#getEffectivePageSize) rather than pages of the default size.
+     */
+    public static BacktrackingIterator<Record> getBlockIterator(Iterator<Record> records, Schema schema, int maxPages,
+                                                                short effectivePageSize) {
+        int recordsPerPage = Table.computeNumRecordsPerPage(effectivePageSize, schema);
         int maxRecords = recordsPerPage * maxPages;
         List<Record> blockRecords = new ArrayList<>();
         for (int i = 0; i < maxRecords && records.hasNext(); i++) {
@@ -99,45 +99,41 @@ public class SelectOperator extends QueryOperator {
             }
             while (this.sourceIterator.hasNext()) {
                 Record r = this.sourceIterator.next();
+                // only the predicate's field is decoded (see Record)
+                DataBox v = r.getValue(SelectOperator.this.columnIndex);
                 switch (SelectOperator.this.operator) {
                 case EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).equals(value)) {
+                    if (v.equals(value)) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case NOT_EQUALS:
-                    if (!r.getValue(SelectOperator.this.columnIndex).equals(value)) {
+                    if (!v.equals(value)) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case LESS_THAN:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) < 0) {
+                    if (v.compareTo(value) < 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case LESS_THAN_EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) < 0) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) == 0) {
+                    if (v.compareTo(value) <= 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case GREATER_THAN:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) > 0) {
+                    if (v.compareTo(value) > 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case GREATER_THAN_EQUALS:
-                    if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) > 0) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValue(SelectOperator.this.columnIndex).compareTo(value) == 0) {
+                    if (v.compareTo(value) >= 0) {
                         this.nextRecord = r;
                         return true;
                     }
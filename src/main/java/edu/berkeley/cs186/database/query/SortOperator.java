@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.query.disk.Run;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -17,6 +18,8 @@ public class SortOperator extends QueryOperator {
     private int numBuffers;
     private int sortColumnIndex;
     private String sortColumnName;
+    // Ring for the runs of a large sort, or null to use the shared buffer pool
+    private BufferRing ring;
 
     public SortOperator(TransactionContext transaction, QueryOperator source,
                         String columnName) {
@@ -26,6 +29,7 @@ public class SortOperator extends QueryOperator {
         this.sortColumnIndex = getSchema().findField(columnName);
         this.sortColumnName = getSchema().getFieldName(this.sortColumnIndex);
         this.comparator = new RecordComparator();
+        this.ring = transaction.getBufferRing(source.estimateStats().getNumPages());
     }
 
     private class RecordComparator implements Comparator<Record> {
@@ -86,7 +90,7 @@ public class SortOperator extends QueryOperator {
      * iterator
      */
     public Run sortRun(Iterator<Record> records) {
-        Run run = new Run(transaction, getSchema());
+        Run run = new Run(transaction, getSchema(), ring);
         ArrayList<Record> recordList = new ArrayList<>();
         while(records.hasNext()) {
             recordList.add(records.next());
@@ -123,7 +127,7 @@ public class SortOperator extends QueryOperator {
                 pq.add(new Pair<Record, Integer>(iterators[i].next(), i));
             }
         }
-        Run run = new Run(transaction, getSchema());
+        Run run = new Run(transaction, getSchema(), ring);
         while(!pq.isEmpty()) {
             Pair<Record, Integer> pair = pq.poll();
             run.add(pair.getFirst());
@@ -173,11 +177,12 @@ public class SortOperator extends QueryOperator {
     public Run sort() {
         // Iterator over the records of the relation we want to sort
         Iterator<Record> sourceIterator = getSource().iterator();
-        Iterator<Record> blockIterator= getBlockIterator(sourceIterator, getSchema(), numBuffers);
+        short pageSize = transaction.getEffectivePageSize();
+        Iterator<Record> blockIterator= getBlockIterator(sourceIterator, getSchema(), numBuffers, pageSize);
         List<Run> runs = new ArrayList<Run>();
         while(blockIterator.hasNext()) {
             runs.add(sortRun(blockIterator));
-            blockIterator = getBlockIterator(sourceIterator, getSchema(), numBuffers);
+            blockIterator = getBlockIterator(sourceIterator, getSchema(), numBuffers, pageSize);
         }
         while(runs.size() > 1) {
             runs = mergePass(runs);
@@ -189,7 +194,7 @@ public class SortOperator extends QueryOperator {
      * @return a new empty run.
      */
     public Run makeRun() {
-        return new Run(this.transaction, getSchema());
+        return new Run(this.transaction, getSchema(), ring);
     }
 
     /**
@@ -197,7 +202,7 @@ public class SortOperator extends QueryOperator {
      * @return A new run containing the records in `records`
      */
     public Run makeRun(List<Record> records) {
-        Run run = new Run(this.transaction, getSchema());
+        Run run = new Run(this.transaction, getSchema(), ring);
         run.addAll(records);
         return run;
     }
@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.query.disk;
 
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.query.SequentialScanOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -21,8 +22,18 @@ public class Partition implements Iterable<Record> {
     private String tempTableName;
 
     public Partition(TransactionContext transaction, Schema s) {
+        this(transaction, s, null);
+    }
+
+    /**
+     * Creates a partition whose pages are loaded through a buffer ring, so that
+     * spilling a large input does not push other pages out of the buffer pool.
+     *
+     * @param ring the ring to load pages through, or null for the shared buffer pool
+     */
+    public Partition(TransactionContext transaction, Schema s, BufferRing ring) {
         this.transaction = transaction;
-        this.tempTableName = transaction.createTempTable(s);
+        this.tempTableName = transaction.createTempTable(s, ring);
     }
 
     /**
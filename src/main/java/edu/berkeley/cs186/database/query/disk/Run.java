@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query.disk;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.EmptyBacktrackingIterator;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
@@ -20,10 +21,23 @@ public class Run implements Iterable<Record> {
     // Under the hood we'll be storing all the records in a temporary table
     private String tempTableName;
     private Schema schema;
+    // Ring the run's pages are loaded through, or null for the shared buffer pool
+    private BufferRing ring;
 
     public Run(TransactionContext transaction, Schema schema) {
+        this(transaction, schema, null);
+    }
+
+    /**
+     * Creates a run whose pages are loaded through a buffer ring, so that writing
+     * and reading a large run does not push other pages out of the buffer pool.
+     *
+     * @param ring the ring to load pages through, or null for the shared buffer pool
+     */
+    public Run(TransactionContext transaction, Schema schema, BufferRing ring) {
         this.transaction = transaction;
         this.schema = schema;
+        this.ring = ring;
     }
 
     /**
@@ -32,7 +46,7 @@ public class Run implements Iterable<Record> {
      */
     public void add(Record record) {
         if (this.tempTableName == null) {
-            this.tempTableName = transaction.createTempTable(schema);
+            this.tempTableName = transaction.createTempTable(schema, ring);
         }
         this.transaction.addRecord(this.tempTableName, record);
     }
@@ -87,7 +87,8 @@ public class BNLJOperator extends JoinOperator {
          * Make sure you pass in the correct schema to this method.
          */
         private void fetchNextLeftBlock() {
-            leftBlockIterator = getBlockIterator(leftSourceIterator, getLeftSource().getSchema(), numBuffers - 2);
+            leftBlockIterator = getBlockIterator(leftSourceIterator, getLeftSource().getSchema(), numBuffers - 2,
+                                                 getTransaction().getEffectivePageSize());
             if (leftBlockIterator.hasNext()) {
                 leftBlockIterator.markNext();
                 leftRecord = leftBlockIterator.next();
@@ -108,7 +109,8 @@ public class BNLJOperator extends JoinOperator {
          * Make sure you pass in the correct schema to this method.
          */
         private void fetchNextRightPage() {
-            rightPageIterator = getBlockIterator(rightSourceIterator, getRightSource().getSchema(), 1);
+            rightPageIterator = getBlockIterator(rightSourceIterator, getRightSource().getSchema(), 1,
+                                                 getTransaction().getEffectivePageSize());
             rightPageIterator.markNext();
         }
 
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.HashFunc;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.disk.Partition;
@@ -199,7 +200,10 @@ public class GHJOperator extends JoinOperator {
     private Partition createPartition(boolean left) {
         Schema schema = getRightSource().getSchema();
         if (left) schema = getLeftSource().getSchema();
-        return new Partition(getTransaction(), schema);
+        // spilling a large input goes through the transaction's buffer ring
+        QueryOperator source = left ? getLeftSource() : getRightSource();
+        BufferRing ring = getTransaction().getBufferRing(source.estimateStats().getNumPages());
+        return new Partition(getTransaction(), schema, ring);
     }
 
     // Student Input Methods ///////////////////////////////////////////////////
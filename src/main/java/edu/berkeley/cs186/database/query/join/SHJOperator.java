@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.HashFunc;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.disk.Partition;
@@ -149,9 +150,11 @@ public class SHJOperator extends JoinOperator {
     private Partition[] createPartitions() {
         int usableBuffers = this.numBuffers - 1;
         Partition partitions[] = new Partition[usableBuffers];
+        // spilling a large input goes through the transaction's buffer ring
+        BufferRing ring = getTransaction().getBufferRing(getLeftSource().estimateStats().getNumPages());
         for (int i = 0; i < usableBuffers; i++) {
             Schema schema = getLeftSource().getSchema();
-            partitions[i] = new Partition(getTransaction(), schema);
+            partitions[i] = new Partition(getTransaction(), schema, ring);
         }
         return partitions;
     }
@@ -203,7 +203,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
     public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
                              byte[] after) {
         assert (before.length == after.length);
-        assert (before.length <= BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+        assert (before.length <= BufferManager.maxLoggedWriteSize(bufferManager.getPageSize()));
         // TODO(proj5): implement
         return -1L;
     }
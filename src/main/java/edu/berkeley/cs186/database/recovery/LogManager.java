@@ -22,7 +22,8 @@ import java.util.*;
  * - page 2: [ LSN 20000, LSN 20030, LSN 20055, ...]
  * - page 3: [ LSN 30000, LSN 30047, LSN 30090, ...]
  * allowing for up to 10,000 log entries per page. The index (last 4 digits) is the offset
- * within the page where the log record starts. Log entries are not fixed width,
+ * within the page where the log record starts, so only the first 10,000 bytes
+ * (MAX_LOG_PAGE_BYTES) of log pages larger than that are used. Log entries are not fixed width,
  * so backwards iteration is not as easy as forward iteration. Page 0 is reserved for the
  * master record, which only contains a few log entries: the master record, with LSN 0, followed
  * by an empty begin and end checkpoint record. The master record is the only record in the
@@ -44,8 +45,15 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
     public static final int LOG_PARTITION = 0;
 
+    // Largest number of bytes of a log page that records are written to
+    public static final int MAX_LOG_PAGE_BYTES = 10000;
+
+    // Number of bytes of each log page that records are written to
+    private final int logPageBytes;
+
     LogManager(BufferManager bufferManager) {
         this.bufferManager = bufferManager;
+        this.logPageBytes = Math.min(bufferManager.getPageSize(), MAX_LOG_PAGE_BYTES);
         this.unflushedLogTail = new ArrayDeque<>();
 
         this.logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
@@ -79,7 +87,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         byte[] bytes = record.toBytes();
         // loop in case accessing log tail requires flushing the log in order to evict dirty page to load log tail
         do {
-            if (logTailBuffer == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTailBuffer.position()) {
+            if (logTailBuffer == null || bytes.length > logPageBytes - logTailBuffer.position()) {
                 logTailPinned = true;
                 logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
                 unflushedLogTail.add(logTail);
@@ -111,7 +119,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      */
     public LogRecord fetchLogRecord(long LSN) {
         try {
-            Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
+            Page logPage = bufferManager.fetchPageForRead(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(getLSNIndex(LSN));
@@ -226,7 +234,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         private int startIndex;
 
         private LogPageIterator(Page logPage, int startIndex) {
-            super(DiskSpaceManager.PAGE_SIZE);
+            super(logPageBytes);
             this.logPage = logPage;
             this.startIndex = startIndex;
             this.logPage.unpin();
@@ -234,7 +242,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         @Override
         protected int getNextNonEmpty(int currentIndex) {
-            logPage.pin();
+            logPage.pinForRead();
             try {
                 Buffer buf = logPage.getBuffer();
                 if (currentIndex == -1) {
@@ -249,7 +257,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
                 if (LogRecord.fromBytes(buf).isPresent()) {
                     return currentIndex;
                 } else {
-                    return DiskSpaceManager.PAGE_SIZE;
+                    return logPageBytes;
                 }
             } finally {
                 logPage.unpin();
@@ -258,7 +266,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         @Override
         protected LogRecord getValue(int index) {
-            logPage.pin();
+            logPage.pinForRead();
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(index);
@@ -278,7 +286,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
             try {
-                Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
+                Page page = bufferManager.fetchPageForRead(new DummyLockContext(), nextIndex);
                 nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
             } catch (PageException e) {
                 nextIter = null;
@@ -315,7 +323,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
                 do {
                     ++nextIndex;
                     try {
-                        Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
+                        Page page = bufferManager.fetchPageForRead(new DummyLockContext(), nextIndex);
                         nextIter = new LogPageIterator(page, 0);
                     } catch (PageException e) {
                         break;
@@ -12,8 +12,13 @@ import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -33,27 +38,32 @@ import java.util.Random;
  * - 4-byte index of which header page manages it
  * - 2-byte offset indicating which slot in the header page its data page entry resides
  *
- * This header is used to quickly locate and update the header page when the amount of free space on the data page
- * changes, as well as ensure that we do not modify pages in other page directories by accident.
+ * This header records which header page entry manages the data page, and is used to ensure that we do not
+ * modify pages in other page directories by accident.
  *
  * The page directory id is a randomly generated 32-bit integer used to help detect bugs (where we attempt
  * to write to a page that is not managed by the page directory).
+ *
+ * The free space of every data page is also kept in memory, in a FreeSpaceMap built from the header pages
+ * the first time it is needed, so that finding a data page with enough space does not read the header pages,
+ * and a header page is only written when the free space of one of its data pages changes.
  */
 public class PageDirectory implements BacktrackingIterable<Page> {
     // size of the header in header pages
     private static final short HEADER_HEADER_SIZE = 13;
 
-    // number of data page entries in a header page
-    private static final short HEADER_ENTRY_COUNT = (BufferManager.EFFECTIVE_PAGE_SIZE -
-            HEADER_HEADER_SIZE) / DataPageEntry.SIZE;
-
     // size of the header in data pages
     private static final short DATA_HEADER_SIZE = 10;
 
-    // effective page size
+    // effective page size, with pages of the default size
     public static final short EFFECTIVE_PAGE_SIZE = BufferManager.EFFECTIVE_PAGE_SIZE -
             DATA_HEADER_SIZE;
 
+    // number of data page entries in a header page, and effective page size, with the
+    // buffer manager's pages
+    private final short headerEntryCount;
+    private final short effectivePageSize;
+
     // the buffer manager
     private BufferManager bufferManager;
 
@@ -73,6 +83,12 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // page directory id
     private int pageDirectoryId;
 
+    // ring to load data pages through, or null to use the shared buffer pool
+    private BufferRing ring;
+
+    // free space of the data pages, or null until it is first needed
+    private FreeSpaceMap freeSpaceMap;
+
     /**
      * Creates a new heap file, or loads existing file if one already
      * exists at partNum.
@@ -86,14 +102,43 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     public PageDirectory(BufferManager bufferManager, int partNum, long pageNum,
                          short emptyPageMetadataSize, LockContext lockContext) {
         this.bufferManager = bufferManager;
+        this.headerEntryCount = (short) ((bufferManager.getEffectivePageSize() - HEADER_HEADER_SIZE)
+                                         / DataPageEntry.SIZE);
+        this.effectivePageSize = effectivePageSize(bufferManager);
         this.partNum = partNum;
         this.emptyPageMetadataSize = emptyPageMetadataSize;
         this.lockContext = lockContext;
         this.firstHeader = new HeaderPage(pageNum, 0, true);
     }
 
+    /**
+     * Creates a new heap file, or loads existing file if one already exists at
+     * partNum, whose data pages are always loaded through the given ring instead
+     * of the shared buffer pool. Used for temporary tables private to a transaction.
+     * @param bufferManager buffer manager
+     * @param partNum partition to allocate new header pages in (can be different partition
+     *                from data pages)
+     * @param pageNum first header page of heap file
+     * @param emptyPageMetadataSize size of metadata on an empty page
+     * @param lockContext lock context of this heap file
+     * @param ring ring to load data pages through, or null for the shared pool
+     */
+    public PageDirectory(BufferManager bufferManager, int partNum, long pageNum,
+                         short emptyPageMetadataSize, LockContext lockContext, BufferRing ring) {
+        this(bufferManager, partNum, pageNum, emptyPageMetadataSize, lockContext);
+        this.ring = ring;
+    }
+
     public short getEffectivePageSize() {
-        return EFFECTIVE_PAGE_SIZE;
+        return effectivePageSize;
+    }
+
+    /**
+     * @param bufferManager buffer manager
+     * @return effective page size of page directories using the buffer manager
+     */
+    public static short effectivePageSize(BufferManager bufferManager) {
+        return (short) (bufferManager.getEffectivePageSize() - DATA_HEADER_SIZE);
     }
 
     public void setEmptyPageMetadataSize(short emptyPageMetadataSize) {
@@ -101,18 +146,26 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     }
 
     public Page getPage(long pageNum) {
-        return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum));
+        return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum, ring));
+    }
+
+    /**
+     * Like getPage, but the returned page is pinned for reading only, and may be
+     * shared with other readers.
+     */
+    public Page getPageForRead(long pageNum) {
+        return new DataPage(pageDirectoryId, this.bufferManager.fetchPageForRead(lockContext, pageNum, ring));
     }
 
     public Page getPageWithSpace(short requiredSpace) {
         if (requiredSpace <= 0) {
             throw new IllegalArgumentException("cannot request nonpositive amount of space");
         }
-        if (requiredSpace > EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+        if (requiredSpace > effectivePageSize - emptyPageMetadataSize) {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.loadPageWithSpace(requiredSpace);
+        Page page = this.reservePageWithSpace(requiredSpace);
         LockContext pageContext = lockContext.childContext(page.getPageNum());
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
@@ -121,32 +174,114 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     }
 
     public void updateFreeSpace(Page page, short newFreeSpace) {
-        if (newFreeSpace <= 0 || newFreeSpace > EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+        if (newFreeSpace < 0 || newFreeSpace > effectivePageSize - emptyPageMetadataSize) {
             throw new IllegalArgumentException("bad size for data page free space");
         }
 
-        int headerIndex;
-        short offset;
-        page.pin();
-        try {
-            Buffer b = ((DataPage) page).getFullBuffer();
-            b.position(4); // skip page directory id
-            headerIndex = b.getInt();
-            offset = b.getShort();
-        } finally {
+        synchronized (this) {
+            FreeSpaceMap map = this.getFreeSpaceMap();
+            FreeSpaceMap.Entry entry = map.get(page.getPageNum());
+            if (entry == null) {
+                throw new PageException("data page not managed by this page directory");
+            }
+            if (newFreeSpace == entry.freeSpace) {
+                return;
+            }
+            if (newFreeSpace < effectivePageSize - emptyPageMetadataSize) {
+                map.setFreeSpace(entry, newFreeSpace);
+                entry.header.writeEntry(entry.index, new DataPageEntry(entry.pageNum, newFreeSpace));
+            } else {
+                // the entire page is free; free it
+                map.remove(entry);
+                entry.header.removeDataPage(entry.index, page);
+            }
+        }
+    }
+
+    // Finds a data page with the required space (allocating a new one if there is
+    // none), takes the space off the page's free space, and returns the page pinned.
+    private Page reservePageWithSpace(short requiredSpace) {
+        Thread thread = Thread.currentThread();
+        while (true) {
+            long pageNum;
+            synchronized (this) {
+                FreeSpaceMap map = this.getFreeSpaceMap();
+                FreeSpaceMap.Entry entry = map.find(requiredSpace, thread);
+                if (entry == null) {
+                    return this.addDataPage(map, requiredSpace, thread);
+                }
+                pageNum = entry.pageNum;
+            }
+
+            // The space is only taken while holding the data page, so that callers of
+            // updateFreeSpace, who hold the data page, never overwrite a reservation
+            // they cannot see on the page. The page is fetched without holding the
+            // directory, since those callers wait for the directory while holding the
+            // page; if the page was filled or freed in the meantime, we look again.
+            Page page;
+            try {
+                page = bufferManager.fetchPage(lockContext, pageNum, ring);
+            } catch (PageException e) {
+                continue;
+            }
+            synchronized (this) {
+                FreeSpaceMap.Entry entry = this.freeSpaceMap.get(pageNum);
+                if (entry != null && entry.freeSpace >= requiredSpace) {
+                    short freeSpace = (short) (entry.freeSpace - requiredSpace);
+                    this.freeSpaceMap.setFreeSpace(entry, freeSpace);
+                    this.freeSpaceMap.claim(entry, thread);
+                    entry.header.writeEntry(entry.index, new DataPageEntry(entry.pageNum, freeSpace));
+                    return page;
+                }
+            }
             page.unpin();
         }
+    }
 
+    // Allocates a new data page in the first header page with an unused entry,
+    // adding a header page if they are all full.
+    private Page addDataPage(FreeSpaceMap map, short requiredSpace, Thread thread) {
         HeaderPage headerPage = firstHeader;
-        for (int i = 0; i < headerIndex; ++i) {
+        while (headerPage.numDataPages == headerEntryCount) {
+            if (headerPage.nextPage == null) {
+                headerPage.addNewHeaderPage();
+            }
             headerPage = headerPage.nextPage;
         }
-        headerPage.updateSpace(page, offset, newFreeSpace);
+        short freeSpace = (short) (effectivePageSize - emptyPageMetadataSize - requiredSpace);
+        Page page = headerPage.addDataPage(map, freeSpace);
+        map.claim(map.get(page.getPageNum()), thread);
+        return page;
+    }
+
+    private FreeSpaceMap getFreeSpaceMap() {
+        if (this.freeSpaceMap == null) {
+            FreeSpaceMap map = new FreeSpaceMap();
+            for (HeaderPage headerPage = firstHeader; headerPage != null; headerPage = headerPage.nextPage) {
+                headerPage.loadEntries(map);
+            }
+            this.freeSpaceMap = map;
+        }
+        return this.freeSpaceMap;
     }
 
+    /**
+     * @return iterator over the data pages of this page directory; each page is
+     * pinned for reading when returned
+     */
     @Override
     public BacktrackingIterator<Page> iterator() {
-        return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
+        return this.iterator(this.ring);
+    }
+
+    /**
+     * @param ring ring to load data pages through, or null for the shared pool
+     * @return iterator over the data pages of this page directory, loading them
+     * through ring if they are not in memory; each page is pinned for reading
+     * when returned
+     */
+    public BacktrackingIterator<Page> iterator(BufferRing ring) {
+        return new ConcatBacktrackingIterator<>(new HeaderPageIterator(ring));
     }
 
     public int getNumDataPages() {
@@ -182,11 +317,6 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         public Buffer getBuffer() {
             return super.getBuffer().position(DATA_HEADER_SIZE).slice();
         }
-
-        // get the full buffer (without skipping header) for internal use
-        private Buffer getFullBuffer() {
-            return super.getBuffer();
-        }
     }
 
     /**
@@ -253,7 +383,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             try {
                 Buffer pageBuffer = this.page.getBuffer();
                 if (pageBuffer.get() != (byte) 1) {
-                    byte[] buf = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+                    byte[] buf = new byte[bufferManager.getEffectivePageSize()];
                     Buffer b = ByteBuffer.wrap(buf);
                     // invalid page, initialize empty header page
                     if (firstHeader) {
@@ -261,7 +391,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     }
                     b.position(0).put((byte) 1).putInt(pageDirectoryId).putLong(DiskSpaceManager.INVALID_PAGE_NUM);
                     DataPageEntry invalidPageEntry = new DataPageEntry();
-                    for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                    for (int i = 0; i < headerEntryCount; ++i) {
                         invalidPageEntry.toBytes(b);
                     }
                     nextPageNum = -1L;
@@ -275,7 +405,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                         throw new PageException("header page page directory id does not match");
                     }
                     nextPageNum = pageBuffer.getLong();
-                    for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                    for (int i = 0; i < headerEntryCount; ++i) {
                         DataPageEntry dpe = DataPageEntry.fromBytes(pageBuffer);
                         if (dpe.isValid()) {
                             ++this.numDataPages;
@@ -303,114 +433,106 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             this.page.pin();
             try {
                 this.nextPage = new HeaderPage(page.getPageNum(), headerOffset + 1, false);
-                this.page.getBuffer().position(1).putLong(page.getPageNum());
+                this.page.getBuffer().position(5).putLong(page.getPageNum()); // skip valid byte and id
             } finally {
                 this.page.unpin();
                 page.unpin();
             }
         }
 
-        // gets and loads a page with the required free space
-        private Page loadPageWithSpace(short requiredSpace) {
-            this.page.pin();
+        // adds the valid data page entries of this header page to map
+        private void loadEntries(FreeSpaceMap map) {
+            this.page.pinForRead();
             try {
                 Buffer b = this.page.getBuffer();
                 b.position(HEADER_HEADER_SIZE);
-
-                // if we have any data page managed by this header page with enough space, return it
-                short unusedSlot = -1;
-                for (short i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                for (short i = 0; i < headerEntryCount; ++i) {
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    if (!dpe.isValid()) {
-                        if (unusedSlot == -1) {
-                            unusedSlot = i;
-                        }
-                        continue;
-                    }
-                    if (dpe.freeSpace >= requiredSpace) {
-                        dpe.freeSpace -= requiredSpace;
-                        b.position(b.position() - DataPageEntry.SIZE);
-                        dpe.toBytes(b);
-
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum);
+                    if (dpe.isValid()) {
+                        map.add(dpe.pageNum, this, i, dpe.freeSpace);
                     }
                 }
+            } finally {
+                this.page.unpin();
+            }
+        }
 
-                // if we have any unused slot in this header page, allocate a new data page
-                if (unusedSlot != -1) {
-                    Page page = bufferManager.fetchNewPage(lockContext, partNum);
-                    DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
-                                                          (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
-
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
-                    dpe.toBytes(b);
-
-                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
-
-                    ++this.numDataPages;
-                    return page;
+        // allocates a new data page in the first unused entry, which this header page
+        // must have, and adds it to map; the page is returned pinned
+        private Page addDataPage(FreeSpaceMap map, short freeSpace) {
+            this.page.pin();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE);
+                short unusedSlot = 0;
+                while (DataPageEntry.fromBytes(b).isValid()) {
+                    ++unusedSlot;
                 }
 
-                // if we have no next header page, make one
-                if (this.nextPage == null) {
-                    this.addNewHeaderPage();
-                }
+                Page page = bufferManager.fetchNewPage(lockContext, partNum, ring);
+                DataPageEntry dpe = new DataPageEntry(page.getPageNum(), freeSpace);
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
+                dpe.toBytes(b);
+
+                page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
 
-                // no space on this header page, try next one
-                return this.nextPage.loadPageWithSpace(requiredSpace);
+                ++this.numDataPages;
+                map.add(page.getPageNum(), this, unusedSlot, freeSpace);
+                return page;
             } finally {
                 this.page.unpin();
             }
         }
 
-        // updates free space
-        private void updateSpace(Page dataPage, short index, short newFreeSpace) {
+        // overwrites the entry at index
+        private void writeEntry(short index, DataPageEntry dpe) {
             this.page.pin();
             try {
-                if (newFreeSpace < EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
-                    // write new free space to disk
-                    Buffer b = this.page.getBuffer();
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
-                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    dpe.freeSpace = newFreeSpace;
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
-                    dpe.toBytes(b);
-                } else {
-                    // the entire page is free; free it
-                    Buffer b = this.page.getBuffer();
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
-                    (new DataPageEntry()).toBytes(b);
-                    bufferManager.freePage(dataPage);
-                }
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+                dpe.toBytes(b);
             } finally {
                 this.page.unpin();
             }
         }
 
+        // frees the data page of the entry at index
+        private void removeDataPage(short index, Page dataPage) {
+            this.writeEntry(index, new DataPageEntry());
+            bufferManager.freePage(dataPage);
+            --this.numDataPages;
+        }
+
         @Override
         public BacktrackingIterator<Page> iterator() {
-            return new HeaderPageIterator();
+            return new HeaderPageIterator(ring);
         }
 
         // iterator over the data pages managed by this header page
         private class HeaderPageIterator extends IndexBacktrackingIterator<Page> {
-            private HeaderPageIterator() {
-                super(HEADER_ENTRY_COUNT);
+            // ring to load data pages through, or null
+            private final BufferRing scanRing;
+            // last entry whose data page has been handed to the buffer manager's read-ahead
+            private int prefetchedThrough = -1;
+
+            private HeaderPageIterator(BufferRing scanRing) {
+                super(headerEntryCount);
+                this.scanRing = scanRing;
             }
 
             @Override
             protected int getNextNonEmpty(int currentIndex) {
-                HeaderPage.this.page.pin();
+                HeaderPage.this.page.pinForRead();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * ++currentIndex);
-                    for (int i = currentIndex; i < HEADER_ENTRY_COUNT; ++i) {
+                    for (int i = currentIndex; i < headerEntryCount; ++i) {
                         DataPageEntry dpe = DataPageEntry.fromBytes(b);
                         if (dpe.isValid()) {
                             return i;
                         }
                     }
-                    return HEADER_ENTRY_COUNT;
+                    return headerEntryCount;
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
@@ -418,15 +540,145 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
             @Override
             protected Page getValue(int index) {
-                HeaderPage.this.page.pin();
+                DataPageEntry dpe;
+                HeaderPage.this.page.pinForRead();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
-                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum));
+                    dpe = DataPageEntry.fromBytes(b);
+                    this.readAhead(b, index);
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
+                // writers hold a data page while updating the header page, so the data
+                // page must not be waited for while holding the header page
+                return new DataPage(pageDirectoryId, bufferManager.fetchPageForRead(lockContext, dpe.pageNum,
+                                    this.scanRing));
+            }
+
+            // the data pages of the entries after index are known, so when read-ahead is
+            // enabled we ask for them directly instead of relying on them being contiguous;
+            // prefetched pages would go to the shared pool, so scans through a ring skip this
+            private void readAhead(Buffer b, int index) {
+                int readAhead = this.scanRing == null ? bufferManager.getReadAhead() : 0;
+                int start = Math.max(index, this.prefetchedThrough) + 1;
+                int end = Math.min(index + readAhead, headerEntryCount - 1);
+                if (start > end) {
+                    return;
+                }
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * start);
+                for (int i = start; i <= end; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        bufferManager.prefetch(dpe.pageNum);
+                    }
+                }
+                this.prefetchedThrough = end;
+            }
+        }
+    }
+
+    /**
+     * In-memory copy of the free space of every data page of the page directory,
+     * with the pages bucketed by their exact number of free bytes. A page with at
+     * least n bytes free is found by searching a bitmap of the non-empty buckets for
+     * the first one at or after n, which takes the same time whatever the number of
+     * data pages; the page found is the fullest one with enough space.
+     *
+     * Each thread inserting into the page directory claims the last page it got
+     * space on, and pages claimed by other (live) threads are skipped, so that
+     * concurrent inserts go to different pages instead of all waiting for the
+     * fullest one. A single thread always gets the fullest page.
+     */
+    private static class FreeSpaceMap {
+        private static class Entry {
+            private final long pageNum;
+            private final HeaderPage header;
+            private final short index;
+            private short freeSpace;
+            // thread that claimed the page, or null
+            private Thread inserter;
+
+            private Entry(long pageNum, HeaderPage header, short index, short freeSpace) {
+                this.pageNum = pageNum;
+                this.header = header;
+                this.index = index;
+                this.freeSpace = freeSpace;
+            }
+        }
+
+        private final Map<Long, Entry> entries = new HashMap<>();
+        // page numbers of the data pages with each amount of free space
+        private final Map<Short, LinkedHashSet<Long>> buckets = new HashMap<>();
+        // amounts of free space with at least one data page
+        private final BitSet nonEmptyBuckets = new BitSet();
+        // page claimed by each thread
+        private final Map<Thread, Entry> claims = new HashMap<>();
+
+        private Entry get(long pageNum) {
+            return this.entries.get(pageNum);
+        }
+
+        private void add(long pageNum, HeaderPage header, short index, short freeSpace) {
+            Entry entry = new Entry(pageNum, header, index, freeSpace);
+            this.entries.put(pageNum, entry);
+            this.addToBucket(entry);
+        }
+
+        private void remove(Entry entry) {
+            this.entries.remove(entry.pageNum);
+            this.removeFromBucket(entry);
+            if (entry.inserter != null) {
+                this.claims.remove(entry.inserter);
+            }
+        }
+
+        // makes entry's page the one claimed by thread, releasing its previous one
+        private void claim(Entry entry, Thread thread) {
+            Entry previous = this.claims.put(thread, entry);
+            if (previous != null && previous != entry) {
+                previous.inserter = null;
+            }
+            if (entry.inserter != null && entry.inserter != thread) {
+                // taken over from a thread that has exited
+                this.claims.remove(entry.inserter);
+            }
+            entry.inserter = thread;
+        }
+
+        private void setFreeSpace(Entry entry, short freeSpace) {
+            this.removeFromBucket(entry);
+            entry.freeSpace = freeSpace;
+            this.addToBucket(entry);
+        }
+
+        // returns the fullest data page with at least requiredSpace bytes free that
+        // is not claimed by another live thread, or null
+        private Entry find(short requiredSpace, Thread thread) {
+            int freeSpace = this.nonEmptyBuckets.nextSetBit(requiredSpace);
+            while (freeSpace >= 0) {
+                for (long pageNum : this.buckets.get((short) freeSpace)) {
+                    Entry entry = this.entries.get(pageNum);
+                    if (entry.inserter == null || entry.inserter == thread || !entry.inserter.isAlive()) {
+                        return entry;
+                    }
+                }
+                freeSpace = this.nonEmptyBuckets.nextSetBit(freeSpace + 1);
+            }
+            return null;
+        }
+
+        private void addToBucket(Entry entry) {
+            this.buckets.computeIfAbsent(entry.freeSpace, s -> new LinkedHashSet<>()).add(entry.pageNum);
+            this.nonEmptyBuckets.set(entry.freeSpace);
+        }
+
+        private void removeFromBucket(Entry entry) {
+            LinkedHashSet<Long> bucket = this.buckets.get(entry.freeSpace);
+            bucket.remove(entry.pageNum);
+            if (bucket.isEmpty()) {
+                this.buckets.remove(entry.freeSpace);
+                this.nonEmptyBuckets.clear(entry.freeSpace);
             }
         }
     }
@@ -435,11 +687,13 @@ public class PageDirectory implements BacktrackingIterable<Page> {
      * Iterator over header pages.
      */
     private class HeaderPageIterator implements BacktrackingIterator<BacktrackingIterable<Page>> {
+        private BufferRing scanRing;
         private HeaderPage nextPage;
         private HeaderPage prevPage;
         private HeaderPage markedPage;
 
-        private HeaderPageIterator() {
+        private HeaderPageIterator(BufferRing scanRing) {
+            this.scanRing = scanRing;
             this.nextPage = firstHeader;
             this.prevPage = null;
             this.markedPage = null;
@@ -451,14 +705,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         }
 
         @Override
-        public HeaderPage next() {
+        public BacktrackingIterable<Page> next() {
             if (!this.hasNext()) {
                 throw new NoSuchElementException();
             }
             HeaderPage next = this.nextPage;
             this.prevPage = next;
             this.nextPage = next.nextPage;
-            return next;
+            return () -> next.new HeaderPageIterator(this.scanRing);
         }
 
         @Override
@@ -2,17 +2,104 @@ package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
-/** A Record is just list of DataBoxes. */
+/**
+ * A Record is just list of DataBoxes.
+ *
+ * Records read from a table by fromBytes and fromVariableLengthBytes keep a copy of
+ * the record's serialized bytes instead, and only decode a value into a DataBox the
+ * first time it is accessed, so that operators which look at a few fields of each
+ * record (selections, projections, join keys) do not pay for decoding the rest.
+ * Such a record is written back out by copying its bytes when the schema allows it.
+ * The bytes are copied out of the page rather than read from it, as the page is
+ * unpinned (and may be evicted or modified) before the record is returned.
+ */
 public class Record {
     private List<DataBox> values;
 
+    /**
+     * The values of a record decoded from its serialized bytes, each decoded on first
+     * access. Not safe for use by multiple threads at once.
+     */
+    private static class SerializedValues extends AbstractList<DataBox> {
+        private final Schema schema;
+        private final byte[] bytes;
+        // offset of each field in bytes
+        private final int[] offsets;
+        // whether bytes are in the format of toVariableLengthBytes rather than toBytes
+        private final boolean variableLength;
+        private final DataBox[] decoded;
+
+        private SerializedValues(Schema schema, byte[] bytes, int[] offsets, boolean variableLength) {
+            this.schema = schema;
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.variableLength = variableLength;
+            this.decoded = new DataBox[offsets.length];
+        }
+
+        @Override
+        public DataBox get(int i) {
+            DataBox value = this.decoded[i];
+            if (value == null) {
+                value = this.decode(i);
+                this.decoded[i] = value;
+            }
+            return value;
+        }
+
+        private DataBox decode(int i) {
+            Type t = this.schema.getFieldType(i);
+            int offset = this.offsets[i];
+            if (this.variableLength && t.getTypeId() == TypeId.STRING) {
+                int length = ((this.bytes[offset] & 0xFF) << 8) | (this.bytes[offset + 1] & 0xFF);
+                String s = new String(this.bytes, offset + Short.BYTES, length, StandardCharsets.US_ASCII);
+                return new StringDataBox(s, t.getSizeInBytes());
+            }
+            Buffer buf = edu.berkeley.cs186.database.common.ByteBuffer.wrap(
+                             this.bytes, offset, this.bytes.length - offset);
+            return DataBox.fromBytes(buf, t);
+        }
+
+        @Override
+        public int size() {
+            return this.offsets.length;
+        }
+    }
+
+    /**
+     * The values of one record followed by those of another, without copying either.
+     */
+    private static class ConcatenatedValues extends AbstractList<DataBox> {
+        private final List<DataBox> left;
+        private final List<DataBox> right;
+
+        private ConcatenatedValues(List<DataBox> left, List<DataBox> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public DataBox get(int i) {
+            int leftSize = this.left.size();
+            return i < leftSize ? this.left.get(i) : this.right.get(i - leftSize);
+        }
+
+        @Override
+        public int size() {
+            return this.left.size() + this.right.size();
+        }
+    }
+
     public Record(List<DataBox> values) {
         this.values = values;
     }
@@ -42,6 +129,10 @@ public class Record {
      * Serializes this Databox into a byte array based on the passed in schema.
      */
     public byte[] toBytes(Schema schema) {
+        SerializedValues serialized = this.serializedWith(schema);
+        if (serialized != null && !serialized.variableLength) {
+            return serialized.bytes.clone();
+        }
         ByteBuffer byteBuffer = ByteBuffer.allocate(schema.getSizeInBytes());
         for (DataBox value : values) {
             byteBuffer.put(value.toBytes());
@@ -49,15 +140,79 @@ public class Record {
         return byteBuffer.array();
     }
 
+    /**
+     * Serializes this record in the variable-length format of slotted pages: a
+     * string takes 2 bytes for its length followed by its characters, instead of
+     * the full width of its type, and every other value is serialized as in toBytes.
+     */
+    public byte[] toVariableLengthBytes(Schema schema) {
+        SerializedValues serialized = this.serializedWith(schema);
+        if (serialized != null && serialized.variableLength) {
+            return serialized.bytes.clone();
+        }
+        List<byte[]> fields = new ArrayList<>(values.size());
+        int size = 0;
+        for (DataBox value : values) {
+            byte[] bytes = value.getTypeId() == TypeId.STRING
+                           ? value.getString().getBytes(StandardCharsets.US_ASCII)
+                           : value.toBytes();
+            fields.add(bytes);
+            size += bytes.length + (value.getTypeId() == TypeId.STRING ? Short.BYTES : 0);
+        }
+        ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i).getTypeId() == TypeId.STRING) {
+                byteBuffer.putShort((short) fields.get(i).length);
+            }
+            byteBuffer.put(fields.get(i));
+        }
+        return byteBuffer.array();
+    }
+
+    // the serialized values of this record, if it was decoded with a schema of the same
+    // field types as schema, so that its bytes are also valid for schema
+    private SerializedValues serializedWith(Schema schema) {
+        if (!(this.values instanceof SerializedValues)) {
+            return null;
+        }
+        SerializedValues serialized = (SerializedValues) this.values;
+        if (serialized.schema != schema && !serialized.schema.getFieldTypes().equals(schema.getFieldTypes())) {
+            return null;
+        }
+        return serialized;
+    }
+
+    /**
+     * @return whether this record was decoded by fromBytes or fromVariableLengthBytes
+     * with a schema of the same field types as schema, in which case its values match
+     * schema without being decoded
+     */
+    boolean isDecodedWith(Schema schema) {
+        return this.serializedWith(schema) != null;
+    }
+
+    /**
+     * @return the largest number of bytes a record of the schema takes when
+     * serialized by toVariableLengthBytes
+     */
+    public static int maxVariableLengthSize(Schema schema) {
+        int size = schema.getSizeInBytes();
+        for (Type t : schema.getFieldTypes()) {
+            if (t.getTypeId() == TypeId.STRING) {
+                size += Short.BYTES;
+            }
+        }
+        return size;
+    }
+
     /**
      * Returns a new records consisting of this record's values with the other record's
      * values appended to the right of it. i.e. if record a contains [1,2,3] and record b
      * contains [4,5,6], a.concat(b) would be a record consisting of [1,2,3,4,5,6].
+     * The values are not copied or decoded.
      */
     public Record concat(Record other) {
-        List<DataBox> values = new ArrayList<>(this.values);
-        values.addAll(other.getValues());
-        return new Record(values);
+        return new Record(new ConcatenatedValues(this.values, other.values));
     }
 
     /**
@@ -69,11 +224,35 @@ public class Record {
      * @return the decoded Record
      */
     public static Record fromBytes(Buffer buf, Schema schema) {
-        List<DataBox> values = new ArrayList<>();
-        for (Type t : schema.getFieldTypes()) {
-            values.add(DataBox.fromBytes(buf, t));
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        buf.get(bytes);
+        return new Record(new SerializedValues(schema, bytes, schema.getFieldOffsets(), false));
+    }
+
+    /**
+     * Decodes a record serialized by toVariableLengthBytes.
+     *
+     * @param buf the buffer to decode, positioned at the start of the record
+     * @param schema the schema used for this record
+     * @return the decoded Record
+     */
+    public static Record fromVariableLengthBytes(Buffer buf, Schema schema) {
+        // find where each field starts, then copy the whole record out at once
+        int start = buf.position();
+        int[] offsets = new int[schema.size()];
+        int offset = 0;
+        for (int i = 0; i < offsets.length; ++i) {
+            Type t = schema.getFieldType(i);
+            offsets[i] = offset;
+            if (t.getTypeId() == TypeId.STRING) {
+                offset += Short.BYTES + buf.getShort(start + offset);
+            } else {
+                offset += t.getSizeInBytes();
+            }
         }
-        return new Record(values);
+        byte[] bytes = new byte[offset];
+        buf.position(start).get(bytes);
+        return new Record(new SerializedValues(schema, bytes, offsets, true));
     }
 
     /**
@@ -24,6 +24,8 @@ public class Schema {
     private List<String> fieldNames;
     private List<Type> fieldTypes;
     private short sizeInBytes;
+    // offset of each field in a record serialized by Record#toBytes, computed on first use
+    private int[] fieldOffsets;
 
     /**
      * Constructs an empty Schema.
@@ -45,6 +47,7 @@ public class Schema {
         this.fieldNames.add(fieldName);
         this.fieldTypes.add(fieldType);
         this.sizeInBytes += fieldType.getSizeInBytes();
+        this.fieldOffsets = null;
         return this;
     }
 
@@ -86,6 +89,24 @@ public class Schema {
         return sizeInBytes;
     }
 
+    /**
+     * @return the offset of every field in a record of this schema serialized by
+     * Record#toBytes. The array is shared, and must not be modified.
+     */
+    int[] getFieldOffsets() {
+        int[] offsets = this.fieldOffsets;
+        if (offsets == null) {
+            offsets = new int[fieldTypes.size()];
+            int offset = 0;
+            for (int i = 0; i < offsets.length; ++i) {
+                offsets[i] = offset;
+                offset += fieldTypes.get(i).getSizeInBytes();
+            }
+            this.fieldOffsets = offsets;
+        }
+        return offsets;
+    }
+
     /**
      * @param fromSchema
      * @param specified
@@ -170,6 +191,10 @@ public class Schema {
      * @return A new record with fields cast to match the schema
      */
     public Record verify(Record record) {
+        if (record.isDecodedWith(this)) {
+            // read back from a table of the same field types, so nothing to check
+            return record;
+        }
         List<DataBox> values = record.getValues();
         if (values.size() != fieldNames.size()) {
             String err = String.format("Expected %d values, but got %d.",
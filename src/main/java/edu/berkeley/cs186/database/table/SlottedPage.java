@@ -0,0 +1,256 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+
+import java.util.Arrays;
+
+/**
+ * View of a data page of a table in the slotted format (see Table). The page starts
+ * with a 4-byte header:
+ * - 2 bytes: number of slots in the slot directory
+ * - 2 bytes: offset of the start of the record data, or 0 if the page has no slots
+ *
+ * followed by the slot directory, with 5 bytes per slot:
+ * - 2 bytes: offset of the slot's record
+ * - 2 bytes: length of the slot's record
+ * - 1 byte: what the slot holds (EMPTY, RECORD, FORWARD or MOVED)
+ *
+ * Records are stored at the end of the page, growing towards the slot directory.
+ * Deleting or shrinking a record leaves a hole in the record data, which is only
+ * reclaimed (by moving the records to the end of the page) when an insert or update
+ * needs the space. Empty slots at the end of the slot directory are removed, so a
+ * page whose records have all been deleted has no slots at all, and the whole page
+ * free. Every record takes at least MIN_RECORD_SIZE bytes, so that a slot's record
+ * can always be replaced by a forwarding pointer in place.
+ *
+ * A record that grows too large for its page is moved to another page, and its slot
+ * left holding the RecordId of the new location (FORWARD), so that the record keeps
+ * its RecordId. The moved record is marked (MOVED) so that scans, which follow the
+ * forwarding slot instead, do not see it twice.
+ *
+ * All offsets are relative to the buffer passed in, which must not be shared with
+ * other threads while the view is in use.
+ */
+class SlottedPage {
+    // size in bytes of the page header, and of a slot
+    static final short HEADER_SIZE = 4;
+    static final short SLOT_SIZE = 5;
+
+    // smallest amount of space a record takes, enough for a forwarding pointer
+    static final int MIN_RECORD_SIZE = RecordId.getSizeInBytes();
+
+    // what a slot holds
+    static final byte EMPTY = 0;
+    static final byte RECORD = 1;
+    static final byte FORWARD = 2;
+    static final byte MOVED = 3;
+
+    private final Buffer buf;
+    private final int pageSize;
+
+    /**
+     * @param buf buffer of the page, starting at the page header
+     * @param pageSize number of bytes of the buffer that belong to the page
+     */
+    SlottedPage(Buffer buf, int pageSize) {
+        this.buf = buf;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param length length of a record
+     * @return space a record of the given length takes on a page, including a new slot
+     */
+    static int spaceNeeded(int length) {
+        return Math.max(length, MIN_RECORD_SIZE) + SLOT_SIZE;
+    }
+
+    /**
+     * @param pageSize number of bytes of a page available to the slotted format
+     * @return largest number of slots a page can have
+     */
+    static int maxSlots(int pageSize) {
+        return (pageSize - HEADER_SIZE) / (SLOT_SIZE + MIN_RECORD_SIZE);
+    }
+
+    int getNumSlots() {
+        return this.buf.getShort(0);
+    }
+
+    private int getDataStart() {
+        short dataStart = this.buf.getShort(2);
+        return dataStart == 0 ? this.pageSize : dataStart;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return what the slot holds; slots past the end of the slot directory are EMPTY
+     */
+    byte getFlags(int slot) {
+        if (slot >= this.getNumSlots()) {
+            return EMPTY;
+        }
+        return this.buf.get(this.slotOffset(slot) + 4);
+    }
+
+    private int getOffset(int slot) {
+        return this.buf.getShort(this.slotOffset(slot));
+    }
+
+    private int getLength(int slot) {
+        return this.buf.getShort(this.slotOffset(slot) + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length, byte flags) {
+        this.buf.position(this.slotOffset(slot)).putShort((short) offset).putShort((short) length).put(flags);
+    }
+
+    /**
+     * @return buffer positioned at the start of the slot's record (or forwarding pointer)
+     */
+    Buffer get(int slot) {
+        return this.buf.position(this.getOffset(slot));
+    }
+
+    /**
+     * @return number of bytes free on the page, whether or not they are contiguous
+     */
+    int getFreeSpace() {
+        int numSlots = this.getNumSlots();
+        int used = HEADER_SIZE + numSlots * SLOT_SIZE;
+        for (int i = 0; i < numSlots; ++i) {
+            if (this.getFlags(i) != EMPTY) {
+                used += this.getLength(i);
+            }
+        }
+        return this.pageSize - used;
+    }
+
+    /**
+     * Adds a record to the first empty slot, or to a new slot if there is none. The
+     * caller must make sure that the page has spaceNeeded(record.length) bytes free.
+     * @param record serialized record (or forwarding pointer)
+     * @param flags RECORD, FORWARD or MOVED
+     * @return slot of the record
+     */
+    int insert(byte[] record, byte flags) {
+        int numSlots = this.getNumSlots();
+        int slot = 0;
+        while (slot < numSlots && this.getFlags(slot) != EMPTY) {
+            ++slot;
+        }
+        if (slot == numSlots) {
+            // the new slot entry takes space from the gap between the slot directory
+            // and the record data too, so make room for both before extending the
+            // directory, or the entry would overwrite the first record
+            int length = Math.max(record.length, MIN_RECORD_SIZE);
+            int directoryEnd = HEADER_SIZE + numSlots * SLOT_SIZE;
+            if (this.getDataStart() - directoryEnd < SLOT_SIZE + length) {
+                this.compact();
+            }
+            this.buf.putShort(0, (short) (numSlots + 1));
+            this.setSlot(slot, 0, 0, EMPTY);
+        }
+        this.write(slot, record, flags);
+        return slot;
+    }
+
+    /**
+     * Replaces the record in a slot, moving records around if the new record is larger
+     * and there is enough free space on the page.
+     * @return whether the new record fit on the page
+     */
+    boolean update(int slot, byte[] record, byte flags) {
+        int length = Math.max(record.length, MIN_RECORD_SIZE);
+        int oldLength = this.getLength(slot);
+        if (length <= oldLength) {
+            this.buf.position(this.getOffset(slot)).put(record);
+            this.setSlot(slot, this.getOffset(slot), length, flags);
+            return true;
+        }
+        if (this.getFreeSpace() + oldLength < length) {
+            return false;
+        }
+        this.setSlot(slot, 0, 0, EMPTY);
+        this.write(slot, record, flags);
+        return true;
+    }
+
+    /**
+     * Empties a slot, and removes empty slots from the end of the slot directory.
+     */
+    void delete(int slot) {
+        this.setSlot(slot, 0, 0, EMPTY);
+        int numSlots = this.getNumSlots();
+        while (numSlots > 0 && this.getFlags(numSlots - 1) == EMPTY) {
+            --numSlots;
+        }
+        this.buf.putShort(0, (short) numSlots);
+        if (numSlots == 0) {
+            this.buf.putShort(2, (short) 0);
+        }
+    }
+
+    /**
+     * @param numEntries number of bits in the bitmap, at least maxSlots(pageSize)
+     * @return bitmap with the bits of the slots a scan should return (RECORD and
+     * FORWARD) set
+     */
+    byte[] getVisibleSlots(int numEntries) {
+        byte[] bitmap = new byte[(numEntries + 7) / 8];
+        int numSlots = this.getNumSlots();
+        for (int i = 0; i < numSlots; ++i) {
+            byte flags = this.getFlags(i);
+            if (flags == RECORD || flags == FORWARD) {
+                Bits.setBit(bitmap, i, Bits.Bit.ONE);
+            }
+        }
+        return bitmap;
+    }
+
+    // writes a record into an empty slot, compacting the page first if the free space
+    // between the slot directory and the record data is too small
+    private void write(int slot, byte[] record, byte flags) {
+        int length = Math.max(record.length, MIN_RECORD_SIZE);
+        int directoryEnd = HEADER_SIZE + this.getNumSlots() * SLOT_SIZE;
+        if (this.getDataStart() - directoryEnd < length) {
+            this.compact();
+        }
+        int offset = this.getDataStart() - length;
+        assert offset >= directoryEnd;
+        this.buf.position(offset).put(record);
+        this.setSlot(slot, offset, length, flags);
+        this.buf.putShort(2, (short) offset);
+    }
+
+    // moves every record to the end of the page, leaving all the free space between
+    // the slot directory and the record data
+    private void compact() {
+        int numSlots = this.getNumSlots();
+        byte[] data = new byte[this.pageSize];
+        int dataStart = this.pageSize;
+        int[] offsets = new int[numSlots];
+        for (int i = 0; i < numSlots; ++i) {
+            if (this.getFlags(i) == EMPTY) {
+                continue;
+            }
+            byte[] record = new byte[this.getLength(i)];
+            this.buf.position(this.getOffset(i)).get(record);
+            dataStart -= record.length;
+            System.arraycopy(record, 0, data, dataStart, record.length);
+            offsets[i] = dataStart;
+        }
+        // one write for all the record data, then the slots that moved
+        this.buf.position(dataStart).put(Arrays.copyOfRange(data, dataStart, this.pageSize));
+        for (int i = 0; i < numSlots; ++i) {
+            if (this.getFlags(i) != EMPTY && this.getOffset(i) != offsets[i]) {
+                this.setSlot(i, offsets[i], this.getLength(i), this.getFlags(i));
+            }
+        }
+        this.buf.putShort(2, (short) (dataStart == this.pageSize ? 0 : dataStart));
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.table;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -11,11 +12,15 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.io.PageException;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -89,6 +94,31 @@ import java.util.Map;
  * only supports locking at the page level, so in cases where tuple-level locks are
  * necessary even at the cost of an I/O per tuple, a full page record may be desirable),
  * and may be explicitly toggled on with the setFullPageRecords method.
+ *
+ * # Slotted Format
+ * The format above (TableFormat.BITMAP) gives every record the full width of its
+ * schema, so a string(255) column takes 255 bytes however short its values are.
+ * Tables created with TableFormat.SLOTTED instead store records in a variable-length
+ * format (see Record#toVariableLengthBytes), in which a string only takes its own
+ * length plus 2 bytes. Each data page starts with a slot directory giving the offset
+ * and length of each record, and records are packed at the end of the page; see
+ * SlottedPage for the details. A RecordId is still (page, slot), and still names the
+ * same record for as long as it exists: a record that grows too large for its page is
+ * moved elsewhere, and its slot left pointing at it.
+ *
+ * The format of a table is fixed when it is created, and stored in _metadata.tables
+ * along with its schema.
+ *
+ * # Concurrency
+ * A table can be used by several threads at once, and has no table-wide lock: a data
+ * page is only read or changed while it is pinned, and a pin for writing excludes every
+ * other thread from the page, so threads only wait for each other when they use the
+ * same page. The page directory gives concurrent inserts different pages where it can.
+ * This only holds for threads sharing one Table (and so one PageDirectory): the free
+ * space a page directory hands out is tracked in memory, so two Table objects over the
+ * same partition can give the same space away twice. Database keeps one Table per
+ * table for all transactions. Isolation between transactions comes from the locks
+ * acquired through LockUtil.
  */
 public class Table implements BacktrackingIterable<Record> {
     // The name of the table.
@@ -100,6 +130,9 @@ public class Table implements BacktrackingIterable<Record> {
     // The page directory persisting the table.
     private PageDirectory pageDirectory;
 
+    // The layout of the table's data pages.
+    private final TableFormat format;
+
     // The size (in bytes) of the bitmap found at the beginning of each data page.
     private int bitmapSizeInBytes;
 
@@ -119,18 +152,43 @@ public class Table implements BacktrackingIterable<Record> {
      * new table will be created if none exists in the pageDirectory.
      */
     public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext, Map<String, TableStats> stats) {
+        this(name, schema, pageDirectory, lockContext, stats, TableFormat.BITMAP);
+    }
+
+    /**
+     * Like the constructor above, but with data pages in the given format, which
+     * must be the format the table was created with.
+     */
+    public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext,
+                 Map<String, TableStats> stats, TableFormat format) {
         this.name = name;
         this.pageDirectory = pageDirectory;
         this.schema = schema;
         this.tableContext = lockContext;
+        this.format = format;
 
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(pageDirectory.getEffectivePageSize(), schema);
+        // for slotted pages, the number of records of the largest size that fit
         this.numRecordsPerPage = computeNumRecordsPerPage(pageDirectory.getEffectivePageSize(), schema);
-        // mark everything that is not used for records as metadata
-        this.pageDirectory.setEmptyPageMetadataSize((short) (pageDirectory.getEffectivePageSize() - numRecordsPerPage
-                                               * schema.getSizeInBytes()));
+        if (format == TableFormat.SLOTTED) {
+            int maxRecordSize = Record.maxVariableLengthSize(schema);
+            if (SlottedPage.spaceNeeded(maxRecordSize) > pageDirectory.getEffectivePageSize()
+                                                         - SlottedPage.HEADER_SIZE) {
+                throw new DatabaseException(String.format(
+                        "Records of up to %d bytes do not fit on a slotted page", maxRecordSize));
+            }
+            // an empty page only has the slotted page header
+            this.pageDirectory.setEmptyPageMetadataSize(SlottedPage.HEADER_SIZE);
+        } else {
+            // mark everything that is not used for records as metadata
+            this.pageDirectory.setEmptyPageMetadataSize((short) (pageDirectory.getEffectivePageSize() -
+                                                        numRecordsPerPage * schema.getSizeInBytes()));
+        }
         this.stats = stats;
-        if (!this.stats.containsKey(name)) this.stats.put(name, new TableStats(this.schema, this.numRecordsPerPage));
+        if (!this.stats.containsKey(name)) {
+            this.stats.put(name, new TableStats(this.schema, this.numRecordsPerPage,
+                                                pageDirectory.getEffectivePageSize()));
+        }
     }
 
     public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext) {
@@ -149,7 +207,14 @@ public class Table implements BacktrackingIterable<Record> {
         return numRecordsPerPage;
     }
 
+    public TableFormat getFormat() {
+        return format;
+    }
+
     public void setFullPageRecords() {
+        if (format == TableFormat.SLOTTED) {
+            throw new UnsupportedOperationException("full page records are only supported by the bitmap format");
+        }
         numRecordsPerPage = 1;
         bitmapSizeInBytes = 0;
         pageDirectory.setEmptyPageMetadataSize((short) (pageDirectory.getEffectivePageSize() -
@@ -169,6 +234,10 @@ public class Table implements BacktrackingIterable<Record> {
     }
 
     private byte[] getBitMap(Page page) {
+        if (format == TableFormat.SLOTTED) {
+            // the slots a scan should return
+            return slottedPage(page).getVisibleSlots(numEntriesPerPage());
+        }
         if (bitmapSizeInBytes > 0) {
             byte[] bytes = new byte[bitmapSizeInBytes];
             page.getBuffer().get(bytes, 0, bitmapSizeInBytes);
@@ -231,7 +300,7 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.get(name).refreshHistograms(buckets, this);
     }
 
-    private synchronized void insertRecord(Page page, int entryNum, Record record) {
+    private void insertRecord(Page page, int entryNum, Record record) {
         int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
         page.getBuffer().position(offset).put(record.toBytes(schema));
     }
@@ -244,20 +313,18 @@ public class Table implements BacktrackingIterable<Record> {
      * first free page has bitmap 0b11101000, then the record is inserted into
      * the page with index 3 and the bitmap is updated to 0b11111000.
      */
-    public synchronized RecordId addRecord(Record record) {
+    public RecordId addRecord(Record record) {
         record = schema.verify(record);
+        if (format == TableFormat.SLOTTED) {
+            RecordId rid = insertSlotted(record.toVariableLengthBytes(schema), SlottedPage.RECORD);
+            stats.get(name).addRecord(record);
+            return rid;
+        }
         Page page = pageDirectory.getPageWithSpace(schema.getSizeInBytes());
         try {
             // Find the first empty slot in the bitmap.
-            // entry number of the first free slot and store it in entryNum; and (2) we
-            // count the total number of entries on this page.
             byte[] bitmap = getBitMap(page);
-            int entryNum = 0;
-            for (; entryNum < numRecordsPerPage; ++entryNum) {
-                if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
-                    break;
-                }
-            }
+            int entryNum = Bits.nextClearBit(bitmap, 0, numRecordsPerPage);
             if (numRecordsPerPage == 1) {
                 entryNum = 0;
             }
@@ -276,13 +343,81 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * addRecords adds records to this table, in order, and returns their record
+     * ids. Records go to the same pages addRecord would put them on, but each page
+     * is filled in memory and written once: its bitmap (or slot directory) and all
+     * the records added to it are written together, so the page's changes are
+     * logged in as few page write records as they can be, and its free space is
+     * updated in the page directory once.
+     *
+     * If a record cannot be added (e.g. it does not match the schema), the records
+     * before it are still added, as they would be by calls to addRecord, and the
+     * exception is rethrown.
+     */
+    public List<RecordId> addRecords(Iterator<Record> records) {
+        List<RecordId> rids = new ArrayList<>();
+        if (format == TableFormat.SLOTTED) {
+            addSlottedRecords(records, rids);
+            return rids;
+        }
+        short recordSize = schema.getSizeInBytes();
+        while (records.hasNext()) {
+            Page page = pageDirectory.getPageWithSpace(recordSize);
+            RuntimeException failure = null;
+            try {
+                // the bitmap and records of the page; a page with a single entry
+                // has no bitmap, and is empty when the page directory hands it out
+                byte[] data = new byte[bitmapSizeInBytes + numRecordsPerPage * recordSize];
+                page.getBuffer().get(data);
+                byte[] bitmap = bitmapSizeInBytes > 0 ? Arrays.copyOf(data, bitmapSizeInBytes) : new byte[1];
+
+                int end = 0;
+                int entryNum = Bits.nextClearBit(bitmap, 0, numRecordsPerPage);
+                while (entryNum < numRecordsPerPage && records.hasNext()) {
+                    Record record;
+                    byte[] bytes;
+                    try {
+                        record = schema.verify(records.next());
+                        bytes = record.toBytes(schema);
+                    } catch (RuntimeException e) {
+                        // the records already added to the page are still written
+                        failure = e;
+                        break;
+                    }
+                    int offset = bitmapSizeInBytes + entryNum * recordSize;
+                    System.arraycopy(bytes, 0, data, offset, recordSize);
+                    end = offset + recordSize;
+                    Bits.setBit(bitmap, entryNum, Bits.Bit.ONE);
+                    stats.get(name).addRecord(record);
+                    rids.add(new RecordId(page.getPageNum(), (short) entryNum));
+                    entryNum = Bits.nextClearBit(bitmap, entryNum + 1, numRecordsPerPage);
+                }
+
+                System.arraycopy(bitmap, 0, data, 0, bitmapSizeInBytes);
+                page.getBuffer().put(Arrays.copyOf(data, end));
+                int numFree = numRecordsPerPage - Bits.countBits(bitmap, 0, numRecordsPerPage);
+                pageDirectory.updateFreeSpace(page, (short) (numFree * recordSize));
+            } finally {
+                page.unpin();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return rids;
+    }
+
     /**
      * Retrieves a record from the table, throwing an exception if no such record
      * exists.
      */
-    public synchronized Record getRecord(RecordId rid) {
+    public Record getRecord(RecordId rid) {
         validateRecordId(rid);
-        Page page = fetchPage(rid.getPageNum());
+        if (format == TableFormat.SLOTTED) {
+            return getSlottedRecord(rid);
+        }
+        Page page = fetchPageForRead(rid.getPageNum());
         try {
             byte[] bitmap = getBitMap(page);
             if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
@@ -304,7 +439,7 @@ public class Table implements BacktrackingIterable<Record> {
      * record. stats is updated accordingly. An exception is thrown if rid does
      * not correspond to an existing record in the table.
      */
-    public synchronized Record updateRecord(RecordId rid, Record updated) {
+    public Record updateRecord(RecordId rid, Record updated) {
         validateRecordId(rid);
         // If we're updating a record we'll need exclusive access to the page
         // its on.
@@ -315,16 +450,19 @@ public class Table implements BacktrackingIterable<Record> {
         Record newRecord = schema.verify(updated);
         Record oldRecord = getRecord(rid);
 
-        Page page = fetchPage(rid.getPageNum());
-        try {
-            insertRecord(page, rid.getEntryNum(), newRecord);
-
-            this.stats.get(name).removeRecord(oldRecord);
-            this.stats.get(name).addRecord(newRecord);
-            return oldRecord;
-        } finally {
-            page.unpin();
+        if (format == TableFormat.SLOTTED) {
+            updateSlotted(rid, newRecord.toVariableLengthBytes(schema));
+        } else {
+            Page page = fetchPage(rid.getPageNum());
+            try {
+                insertRecord(page, rid.getEntryNum(), newRecord);
+            } finally {
+                page.unpin();
+            }
         }
+        this.stats.get(name).removeRecord(oldRecord);
+        this.stats.get(name).addRecord(newRecord);
+        return oldRecord;
     }
 
     /**
@@ -332,13 +470,25 @@ public class Table implements BacktrackingIterable<Record> {
      * stats, freePageNums, and numRecords as necessary. An exception is thrown
      * if rid does not correspond to an existing record in the table.
      */
-    public synchronized Record deleteRecord(RecordId rid) {
+    public Record deleteRecord(RecordId rid) {
         validateRecordId(rid);
         LockContext pageContext = tableContext.childContext(rid.getPageNum());
 
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
+        if (format == TableFormat.SLOTTED) {
+            Record record = getRecord(rid);
+            RecordId target = deleteSlot(rid);
+            if (target != null) {
+                // the record itself is on another page
+                LockUtil.ensureSufficientLockHeld(tableContext.childContext(target.getPageNum()), LockType.X);
+                deleteSlot(target);
+            }
+            stats.get(name).removeRecord(record);
+            return record;
+        }
+
         Page page = fetchPage(rid.getPageNum());
         try {
             Record record = getRecord(rid);
@@ -371,15 +521,201 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
-    private int numRecordsOnPage(Page page) {
-        byte[] bitmap = getBitMap(page);
-        int numRecords = 0;
-        for (int i = 0; i < numRecordsPerPage; ++i) {
-            if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-                numRecords++;
+    private Page fetchPageForRead(long pageNum) {
+        try {
+            return pageDirectory.getPageForRead(pageNum);
+        } catch (PageException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private SlottedPage slottedPage(Page page) {
+        return new SlottedPage(page.getBuffer(), pageDirectory.getEffectivePageSize());
+    }
+
+    // Number of entries (bitmap bits, or slots) a data page can have.
+    private int numEntriesPerPage() {
+        if (format == TableFormat.SLOTTED) {
+            return SlottedPage.maxSlots(pageDirectory.getEffectivePageSize());
+        }
+        return numRecordsPerPage;
+    }
+
+    // Sets the page directory's free space of a slotted page to what the page has.
+    private void updateFreeSpace(Page page, SlottedPage slotted) {
+        pageDirectory.updateFreeSpace(page, (short) slotted.getFreeSpace());
+    }
+
+    /**
+     * Adds a serialized record (or forwarding pointer) to the first page with
+     * enough space.
+     */
+    private RecordId insertSlotted(byte[] bytes, byte flags) {
+        Page page = pageDirectory.getPageWithSpace((short) SlottedPage.spaceNeeded(bytes.length));
+        try {
+            SlottedPage slotted = slottedPage(page);
+            int numSlots = slotted.getNumSlots();
+            int slot = slotted.insert(bytes, flags);
+            if (slotted.getNumSlots() == numSlots) {
+                // an empty slot was reused, so the page directory took the space of
+                // a new slot off the page's free space for nothing
+                updateFreeSpace(page, slotted);
+            }
+            return new RecordId(page.getPageNum(), (short) slot);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Adds records to slotted pages, filling a copy of each page and writing it
+     * back once. A record that does not fit on the page being filled starts the
+     * next page.
+     */
+    private void addSlottedRecords(Iterator<Record> records, List<RecordId> rids) {
+        int pageSize = pageDirectory.getEffectivePageSize();
+        Record record = null;
+        byte[] bytes = null;
+        while (record != null || records.hasNext()) {
+            if (record == null) {
+                record = schema.verify(records.next());
+                bytes = record.toVariableLengthBytes(schema);
+            }
+            Page page = pageDirectory.getPageWithSpace((short) SlottedPage.spaceNeeded(bytes.length));
+            RuntimeException failure = null;
+            try {
+                byte[] data = new byte[pageSize];
+                page.getBuffer().get(data);
+                SlottedPage slotted = new SlottedPage(ByteBuffer.wrap(data), pageSize);
+                do {
+                    int slot = slotted.insert(bytes, SlottedPage.RECORD);
+                    stats.get(name).addRecord(record);
+                    rids.add(new RecordId(page.getPageNum(), (short) slot));
+                    record = null;
+                    if (records.hasNext()) {
+                        try {
+                            record = schema.verify(records.next());
+                            bytes = record.toVariableLengthBytes(schema);
+                        } catch (RuntimeException e) {
+                            // the records already added to the page are still written
+                            failure = e;
+                            record = null;
+                        }
+                    }
+                } while (record != null && slotted.getFreeSpace() >= SlottedPage.spaceNeeded(bytes.length));
+
+                page.getBuffer().put(data);
+                updateFreeSpace(page, slotted);
+            } finally {
+                page.unpin();
+            }
+            if (failure != null) {
+                throw failure;
             }
         }
-        return numRecords;
+    }
+
+    private Record getSlottedRecord(RecordId rid) {
+        RecordId target;
+        Page page = fetchPageForRead(rid.getPageNum());
+        try {
+            SlottedPage slotted = slottedPage(page);
+            byte flags = slotted.getFlags(rid.getEntryNum());
+            if (flags == SlottedPage.RECORD) {
+                return Record.fromVariableLengthBytes(slotted.get(rid.getEntryNum()), schema);
+            }
+            if (flags != SlottedPage.FORWARD) {
+                String msg = String.format("Record %s does not exist.", rid);
+                throw new DatabaseException(msg);
+            }
+            target = RecordId.fromBytes(slotted.get(rid.getEntryNum()));
+        } finally {
+            page.unpin();
+        }
+        // only one page is pinned at a time, so that readers and writers following
+        // forwarding pointers in opposite directions cannot deadlock
+        page = fetchPageForRead(target.getPageNum());
+        try {
+            return Record.fromVariableLengthBytes(slottedPage(page).get(target.getEntryNum()), schema);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Replaces the record with the given (serialized) one: in place if it fits on
+     * the page holding the record, and otherwise by moving the record to a page with
+     * enough space and pointing the record's slot at it.
+     */
+    private void updateSlotted(RecordId rid, byte[] bytes) {
+        RecordId target = null;
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            SlottedPage slotted = slottedPage(page);
+            if (slotted.getFlags(rid.getEntryNum()) == SlottedPage.FORWARD) {
+                target = RecordId.fromBytes(slotted.get(rid.getEntryNum()));
+            } else if (slotted.update(rid.getEntryNum(), bytes, SlottedPage.RECORD)) {
+                updateFreeSpace(page, slotted);
+                return;
+            }
+        } finally {
+            page.unpin();
+        }
+        if (target != null) {
+            LockUtil.ensureSufficientLockHeld(tableContext.childContext(target.getPageNum()), LockType.X);
+            page = fetchPage(target.getPageNum());
+            try {
+                SlottedPage slotted = slottedPage(page);
+                if (slotted.update(target.getEntryNum(), bytes, SlottedPage.MOVED)) {
+                    updateFreeSpace(page, slotted);
+                    return;
+                }
+            } finally {
+                page.unpin();
+            }
+        }
+
+        // The record no longer fits on its page. A page has as much free space as
+        // the page directory says, so the new copy never lands on the same page.
+        RecordId moved = insertSlotted(bytes, SlottedPage.MOVED);
+        if (target != null) {
+            deleteSlot(target);
+        }
+        page = fetchPage(rid.getPageNum());
+        try {
+            SlottedPage slotted = slottedPage(page);
+            // a forwarding pointer is never larger than the record it replaces
+            slotted.update(rid.getEntryNum(), moved.toBytes(), SlottedPage.FORWARD);
+            updateFreeSpace(page, slotted);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Empties a slot, freeing its page if it was the last one in use.
+     * @return the record id the slot was forwarding to, or null if it was not a
+     * forwarding slot
+     */
+    private RecordId deleteSlot(RecordId rid) {
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            SlottedPage slotted = slottedPage(page);
+            RecordId target = null;
+            if (slotted.getFlags(rid.getEntryNum()) == SlottedPage.FORWARD) {
+                target = RecordId.fromBytes(slotted.get(rid.getEntryNum()));
+            }
+            slotted.delete(rid.getEntryNum());
+            updateFreeSpace(page, slotted);
+            return target;
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int numRecordsOnPage(Page page) {
+        byte[] bitmap = getBitMap(page);
+        return Bits.countBits(bitmap, 0, numRecordsPerPage);
     }
 
     private void validateRecordId(RecordId rid) {
@@ -390,10 +726,10 @@ public class Table implements BacktrackingIterable<Record> {
             throw new DatabaseException(msg);
         }
 
-        if (e >= numRecordsPerPage) {
+        if (e >= numEntriesPerPage()) {
             String msg = String.format(
                              "There are only %d records per page, but record %d was requested.",
-                             numRecordsPerPage, e);
+                             numEntriesPerPage(), e);
             throw new DatabaseException(msg);
         }
     }
@@ -405,10 +741,19 @@ public class Table implements BacktrackingIterable<Record> {
      * records
      */
     public BacktrackingIterator<RecordId> ridIterator() {
+        return this.ridIterator(null);
+    }
+
+    /**
+     * @param ring ring to load data pages through, or null for the shared buffer pool
+     * @return Performs a full scan on the table, loading data pages that are not
+     * in memory through ring, to return id's of all existing records
+     */
+    public BacktrackingIterator<RecordId> ridIterator(BufferRing ring) {
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
 
-        BacktrackingIterator<Page> iter = pageDirectory.iterator();
+        BacktrackingIterator<Page> iter = ring == null ? pageDirectory.iterator() : pageDirectory.iterator(ring);
         return new ConcatBacktrackingIterator<>(new PageIterator(iter, false));
     }
 
@@ -424,6 +769,9 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(rids);
     }
 
+    /**
+     * @return iterator over the data pages of the table, each pinned for reading
+     */
     public BacktrackingIterator<Page> pageIterator() {
         return pageDirectory.iterator();
     }
@@ -434,6 +782,15 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(ridIterator());
     }
 
+    /**
+     * @param ring ring to load data pages through, or null for the shared buffer pool
+     * @return iterator over all the records in this table, for scans that should
+     * not push other pages out of the buffer pool
+     */
+    public BacktrackingIterator<Record> iterator(BufferRing ring) {
+        return new RecordIterator(ridIterator(ring));
+    }
+
     /**
      * RIDPageIterator is a BacktrackingIterator over the RecordIds of a single
      * page of the table.
@@ -446,7 +803,7 @@ public class Table implements BacktrackingIterable<Record> {
         private byte[] bitmap;
 
         RIDPageIterator(Page page) {
-            super(numRecordsPerPage);
+            super(numEntriesPerPage());
             this.page = page;
             this.bitmap = getBitMap(page);
             page.unpin();
@@ -454,12 +811,7 @@ public class Table implements BacktrackingIterable<Record> {
 
         @Override
         protected int getNextNonEmpty(int currentIndex) {
-            for (int i = currentIndex + 1; i < numRecordsPerPage; ++i) {
-                if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-                    return i;
-                }
-            }
-            return numRecordsPerPage;
+            return Bits.nextSetBit(bitmap, currentIndex + 1, numEntriesPerPage());
         }
 
         @Override
@@ -514,7 +866,7 @@ public class Table implements BacktrackingIterable<Record> {
 
             @Override
             public BacktrackingIterator<RecordId> iterator() {
-                baseObject.pin();
+                baseObject.pinForRead();
                 return new RIDPageIterator(baseObject);
             }
         }
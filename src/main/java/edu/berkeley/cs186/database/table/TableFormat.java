@@ -0,0 +1,19 @@
+package edu.berkeley.cs186.database.table;
+
+/**
+ * Layout of the data pages of a table. See Table for both formats.
+ */
+public enum TableFormat {
+    BITMAP,  // fixed-width records, with a bitmap of the used entries on each page
+    SLOTTED; // variable-length records, with a slot directory on each page
+
+    private static final TableFormat[] values = TableFormat.values();
+
+    public static TableFormat fromInt(int x) {
+        if (x < 0 || x >= values.length) {
+            String err = String.format("Unknown TableFormat ordinal %d.", x);
+            throw new IllegalArgumentException(err);
+        }
+        return values[x];
+    }
+}
@@ -48,13 +48,23 @@ import java.util.List;
 public class TableStats {
     private Schema schema;
     private int numRecordsPerPage;
+    private short effectivePageSize;
     private int numRecords;
     private List<Histogram> histograms;
 
     /** Construct a TableStats for an empty table with schema `schema`. */
     public TableStats(Schema schema, int numRecordsPerPage) {
+        this(schema, numRecordsPerPage, PageDirectory.EFFECTIVE_PAGE_SIZE);
+    }
+
+    /**
+     * Construct a TableStats for an empty table with schema `schema`, whose pages
+     * have `effectivePageSize` bytes for records (used to estimate the pages of joins).
+     */
+    public TableStats(Schema schema, int numRecordsPerPage, short effectivePageSize) {
         this.schema = schema;
         this.numRecordsPerPage = numRecordsPerPage;
+        this.effectivePageSize = effectivePageSize;
         this.numRecords = 0;
         this.histograms = new ArrayList<>();
         for (Type t : schema.getFieldTypes()) {
@@ -63,20 +73,22 @@ public class TableStats {
         }
     }
 
-    private TableStats(Schema schema, int numRecordsPerPage, int numRecords,
+    private TableStats(Schema schema, int numRecordsPerPage, short effectivePageSize, int numRecords,
                        List<Histogram> histograms) {
         this.schema = schema;
         this.numRecordsPerPage = numRecordsPerPage;
+        this.effectivePageSize = effectivePageSize;
         this.numRecords = numRecords;
         this.histograms = histograms;
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
-    public void addRecord(Record record) {
+    // Records are added and removed by concurrent writers to the table.
+    public synchronized void addRecord(Record record) {
         numRecords++;
     }
 
-    public void removeRecord(Record record) {
+    public synchronized void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
     }
 
@@ -168,7 +180,8 @@ public class TableStats {
             }
         }
         int numRecords = copyHistograms.get(column).getCount();
-        return new TableStats(this.schema, this.numRecordsPerPage, numRecords, copyHistograms);
+        return new TableStats(this.schema, this.numRecordsPerPage, this.effectivePageSize, numRecords,
+                              copyHistograms);
     }
 
     /**
@@ -211,8 +224,8 @@ public class TableStats {
             copyHistograms.add(rightHistogram.copyWithJoin(outputSize, rightReductionFactor));
         }
 
-        int joinedRecordsPerPage = Table.computeNumRecordsPerPage(
-                PageDirectory.EFFECTIVE_PAGE_SIZE, joinedSchema);
-        return new TableStats(joinedSchema, joinedRecordsPerPage, outputSize, copyHistograms);
+        int joinedRecordsPerPage = Table.computeNumRecordsPerPage(this.effectivePageSize, joinedSchema);
+        return new TableStats(joinedSchema, joinedRecordsPerPage, this.effectivePageSize, outputSize,
+                              copyHistograms);
     }
 }
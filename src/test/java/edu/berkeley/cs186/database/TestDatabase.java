@@ -3,14 +3,21 @@ package edu.berkeley.cs186.database;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.index.BPlusTree;
+import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableFormat;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -19,10 +26,22 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -95,6 +114,225 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testTempTableUsesTempPartition() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+
+        int partNum;
+        try(Transaction t1 = db.beginTransaction()) {
+            String tempTableName = t1.getTransactionContext().createTempTable(s);
+            RecordId rid = t1.getTransactionContext().addRecord(tempTableName, input);
+            partNum = DiskSpaceManager.getPartNum(rid.getPageNum());
+            assertTrue(db.getDiskSpaceManager().isTempPart(partNum));
+            assertFalse(new File(filename, Integer.toString(partNum)).exists());
+        }
+        // freed with the transaction
+        assertFalse(db.getDiskSpaceManager().isTempPart(partNum));
+    }
+
+    @Test
+    public void testPartitionNames() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        int tablePart;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "testTable1");
+            t1.createIndex("testTable1", "int", false);
+            RecordId rid = t1.getTransactionContext().addRecord("testTable1", TestUtils.createRecordWithAllTypes());
+            tablePart = DiskSpaceManager.getPartNum(rid.getPageNum());
+        }
+
+        Map<Integer, String> names = db.getPartitionNames();
+        assertEquals("_log", names.get(0));
+        assertEquals("_metadata.tables", names.get(1));
+        assertEquals("_metadata.indices", names.get(2));
+        assertEquals("testTable1", names.get(tablePart));
+        assertEquals(5, names.size());
+        assertTrue(names.containsValue("testTable1.int"));
+    }
+
+    @Test
+    public void testInsertAll() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        // inserted in descending order; the index is updated in ascending key order
+        List<Record> records = new ArrayList<>();
+        for (int i = 999; i >= 0; --i) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            t1.createIndex(tableName, "int", false);
+            t1.insertAll(tableName, records.iterator());
+        }
+
+        try(Transaction t1 = db.beginTransaction()) {
+            TransactionContext tc = t1.getTransactionContext();
+            assertEquals(records.size(), tc.getTable(tableName).getStats().getNumRecords());
+            for (Record record : records) {
+                Iterator<Record> iter = tc.lookupKey(tableName, "int", record.getValue(1));
+                assertEquals(record, iter.next());
+                assertFalse(iter.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testInsertAllInvalidRecord() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        records.add(150, new Record(1));
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            t1.createIndex(tableName, "int", false);
+            try {
+                t1.insertAll(tableName, records.iterator());
+                fail();
+            } catch (DatabaseException e) {
+                // expected
+            }
+        }
+
+        // the batch fails as a whole, leaving the table and its index empty
+        try(Transaction t1 = db.beginTransaction()) {
+            TransactionContext tc = t1.getTransactionContext();
+            assertEquals(0, tc.getTable(tableName).getStats().getNumRecords());
+            assertFalse(tc.getRecordIterator(tableName).hasNext());
+            for (int i = 0; i < 300; ++i) {
+                assertFalse(tc.lookupKey(tableName, "int", new IntDataBox(i)).hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testInsertAllDuplicateKey() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            t1.createIndex(tableName, "int", false);
+            t1.insertAll(tableName, records.iterator());
+        }
+
+        // a key repeated within the batch, and a key already in the index
+        List<Record> repeated = new ArrayList<>();
+        List<Record> existing = new ArrayList<>();
+        for (int i = 100; i < 200; ++i) {
+            repeated.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            existing.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        repeated.add(TestUtils.createRecordWithAllTypesWithValue(150));
+        existing.add(TestUtils.createRecordWithAllTypesWithValue(50));
+        for (List<Record> batch : Arrays.asList(repeated, existing)) {
+            try(Transaction t1 = db.beginTransaction()) {
+                try {
+                    t1.insertAll(tableName, batch.iterator());
+                    fail();
+                } catch (DatabaseException e) {
+                    // expected
+                }
+            }
+        }
+
+        // neither batch added anything, to the table or to its index
+        try(Transaction t1 = db.beginTransaction()) {
+            TransactionContext tc = t1.getTransactionContext();
+            assertEquals(100, tc.getTable(tableName).getStats().getNumRecords());
+            for (int i = 0; i < 200; ++i) {
+                assertEquals(i < 100, tc.lookupKey(tableName, "int", new IntDataBox(i)).hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testTableSharedByTransactions() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Table table;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            table = t1.getTransactionContext().getTable(tableName);
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert(tableName, TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+        }
+        // later transactions insert through the same table, and its page directory
+        try(Transaction t2 = db.beginTransaction()) {
+            assertSame(table, t2.getTransactionContext().getTable(tableName));
+            for (int i = 1000; i < 2000; ++i) {
+                t2.insert(tableName, TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+            assertEquals(2000, table.getStats().getNumRecords());
+            int perPage = table.getNumRecordsPerPage();
+            assertEquals((2000 + perPage - 1) / perPage, table.getNumDataPages());
+        }
+
+        // until the table is dropped
+        try(Transaction t3 = db.beginTransaction()) {
+            t3.dropTable(tableName);
+            t3.createTable(s, tableName);
+            assertNotSame(table, t3.getTransactionContext().getTable(tableName));
+        }
+    }
+
+    /**
+     * Transactions inserting into the same table at the same time never take the
+     * same space on a page.
+     */
+    @Test
+    public void testConcurrentInserts() throws InterruptedException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+        try(Transaction t = db.beginTransaction()) {
+            t.createTable(s, tableName);
+        }
+
+        int numThreads = 4;
+        int numRecords = 1000;
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                try(Transaction t = db.beginTransaction()) {
+                    for (int j = 0; j < numRecords; ++j) {
+                        t.insert(tableName, TestUtils.createRecordWithAllTypesWithValue(thread * numRecords + j));
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+
+        try(Transaction t = db.beginTransaction()) {
+            Set<Integer> values = new HashSet<>();
+            Iterator<Record> iter = t.getTransactionContext().getRecordIterator(tableName);
+            while (iter.hasNext()) {
+                assertTrue(values.add(iter.next().getValue(1).getInt()));
+            }
+            assertEquals(numThreads * numRecords, values.size());
+        }
+    }
+
     @Test(expected = DatabaseException.class)
     public void testTransactionTempTable2() {
         Schema s = TestUtils.createSchemaWithAllTypes();
@@ -148,6 +386,120 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testSlottedTableDurability() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        RecordId rid;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName, TableFormat.SLOTTED);
+            rid = t1.getTransactionContext().addRecord(tableName, input);
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try(Transaction t1 = db.beginTransaction()) {
+            assertEquals(TableFormat.SLOTTED, t1.getTransactionContext().getTable(tableName).getFormat());
+            assertEquals(input, t1.getTransactionContext().getRecord(tableName, rid));
+        }
+    }
+
+    @Test
+    public void testMappedFilesDurability() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        // written through memory mappings, read back through file reads
+        db.close();
+        db = new Database(this.filename, 32, new DummyLockManager(), new Database.Options().mappedFiles(true));
+        RecordId rid;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            rid = t1.getTransactionContext().addRecord(tableName, input);
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try(Transaction t1 = db.beginTransaction()) {
+            assertEquals(input, t1.getTransactionContext().getRecord(tableName, rid));
+        }
+    }
+
+    @Test
+    public void testLargePages() throws IOException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+        int pageSize = 4 * DiskSpaceManager.PAGE_SIZE;
+        int numRecords = 2000;
+
+        db.close();
+        String largeDir = tempFolder.newFolder("largePages").getAbsolutePath();
+        db = new Database(largeDir, 32, new DummyLockManager(), new Database.Options().pageSize(pageSize));
+        int recordsPerPage;
+        int order;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < numRecords; ++i) {
+                t1.insert(tableName, TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+            t1.createIndex(tableName, "int", false);
+            recordsPerPage = t1.getTransactionContext().getTable(tableName).getNumRecordsPerPage();
+            order = t1.getTransactionContext().getTreeOrder(tableName, "int");
+            Iterator<Record> records = t1.getTransactionContext().lookupKey(tableName, "int",
+                                                                            new IntDataBox(numRecords / 2));
+            assertEquals(TestUtils.createRecordWithAllTypesWithValue(numRecords / 2), records.next());
+            assertFalse(records.hasNext());
+        }
+        assertEquals(pageSize, db.getBufferManager().getPageSize());
+        // about four times as many records, and keys, per page as with 4K pages
+        assertTrue(recordsPerPage > 3 * Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, s));
+        assertTrue(order > 3 * BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, Type.intType()));
+
+        // reopened with the default page size, the database keeps its own
+        db.close();
+        db = new Database(largeDir, 32);
+        assertEquals(pageSize, db.getBufferManager().getPageSize());
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> scan = t1.getTransactionContext().getRecordIterator(tableName);
+            int count = 0;
+            for (; scan.hasNext(); scan.next()) ++count;
+            assertEquals(numRecords, count);
+        }
+    }
+
+    @Test
+    public void testWarmUpAcrossRestart() throws InterruptedException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+        RecordId rid;
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            rid = t1.getTransactionContext().addRecord(tableName, TestUtils.createRecordWithAllTypes());
+        }
+
+        db.close();
+        File warmUpFile = new File(this.filename, "buffer.warmup");
+        assertTrue(warmUpFile.exists());
+        db = new Database(this.filename, 32);
+        assertFalse(warmUpFile.exists());
+        for (int i = 0; i < 1000 && db.getBufferManager().isWarmingUp(); ++i) {
+            Thread.sleep(10);
+        }
+        assertTrue(db.getBufferManager().getNumWarmedUp() > 0);
+
+        // the table's pages were loaded by warm-up, so reading the record needs no IO
+        long numIOs = db.getBufferManager().getNumIOs();
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.getTransactionContext().getRecord(tableName, rid);
+        }
+        assertEquals(numIOs, db.getBufferManager().getNumIOs());
+    }
+
     @Test
     public void testREADMESample() {
         try (Transaction t1 = db.beginTransaction()) {
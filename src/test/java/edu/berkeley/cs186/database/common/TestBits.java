@@ -5,6 +5,8 @@ import edu.berkeley.cs186.database.categories.SystemTests;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
@@ -119,4 +121,57 @@ public class TestBits {
             assertArrayEquals(expectedsZero[i], bytes);
         }
     }
+
+    @Test
+    public void testCountBits() {
+        assertEquals(2, Bits.countBits((byte) 0b00001010));
+        assertEquals(7, Bits.countBits((byte) 0b11111101));
+
+        // 20 bytes: spans two full words and a partial one
+        byte[] bytes = new byte[20];
+        bytes[0] = (byte) 0b10000001;
+        bytes[7] = (byte) 0b11111111;
+        bytes[8] = (byte) 0b00000001;
+        bytes[19] = (byte) 0b10100000;
+        assertEquals(13, Bits.countBits(bytes));
+        assertEquals(13, Bits.countBits(bytes, 0, 160));
+        assertEquals(1, Bits.countBits(bytes, 0, 7));
+        assertEquals(9, Bits.countBits(bytes, 7, 64));
+        assertEquals(5, Bits.countBits(bytes, 60, 72));
+        assertEquals(1, Bits.countBits(bytes, 153, 160));
+        assertEquals(0, Bits.countBits(bytes, 40, 40));
+    }
+
+    @Test
+    public void testNextSetBit() {
+        byte[] bytes = new byte[20];
+        assertEquals(160, Bits.nextSetBit(bytes, 0, 160));
+        bytes[0] = (byte) 0b10000000;
+        bytes[9] = (byte) 0b00010000;
+        bytes[19] = (byte) 0b00000001;
+        assertEquals(0, Bits.nextSetBit(bytes, 0, 160));
+        assertEquals(75, Bits.nextSetBit(bytes, 1, 160));
+        assertEquals(75, Bits.nextSetBit(bytes, 75, 160));
+        assertEquals(159, Bits.nextSetBit(bytes, 76, 160));
+        assertEquals(150, Bits.nextSetBit(bytes, 76, 150));
+        assertEquals(10, Bits.nextSetBit(bytes, 10, 10));
+    }
+
+    @Test
+    public void testNextClearBit() {
+        byte[] bytes = new byte[20];
+        Arrays.fill(bytes, (byte) 0xFF);
+        assertEquals(160, Bits.nextClearBit(bytes, 0, 160));
+        bytes[2] = (byte) 0b11011111;
+        bytes[12] = (byte) 0b01111111;
+        assertEquals(18, Bits.nextClearBit(bytes, 0, 160));
+        assertEquals(96, Bits.nextClearBit(bytes, 19, 160));
+        assertEquals(90, Bits.nextClearBit(bytes, 19, 90));
+        assertEquals(160, Bits.nextClearBit(bytes, 97, 160));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNextSetBitOutOfRange() {
+        Bits.nextSetBit(new byte[2], 0, 17);
+    }
 }
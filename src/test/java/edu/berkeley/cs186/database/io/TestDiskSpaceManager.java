@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.io;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -10,8 +12,12 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.Assert.*;
 
@@ -21,7 +27,7 @@ public class TestDiskSpaceManager {
     public TemporaryFolder tempFolder = new TemporaryFolder();
 
     private DiskSpaceManager diskSpaceManager;
-    private Path managerRoot;
+    Path managerRoot;
 
     @Before
     public void beforeEach() throws IOException {
@@ -29,7 +35,15 @@ public class TestDiskSpaceManager {
     }
 
     private DiskSpaceManager getDiskSpaceManager() {
-        return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        return getDiskSpaceManager(new DummyRecoveryManager());
+    }
+
+    DiskSpaceManager getDiskSpaceManager(RecoveryManager recoveryManager) {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), recoveryManager);
+    }
+
+    DiskSpaceManager getDiskSpaceManager(RecoveryManager recoveryManager, int pageSize) {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), recoveryManager, pageSize);
     }
 
     @Test
@@ -201,6 +215,406 @@ public class TestDiskSpaceManager {
         diskSpaceManager.close();
     }
 
+    @Test
+    public void testReadWriteDirect() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        for (int i = 0; i < DiskSpaceManager.PAGE_SIZE; ++i) {
+            buf.put(i, (byte) (Integer.valueOf(i).hashCode() & 0xFF));
+        }
+        diskSpaceManager.writePage(pageNum, buf);
+        ByteBuffer readbuf = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        diskSpaceManager.readPage(pageNum, readbuf);
+
+        // positions are left alone
+        assertEquals(0, buf.position());
+        assertEquals(0, readbuf.position());
+        assertEquals(buf, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testWriteBatch() {
+        // records the pages reported as written to disk
+        List<Long> synced = new ArrayList<>();
+        diskSpaceManager = getDiskSpaceManager(new DummyRecoveryManager() {
+            @Override
+            public void diskIOHook(long pageNum) {
+                synced.add(pageNum);
+            }
+        });
+        int logPartNum = diskSpaceManager.allocPart(LogManager.LOG_PARTITION);
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        long logPageNum = diskSpaceManager.allocPage(logPartNum);
+        long pageNum1 = diskSpaceManager.allocPage(partNum1);
+        long pageNum2 = diskSpaceManager.allocPage(partNum2);
+        long pageNum3 = diskSpaceManager.allocPage(partNum2);
+        synced.clear();
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 42;
+        diskSpaceManager.beginWriteBatch();
+        diskSpaceManager.beginWriteBatch();
+        diskSpaceManager.writePage(pageNum3, buf);
+        diskSpaceManager.writePage(pageNum1, buf);
+        diskSpaceManager.writePage(pageNum2, buf);
+        diskSpaceManager.endWriteBatch();
+        // pages are readable before the batch ends, but not reported until it is synced
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf, readbuf);
+        assertEquals(Collections.emptyList(), synced);
+        // except for log pages, which are always synced immediately
+        diskSpaceManager.writePage(logPageNum, buf);
+        assertEquals(Collections.singletonList(logPageNum), synced);
+        diskSpaceManager.endWriteBatch();
+        assertEquals(Arrays.asList(logPageNum, pageNum1, pageNum2, pageNum3), synced);
+
+        // without a batch, every write is reported immediately
+        synced.clear();
+        diskSpaceManager.writePage(pageNum1, buf);
+        assertEquals(Collections.singletonList(pageNum1), synced);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testAsyncReadWrite() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(i % 2 == 0 ? partNum1 : partNum2);
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < pageNums.length; ++i) {
+            ByteBuffer buf = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+            buf.put(0, (byte) i);
+            writes.add(diskSpaceManager.writePageAsync(pageNums[i], buf));
+        }
+        writes.forEach(CompletableFuture::join);
+
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        ByteBuffer[] bufs = new ByteBuffer[pageNums.length];
+        for (int i = 0; i < pageNums.length; ++i) {
+            bufs[i] = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+            reads.add(diskSpaceManager.readPageAsync(pageNums[i], bufs[i]));
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            reads.get(i).join();
+            assertEquals((byte) i, bufs[i].get(0));
+        }
+
+        // errors are reported through the future
+        CompletableFuture<Void> read = diskSpaceManager.readPageAsync(DiskSpaceManager.getVirtualPageNum(partNum1, 100),
+                                       ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE));
+        try {
+            read.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof PageException);
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testAsyncWriteInBatch() {
+        List<Long> synced = Collections.synchronizedList(new ArrayList<>());
+        diskSpaceManager = getDiskSpaceManager(new DummyRecoveryManager() {
+            @Override
+            public void diskIOHook(long pageNum) {
+                synced.add(pageNum);
+            }
+        });
+        int partNum = diskSpaceManager.allocPart(1);
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        synced.clear();
+
+        ByteBuffer buf = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+        // a write issued and completed inside a batch is synced with the batch
+        diskSpaceManager.beginWriteBatch();
+        diskSpaceManager.writePageAsync(pageNum1, buf).join();
+        assertEquals(Collections.emptyList(), synced);
+        diskSpaceManager.endWriteBatch();
+        assertEquals(Collections.singletonList(pageNum1), synced);
+
+        // a write issued without a batch is synced on its own
+        synced.clear();
+        diskSpaceManager.writePageAsync(pageNum2, buf).join();
+        assertEquals(Collections.singletonList(pageNum2), synced);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testWritePages() {
+        List<Long> synced = Collections.synchronizedList(new ArrayList<>());
+        diskSpaceManager = getDiskSpaceManager(new DummyRecoveryManager() {
+            @Override
+            public void diskIOHook(long pageNum) {
+                synced.add(pageNum);
+            }
+        });
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        long[] pageNums = new long[6];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(i < 4 ? partNum1 : partNum2);
+        }
+        synced.clear();
+
+        // out of order, with a gap in partition 1
+        long[] pages = new long[] { pageNums[5], pageNums[1], pageNums[3], pageNums[0], pageNums[4] };
+        ByteBuffer[] bufs = new ByteBuffer[pages.length];
+        for (int i = 0; i < pages.length; ++i) {
+            bufs[i] = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+            bufs[i].put(0, (byte) (i + 1));
+        }
+        diskSpaceManager.writePages(pages, bufs);
+        Collections.sort(synced);
+        assertEquals(Arrays.asList(pageNums[0], pageNums[1], pageNums[3], pageNums[4], pageNums[5]), synced);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < pages.length; ++i) {
+            diskSpaceManager.readPage(pages[i], readbuf);
+            assertEquals((byte) (i + 1), readbuf[0]);
+        }
+        diskSpaceManager.readPage(pageNums[2], readbuf);
+        assertEquals(0, readbuf[0]);
+
+        // inside a batch, the pages are only reported once the batch ends
+        synced.clear();
+        diskSpaceManager.beginWriteBatch();
+        diskSpaceManager.writePages(pages, bufs);
+        assertEquals(Collections.emptyList(), synced);
+        diskSpaceManager.endWriteBatch();
+        assertEquals(pages.length, synced.size());
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testWritePagesGathers() {
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(managerRoot.toString(),
+                new DummyRecoveryManager());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        DiskStats stats = diskSpaceManager.getStats();
+        stats.reset();
+
+        ByteBuffer buf = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+        for (long pageNum : pageNums) {
+            diskSpaceManager.writePage(pageNum, buf);
+        }
+        assertEquals(8, stats.getPagesWritten());
+        assertEquals(8, stats.getWriteOps());
+        assertEquals(8, stats.getSyncs());
+        assertEquals(2.0, stats.getWriteAmplification(), 1e-9);
+
+        // two runs of adjacent pages, one sync
+        stats.reset();
+        long[] pages = new long[] { pageNums[7], pageNums[0], pageNums[1], pageNums[2], pageNums[5], pageNums[6] };
+        ByteBuffer[] bufs = new ByteBuffer[pages.length];
+        Arrays.fill(bufs, buf);
+        diskSpaceManager.writePages(pages, bufs);
+        assertEquals(6, stats.getPagesWritten());
+        assertEquals(2, stats.getWriteOps());
+        assertEquals(1, stats.getSyncs());
+        assertEquals(0.5, stats.getWriteAmplification(), 1e-9);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testPartitionStats() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        long page1 = diskSpaceManager.allocPage(partNum1);
+        long page2 = diskSpaceManager.allocPage(partNum2);
+        DiskStats stats = ((DiskSpaceManagerImpl) diskSpaceManager).getStats();
+        stats.reset();
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < 3; ++i) {
+            diskSpaceManager.readPage(page1, buf);
+        }
+        diskSpaceManager.writePage(page2, buf);
+
+        assertEquals(new TreeSet<>(Arrays.asList(partNum1, partNum2)), stats.getPartitions());
+        assertEquals(3, stats.getPagesRead(partNum1));
+        assertEquals(3L * DiskSpaceManager.PAGE_SIZE, stats.getBytesRead(partNum1));
+        assertEquals(0, stats.getPagesWritten(partNum1));
+        assertEquals(3, stats.getReadLatency(partNum1).getCount());
+        assertEquals(0, stats.getPagesRead(partNum2));
+        assertEquals(1, stats.getPagesWritten(partNum2));
+        assertEquals(DiskSpaceManager.PAGE_SIZE, stats.getBytesWritten(partNum2));
+        assertEquals(1, stats.getWriteLatency(partNum2).getCount());
+        assertTrue(stats.getSyncs(partNum2) > 0);
+        assertEquals(stats.getSyncs(partNum2), stats.getSyncLatency(partNum2).getCount());
+        assertEquals(3, stats.getPagesRead());
+        assertEquals(3, stats.getReadLatency().getCount());
+        assertTrue(stats.getReadLatency().getMaxNanos() >= stats.getReadLatency(partNum1).getPercentileNanos(50));
+
+        // partitions never touched have empty counters
+        assertEquals(0, stats.getPagesRead(3));
+        assertEquals(0, stats.getReadLatency(3).getCount());
+
+        stats.reset();
+        assertTrue(stats.getPartitions().isEmpty());
+        assertEquals(0, stats.getReadLatency().getCount());
+
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testWritePagesNotAllocated() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        ByteBuffer buf = ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+        try {
+            diskSpaceManager.writePages(new long[] { pageNum, pageNum + 1 }, new ByteBuffer[] { buf, buf });
+        } finally {
+            diskSpaceManager.close();
+        }
+    }
+
+    @Test
+    public void testExtentAllocation() throws IOException {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        DiskStats stats = ((DiskSpaceManagerImpl) diskSpaceManager).getStats();
+        stats.reset();
+
+        // extents of 4, 8 and 16 pages, each zeroed with one write
+        int numPages = DiskSpaceManagerImpl.MIN_EXTENT_PAGES * 7;
+        for (int i = 0; i < numPages; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), diskSpaceManager.allocPage(partNum));
+        }
+        assertEquals(numPages, stats.getPagesWritten());
+        assertEquals(3, stats.getWriteOps());
+        assertEquals(0, stats.getSyncs());
+
+        // allocations reach the header page on disk with the next sync
+        Path file = managerRoot.resolve(Integer.toString(partNum));
+        assertEquals(0, Files.readAllBytes(file)[DiskSpaceManager.PAGE_SIZE]);
+        diskSpaceManager.writePage(DiskSpaceManager.getVirtualPageNum(partNum, 0),
+                                   new byte[DiskSpaceManager.PAGE_SIZE]);
+        assertEquals((byte) 0xFF, Files.readAllBytes(file)[DiskSpaceManager.PAGE_SIZE]);
+
+        // new extents start at the first free page, and end at the next allocated one
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 2));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 2), diskSpaceManager.allocPage(partNum));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, numPages), diskSpaceManager.allocPage(partNum));
+        // pages freed in the current extent are not handed out again until then
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, numPages));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, numPages + 1), diskSpaceManager.allocPage(partNum));
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testPageSize() throws IOException {
+        int pageSize = 4 * DiskSpaceManager.PAGE_SIZE;
+        diskSpaceManager = getDiskSpaceManager(new DummyRecoveryManager(), pageSize);
+        assertEquals(pageSize, diskSpaceManager.getPageSize());
+        int partNum = diskSpaceManager.allocPart();
+        long page0 = diskSpaceManager.allocPage(partNum);
+        long page1 = diskSpaceManager.allocPage(partNum);
+
+        byte[] b = new byte[pageSize];
+        Arrays.fill(b, (byte) 7);
+        diskSpaceManager.writePage(page1, b);
+        diskSpaceManager.writePages(new long[] {page0}, new ByteBuffer[] {ByteBuffer.wrap(b)});
+        diskSpaceManager.close();
+        // master page, header page, then the data pages
+        byte[] file = Files.readAllBytes(managerRoot.resolve(Integer.toString(partNum)));
+        assertEquals(0, file[2 * pageSize - 1]);
+        assertEquals(7, file[2 * pageSize]);
+        assertEquals(7, file[4 * pageSize - 1]);
+
+        // the stored page size wins over the one asked for
+        diskSpaceManager = getDiskSpaceManager(new DummyRecoveryManager(), DiskSpaceManager.MAX_PAGE_SIZE);
+        assertEquals(pageSize, diskSpaceManager.getPageSize());
+        byte[] read = new byte[pageSize];
+        diskSpaceManager.readPage(page0, read);
+        assertArrayEquals(b, read);
+        diskSpaceManager.readPage(page1, read);
+        assertArrayEquals(b, read);
+        try {
+            diskSpaceManager.readPage(page0, new byte[DiskSpaceManager.PAGE_SIZE]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* do nothing */
+        }
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadPageSize() {
+        getDiskSpaceManager(new DummyRecoveryManager(), 3 * DiskSpaceManager.PAGE_SIZE);
+    }
+
+    @Test
+    public void testTempPartition() {
+        diskSpaceManager = getDiskSpaceManager();
+        ((DiskSpaceManagerImpl) diskSpaceManager).setTempMemoryPages(2);
+        int partNum = diskSpaceManager.allocTempPart();
+        assertTrue(diskSpaceManager.isTempPart(partNum));
+        assertFalse(managerRoot.resolve(Integer.toString(partNum)).toFile().exists());
+
+        long[] pages = new long[3];
+        byte[][] data = new byte[pages.length][DiskSpaceManager.PAGE_SIZE];
+        Path scratch = managerRoot.resolve("temp-" + partNum);
+        for (int i = 0; i < pages.length; ++i) {
+            pages[i] = diskSpaceManager.allocPage(partNum);
+            byte[] b = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(pages[i], b);
+            assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], b);
+
+            Arrays.fill(data[i], (byte) (i + 1));
+            diskSpaceManager.writePage(pages[i], data[i]);
+            // only the page over the memory budget spills
+            assertEquals(i == 2, scratch.toFile().exists());
+        }
+        assertEquals(2, ((DiskSpaceManagerImpl) diskSpaceManager).getTempMemoryPagesUsed());
+        for (int i = 0; i < pages.length; ++i) {
+            byte[] b = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(pages[i], b);
+            assertArrayEquals(data[i], b);
+        }
+
+        diskSpaceManager.freePart(partNum);
+        assertFalse(diskSpaceManager.isTempPart(partNum));
+        assertFalse(scratch.toFile().exists());
+        assertEquals(0, ((DiskSpaceManagerImpl) diskSpaceManager).getTempMemoryPagesUsed());
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndWriteBatchWithoutBegin() {
+        diskSpaceManager = getDiskSpaceManager();
+        try {
+            diskSpaceManager.endWriteBatch();
+        } finally {
+            diskSpaceManager.close();
+        }
+    }
+
     @Test
     public void testReadWritePersistent() {
         diskSpaceManager = getDiskSpaceManager();
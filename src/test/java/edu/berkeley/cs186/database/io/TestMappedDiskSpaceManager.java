@@ -0,0 +1,22 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Runs the disk space manager tests against MappedDiskSpaceManager.
+ */
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestMappedDiskSpaceManager extends TestDiskSpaceManager {
+    @Override
+    DiskSpaceManager getDiskSpaceManager(RecoveryManager recoveryManager) {
+        return new MappedDiskSpaceManager(managerRoot.toString(), recoveryManager);
+    }
+
+    @Override
+    DiskSpaceManager getDiskSpaceManager(RecoveryManager recoveryManager, int pageSize) {
+        return new MappedDiskSpaceManager(managerRoot.toString(), recoveryManager, pageSize);
+    }
+}
@@ -0,0 +1,143 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Compares writing pages out with a sync after every page against syncing once
+ * per partition at the end of a write batch, on a real disk, printing the time
+ * taken and the write amplification (see DiskStats) of each workload:
+ *
+ * - flushing a buffer pool full of dirty pages, page by page with evict, and all
+ *   at once with evictAll (which runs in a batch, with gathering writes);
+ * - a bulk load through a small buffer pool, in which every new page evicts a
+ *   dirty one, with and without the load running in a batch.
+ *
+ * Not run as part of the test suite; after mvn test-compile, run with
+ *
+ *   java -cp target/classes:target/test-classes edu.berkeley.cs186.database.io.WriteBatchBenchmark [dir]
+ *
+ * where dir (by default a temporary directory) should be on the disk to measure.
+ */
+public class WriteBatchBenchmark {
+    private static final int NUM_FRAMES = 512;
+    private static final int LOAD_FRAMES = 32;
+    private static final int LOAD_PAGES = 2048;
+
+    public static void main(String[] args) throws IOException {
+        File parent = args.length > 0 ? new File(args[0]) : null;
+
+        time("flush, sync per page", parent, dsm -> flush(dsm, false));
+        time("flush, evictAll batch", parent, dsm -> flush(dsm, true));
+        time("bulk load, sync per page", parent, dsm -> load(dsm, false));
+        time("bulk load, one batch", parent, dsm -> load(dsm, true));
+    }
+
+    private interface Workload {
+        /**
+         * @return time taken by the part of the workload being measured, in nanoseconds
+         */
+        long run(DiskSpaceManager diskSpaceManager);
+    }
+
+    private static void time(String name, File parent, Workload workload) throws IOException {
+        File dir = parent == null ? Files.createTempDirectory("write-batch").toFile()
+                   : Files.createTempDirectory(parent.toPath(), "write-batch").toFile();
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(dir.getPath(), new DummyRecoveryManager());
+        try {
+            double seconds = workload.run(diskSpaceManager) / 1e9;
+            System.out.printf("%-26s %8.1f ms  %6.3f ops/page%n", name, seconds * 1e3,
+                              diskSpaceManager.getStats().getWriteAmplification());
+        } finally {
+            diskSpaceManager.close();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Dirties a buffer pool's worth of pages, then writes them all out, with evict
+     * on each page or with evictAll. Only writing the pages out is timed.
+     */
+    private static long flush(DiskSpaceManager diskSpaceManager, boolean batch) {
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[NUM_FRAMES];
+        diskSpaceManager.beginWriteBatch();
+        for (int i = 0; i < NUM_FRAMES; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        diskSpaceManager.endWriteBatch();
+        ((DiskSpaceManagerImpl) diskSpaceManager).getStats().reset();
+
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                NUM_FRAMES, new ClockEvictionPolicy());
+        byte[] bytes = new byte[] { 1, 8, 6 };
+        for (long pageNum : pageNums) {
+            Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+            try {
+                page.getBuffer().put(bytes);
+            } finally {
+                page.unpin();
+            }
+        }
+        long start = System.nanoTime();
+        if (batch) {
+            bufferManager.evictAll();
+        } else {
+            for (long pageNum : pageNums) {
+                bufferManager.evict(pageNum);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        bufferManager.close();
+        return elapsed;
+    }
+
+    /**
+     * Allocates and fills LOAD_PAGES new pages through a buffer pool of LOAD_FRAMES
+     * frames, optionally inside a write batch, then writes out what is left in the
+     * buffer pool.
+     */
+    private static long load(DiskSpaceManager diskSpaceManager, boolean batch) {
+        int partNum = diskSpaceManager.allocPart();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                LOAD_FRAMES, new ClockEvictionPolicy());
+        byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        Arrays.fill(bytes, (byte) 186);
+        long start = System.nanoTime();
+        if (batch) {
+            diskSpaceManager.beginWriteBatch();
+        }
+        try {
+            for (int i = 0; i < LOAD_PAGES; ++i) {
+                Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+                try {
+                    page.getBuffer().put(bytes);
+                } finally {
+                    page.unpin();
+                }
+            }
+            bufferManager.evictAll();
+        } finally {
+            if (batch) {
+                diskSpaceManager.endWriteBatch();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        bufferManager.close();
+        return elapsed;
+    }
+}
@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the hit ratio of the eviction policies on a workload that mixes point
+ * lookups into a small, skewed hot set of pages with large sequential scans over
+ * many more pages than fit in the buffer pool. Not run as part of the test suite;
+ * after mvn test-compile, run with
+ *
+ *   java -cp target/classes:target/test-classes edu.berkeley.cs186.database.memory.EvictionPolicyBenchmark
+ */
+public class EvictionPolicyBenchmark {
+    private static final int NUM_FRAMES = 256;
+    private static final int NUM_HOT_PAGES = 160;
+    private static final int NUM_SCAN_PAGES = 2000;
+    private static final int NUM_ROUNDS = 20;
+    private static final int LOOKUPS_PER_ROUND = 20_000;
+    private static final int SCANS_PER_ROUND = 2;
+
+    public static void main(String[] args) {
+        run("Clock", ClockEvictionPolicy::new);
+        run("LRU", LRUEvictionPolicy::new);
+        run("LRU-2", LRUKEvictionPolicy::new);
+        run("2Q", TwoQueueEvictionPolicy::new);
+        run("ARC", ARCEvictionPolicy::new);
+    }
+
+    private static void run(String name, Supplier<EvictionPolicy> policy) {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                NUM_FRAMES, policy, 1);
+        long[] hotPages = allocPages(bufferManager, diskSpaceManager.allocPart(), NUM_HOT_PAGES);
+        long[] scanPages = allocPages(bufferManager, diskSpaceManager.allocPart(), NUM_SCAN_PAGES);
+        bufferManager.evictAll();
+
+        Random random = new Random(186);
+        byte[] buf = new byte[8];
+        long lookups = 0;
+        long lookupMisses = 0;
+        long scanned = 0;
+        long scanMisses = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < NUM_ROUNDS; ++round) {
+            int nextScan = LOOKUPS_PER_ROUND / (SCANS_PER_ROUND + 1);
+            for (int i = 0; i < LOOKUPS_PER_ROUND; ++i) {
+                if (i == nextScan) {
+                    long before = bufferManager.getNumIOs();
+                    for (long pageNum : scanPages) {
+                        access(bufferManager, pageNum, buf);
+                    }
+                    scanMisses += bufferManager.getNumIOs() - before;
+                    scanned += scanPages.length;
+                    nextScan += LOOKUPS_PER_ROUND / (SCANS_PER_ROUND + 1);
+                }
+                // skewed towards the start of the hot set
+                double r = random.nextDouble();
+                long pageNum = hotPages[(int) (r * r * NUM_HOT_PAGES)];
+                long before = bufferManager.getNumIOs();
+                access(bufferManager, pageNum, buf);
+                lookupMisses += bufferManager.getNumIOs() - before;
+                ++lookups;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-6s lookup hit ratio %6.2f%%   scan hit ratio %6.2f%%   overall %6.2f%%   (%.0f ms)%n",
+                name, 100.0 * (lookups - lookupMisses) / lookups, 100.0 * (scanned - scanMisses) / scanned,
+                100.0 * (lookups + scanned - lookupMisses - scanMisses) / (lookups + scanned), elapsed / 1e6);
+
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    private static long[] allocPages(BufferManager bufferManager, int partNum, int numPages) {
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+        return pageNums;
+    }
+
+    private static void access(BufferManager bufferManager, long pageNum, byte[] buf) {
+        BufferFrame frame = bufferManager.fetchPageFrameForRead(pageNum);
+        try {
+            frame.readBytes((short) 0, (short) buf.length, buf);
+        } finally {
+            frame.unpin();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Microbenchmark for page table lookups: the latency of a BufferManager#fetchPage
+ * hit, and of a bare page table lookup compared with the HashMap<Long, Integer>
+ * it replaced. Not run as part of the test suite; after mvn test-compile, run with
+ *
+ *   java -cp target/classes:target/test-classes edu.berkeley.cs186.database.memory.PageTableBenchmark
+ */
+public class PageTableBenchmark {
+    private static final int NUM_FRAMES = 1024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int OPS_PER_ROUND = 2_000_000;
+
+    // keeps the JIT from discarding lookups
+    private static long sink;
+
+    public static void main(String[] args) {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                NUM_FRAMES, new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[NUM_FRAMES];
+        for (int i = 0; i < NUM_FRAMES; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+
+        PageTable pageTable = new PageTable(NUM_FRAMES);
+        Map<Long, Integer> hashMap = new HashMap<>();
+        for (int i = 0; i < NUM_FRAMES; ++i) {
+            pageTable.put(pageNums[i], i);
+            hashMap.put(pageNums[i], i);
+        }
+
+        report("fetchPageFrame hit", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; ++i) {
+                BufferFrame frame = bufferManager.fetchPageFrame(pageNums[i & (NUM_FRAMES - 1)]);
+                sum += frame.getPageNum();
+                frame.unpin();
+            }
+            return sum;
+        });
+        report("fetchPageFrameForRead hit", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; ++i) {
+                BufferFrame frame = bufferManager.fetchPageFrameForRead(pageNums[i & (NUM_FRAMES - 1)]);
+                sum += frame.getPageNum();
+                frame.unpin();
+            }
+            return sum;
+        });
+        report("PageTable#get", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; ++i) {
+                sum += pageTable.get(pageNums[i & (NUM_FRAMES - 1)]);
+            }
+            return sum;
+        });
+        report("HashMap<Long, Integer>#get", () -> {
+            long sum = 0;
+            for (int i = 0; i < OPS_PER_ROUND; ++i) {
+                sum += hashMap.get(pageNums[i & (NUM_FRAMES - 1)]);
+            }
+            return sum;
+        });
+
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    private interface Round {
+        long run();
+    }
+
+    private static void report(String name, Round round) {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            sink += round.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; ++i) {
+            long start = System.nanoTime();
+            sink += round.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.printf("%-28s %8.2f ns/op (best %.2f ns/op)%n", name,
+                (double) total / MEASURED_ROUNDS / OPS_PER_ROUND, (double) best / OPS_PER_ROUND);
+    }
+}
@@ -4,20 +4,30 @@ import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestBufferManager {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private DiskSpaceManager diskSpaceManager;
     private BufferManager bufferManager;
 
@@ -320,6 +330,432 @@ public class TestBufferManager {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testPartitionedPools() {
+        BufferManager partitioned = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 4,
+                ClockEvictionPolicy::new, 2);
+        int partNum = diskSpaceManager.allocPart(1);
+
+        // consecutive pages alternate between the two sub-pools of two frames each
+        BufferFrame frame1 = partitioned.fetchNewPageFrame(partNum);
+        BufferFrame frame2 = partitioned.fetchNewPageFrame(partNum);
+        BufferFrame frame3 = partitioned.fetchNewPageFrame(partNum);
+        BufferFrame frame4 = partitioned.fetchNewPageFrame(partNum);
+        frame1.unpin();
+        frame2.unpin();
+        frame3.unpin();
+        frame4.unpin();
+
+        // a fifth page can only evict a page from its own sub-pool
+        BufferFrame frame5 = partitioned.fetchNewPageFrame(partNum);
+        frame5.unpin();
+
+        assertFalse(frame1.isValid() && frame3.isValid());
+        assertTrue(frame2.isValid());
+        assertTrue(frame4.isValid());
+        assertTrue(frame5.isValid());
+        assertEquals(2, partitioned.getNumPools());
+
+        partitioned.close();
+    }
+
+    @Test
+    public void testSharedReadPins() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+        long pageNum = frame.getPageNum();
+        frame.unpin();
+
+        // a second thread can read-pin the page while this thread holds a read pin
+        BufferFrame readFrame = bufferManager.fetchPageFrameForRead(pageNum);
+        boolean[] pinned = new boolean[1];
+        Thread reader = new Thread(() -> {
+            BufferFrame other = bufferManager.fetchPageFrameForRead(pageNum);
+            pinned[0] = other.isPinned();
+            other.unpin();
+        });
+        reader.start();
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertTrue(pinned[0]);
+
+        readFrame.unpin();
+        assertFalse(readFrame.isPinned());
+    }
+
+    @Test
+    public void testSharedReadPinsOfEvictedPage() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+        long pageNum = frame.getPageNum();
+        frame.unpin();
+        for (int i = 0; i < 5; ++i) {
+            bufferManager.fetchNewPageFrame(partNum).unpin();
+        }
+        assertFalse(frame.isValid());
+
+        // the page is read in by the first read pin, which must still only be shared
+        BufferFrame readFrame = bufferManager.fetchPageFrameForRead(pageNum);
+        boolean[] pinned = new boolean[1];
+        Thread reader = new Thread(() -> {
+            BufferFrame other = bufferManager.fetchPageFrameForRead(pageNum);
+            pinned[0] = other.isPinned();
+            other.unpin();
+        });
+        reader.start();
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertTrue(pinned[0]);
+
+        readFrame.unpin();
+        assertFalse(readFrame.isPinned());
+
+        // and no exclusive hold is left behind once it is released
+        Thread writer = new Thread(() -> bufferManager.fetchPageFrame(pageNum).unpin());
+        writer.start();
+        writer.join(10000);
+        assertFalse(writer.isAlive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWritePinWhileReadPinned() {
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+        long pageNum = frame.getPageNum();
+        frame.unpin();
+
+        BufferFrame readFrame = bufferManager.fetchPageFrameForRead(pageNum);
+        try {
+            bufferManager.fetchPageFrame(pageNum);
+        } finally {
+            readFrame.unpin();
+        }
+    }
+
+    @Test
+    public void testOffHeapReload() {
+        BufferManager offHeap = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 2,
+                ClockEvictionPolicy::new, 1, true);
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[4];
+
+        BufferFrame frame1 = offHeap.fetchNewPageFrame(partNum);
+        frame1.writeBytes((short) 67, (short) 4, expected);
+        frame1.unpin();
+
+        // force an eviction
+        for (int i = 0; i < 4; ++i) {
+            offHeap.fetchNewPageFrame(partNum).unpin();
+        }
+        assertFalse(frame1.isValid());
+
+        // reload page
+        frame1 = offHeap.fetchPageFrame(frame1.getPageNum());
+        frame1.readBytes((short) 67, (short) 4, actual);
+        frame1.unpin();
+
+        assertArrayEquals(expected, actual);
+        assertTrue(offHeap.isOffHeap());
+        offHeap.close();
+    }
+
+    @Test
+    public void testBackgroundWriter() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        long[] pageNums = new long[3];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 67, (short) 4, expected);
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+
+        BackgroundWriter writer = bufferManager.startBackgroundWriter(1, 5);
+        for (int i = 0; i < 1000 && writer.getNumPagesCleaned() < pageNums.length; ++i) {
+            Thread.sleep(10);
+        }
+        bufferManager.stopBackgroundWriter();
+
+        assertEquals(pageNums.length, writer.getNumPagesCleaned());
+        assertTrue(writer.getNumPasses() > 0);
+        assertFalse(writer.isRunning());
+        assertNull(bufferManager.getBackgroundWriter());
+
+        // pages were written through to disk while still cached
+        byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (long pageNum : pageNums) {
+            diskSpaceManager.readPage(pageNum, page);
+            assertArrayEquals(expected, Arrays.copyOfRange(page, 67 + BufferManager.RESERVED_SPACE,
+                              71 + BufferManager.RESERVED_SPACE));
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException {
+        BufferManager readAhead = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 10,
+                new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        readAhead.setReadAhead(2);
+
+        // a sequential run of SEQUENTIAL_THRESHOLD pages triggers read-ahead of the next two
+        for (int i = 0; i < BufferManager.SEQUENTIAL_THRESHOLD; ++i) {
+            readAhead.fetchPageFrame(pageNums[i]).unpin();
+        }
+        for (int i = 0; i < 1000 && readAhead.getNumPrefetched() < 2; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, readAhead.getNumPrefetched());
+        long numIOs = readAhead.getNumIOs();
+        readAhead.fetchPageFrame(pageNums[BufferManager.SEQUENTIAL_THRESHOLD]).unpin();
+        assertEquals(1, readAhead.getNumPrefetchHits());
+
+        // an explicitly prefetched page that is never fetched counts as unused
+        readAhead.prefetch(pageNums[7]);
+        for (int i = 0; i < 1000 && readAhead.getNumPrefetched() < 4; ++i) {
+            Thread.sleep(10);
+        }
+        readAhead.evict(pageNums[7]);
+        assertEquals(1, readAhead.getNumPrefetchUnused());
+        assertTrue(readAhead.getNumIOs() > numIOs);
+
+        readAhead.close();
+    }
+
+    @Test
+    public void testBufferRing() {
+        BufferManager ringed = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                new LRUEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] hotPages = new long[8];
+        for (int i = 0; i < hotPages.length; ++i) {
+            hotPages[i] = diskSpaceManager.allocPage(partNum);
+            ringed.fetchPageFrame(hotPages[i]).unpin();
+        }
+        long[] scanPages = new long[40];
+        for (int i = 0; i < scanPages.length; ++i) {
+            scanPages[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        // the ring is capped at a quarter of the buffer
+        BufferRing ring = ringed.createRing(10);
+        assertEquals(4, ring.getSize());
+
+        for (long pageNum : scanPages) {
+            ringed.fetchPageFrame(pageNum, true, ring).unpin();
+        }
+        // the first pages of the scan took free frames, the rest recycled the ring
+        assertEquals(scanPages.length - 4, ring.getNumRecycled());
+
+        // the hot pages were never evicted
+        long numIOs = ringed.getNumIOs();
+        for (long pageNum : hotPages) {
+            ringed.fetchPageFrame(pageNum).unpin();
+        }
+        assertEquals(numIOs, ringed.getNumIOs());
+
+        // a pinned ring frame is skipped, and the page loaded elsewhere
+        BufferFrame pinned = ringed.fetchPageFrame(scanPages[scanPages.length - 4], true, ring);
+        ringed.fetchPageFrame(scanPages[0], true, ring).unpin();
+        assertTrue(pinned.isValid());
+        pinned.unpin();
+
+        ringed.close();
+    }
+
+    @Test
+    public void testStats() {
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        long[] pageNums = new long[5];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(i < 3 ? partNum1 : partNum2);
+        }
+        BufferStats stats = bufferManager.getStats();
+
+        byte[] b = new byte[] { 1, 2, 3, 4 };
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNums[i]);
+            if (i % 2 == 0) {
+                frame.writeBytes((short) 0, (short) 4, b);
+            }
+            frame.unpin();
+        }
+        bufferManager.fetchPageFrameForRead(pageNums[0]).unpin();
+        bufferManager.fetchPageFrame(pageNums[3]).unpin();
+
+        assertEquals(3, stats.getMisses(partNum1));
+        assertEquals(2, stats.getMisses(partNum2));
+        assertEquals(1, stats.getHits(partNum1));
+        assertEquals(1, stats.getHits(partNum2));
+        assertEquals(0.25, stats.getHitRatio(partNum1), 1e-9);
+        assertEquals(2.0 / 7, stats.getHitRatio(), 1e-9);
+        assertEquals(3, bufferManager.getNumDirtyPages());
+        assertEquals(Integer.valueOf(2), bufferManager.getDirtyPageCounts().get(partNum1));
+
+        // evicting pages 0 through 4 writes out the three dirty ones
+        for (long pageNum : pageNums) {
+            bufferManager.evict(pageNum);
+        }
+        assertEquals(3, stats.getDirtyEvictions());
+        assertEquals(2, stats.getCleanEvictions());
+        assertEquals(3, stats.getFlushLatency().getCount());
+        assertEquals(stats.getFlushLatency().getMaxNanos(), stats.getFlushLatency().getPercentileNanos(100));
+        assertEquals(0, bufferManager.getNumDirtyPages());
+        assertEquals(0, stats.getPinWaits());
+
+        stats.reset();
+        assertEquals(0, stats.getHits() + stats.getMisses());
+        assertEquals(0, stats.getFlushLatency().getCount());
+    }
+
+    @Test
+    public void testWarmUp() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[7];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+            bufferManager.fetchPageFrame(pageNums[i]).unpin();
+        }
+        // pages 2 through 6 are resident; all of them are listed, and never more than asked for
+        List<Long> hot = bufferManager.getHotPageNums(10);
+        assertEquals(5, hot.size());
+        for (int i = 2; i < pageNums.length; ++i) {
+            assertTrue(hot.contains(pageNums[i]));
+        }
+        assertEquals(3, bufferManager.getHotPageNums(3).size());
+
+        // a fresh buffer manager with room for four pages loads four of them,
+        // skipping a page freed in the meantime, and never evicts anything
+        diskSpaceManager.freePage(pageNums[6]);
+        BufferManager warm = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 4,
+                new ClockEvictionPolicy());
+        warm.fetchPageFrame(pageNums[0]).unpin();
+        warm.warmUp(hot);
+        for (int i = 0; i < 1000 && warm.isWarmingUp(); ++i) {
+            Thread.sleep(10);
+        }
+        assertFalse(warm.isWarmingUp());
+        assertEquals(3, warm.getNumWarmedUp());
+
+        long numIOs = warm.getNumIOs();
+        for (int i = 0; i < 3; ++i) {
+            warm.fetchPageFrame(pageNums[i]).unpin();
+        }
+        // page 0 was already loaded, pages 2 and 3 were warmed up, page 1 was not listed
+        assertEquals(numIOs + 1, warm.getNumIOs());
+        warm.close();
+    }
+
+    @Test
+    public void testResize() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        byte[] b = new byte[] { 1, 2, 3, 4 };
+        for (int i = 0; i < 5; ++i) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNums[i]);
+            frame.writeBytes((short) 0, (short) 4, b);
+            frame.unpin();
+        }
+
+        // growing keeps every page loaded, and the new frames are free
+        bufferManager.resize(8);
+        assertEquals(8, bufferManager.getBufferSize());
+        long numIOs = bufferManager.getNumIOs();
+        for (long pageNum : pageNums) {
+            bufferManager.fetchPageFrame(pageNum).unpin();
+        }
+        assertEquals(numIOs + 3, bufferManager.getNumIOs());
+        assertEquals(0, bufferManager.getStats().getDirtyEvictions() + bufferManager.getStats().getCleanEvictions());
+
+        // a pinned page in a frame being removed blocks shrinking, which leaves the pool as it was
+        BufferFrame pinned = bufferManager.fetchPageFrame(pageNums[7]);
+        try {
+            bufferManager.resize(3);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(8, bufferManager.getBufferSize());
+        pinned.unpin();
+
+        // shrinking writes out the dirty pages in the removed frames
+        bufferManager.resize(3);
+        assertEquals(3, bufferManager.getBufferSize());
+        assertEquals(2, bufferManager.getStats().getDirtyEvictions());
+        assertEquals(3, bufferManager.getStats().getCleanEvictions());
+        assertFalse(pinned.isValid());
+        numIOs = bufferManager.getNumIOs();
+        for (int i = 0; i < 3; ++i) {
+            bufferManager.fetchPageFrame(pageNums[i]).unpin();
+        }
+        assertEquals(numIOs, bufferManager.getNumIOs());
+
+        // the written pages are read back from disk
+        BufferFrame frame = bufferManager.fetchPageFrame(pageNums[4]);
+        byte[] actual = new byte[4];
+        frame.readBytes((short) 0, (short) 4, actual);
+        frame.unpin();
+        assertArrayEquals(b, actual);
+        assertEquals(3, bufferManager.getBufferSize());
+    }
+
+    @Test
+    public void testWriteBatchSkipsRedirtiedPages() throws IOException {
+        // records the pages reported as written to disk
+        List<Long> synced = new ArrayList<>();
+        DiskSpaceManager dsm = new DiskSpaceManagerImpl(tempFolder.newFolder("dsm").toString(),
+                new DummyRecoveryManager() {
+                    @Override
+                    public void diskIOHook(long pageNum) {
+                        synced.add(pageNum);
+                    }
+                });
+        BufferManager bm = new BufferManager(dsm, new DummyRecoveryManager(), 5, new ClockEvictionPolicy());
+        int partNum = dsm.allocPart(1);
+        BufferFrame frame1 = bm.fetchNewPageFrame(partNum);
+        BufferFrame frame2 = bm.fetchNewPageFrame(partNum);
+        byte[] b = new byte[] { 1, 2, 3, 4 };
+        frame1.writeBytes((short) 0, (short) 4, b);
+        frame2.writeBytes((short) 0, (short) 4, b);
+        frame1.unpin();
+        frame2.unpin();
+        synced.clear();
+
+        // both pages are written by the batch, but page 1 changes again before it is synced,
+        // so only page 2 is reported as on disk
+        dsm.beginWriteBatch();
+        frame1.flush();
+        frame2.flush();
+        frame1.writeBytes((short) 0, (short) 4, new byte[] { 5, 6, 7, 8 });
+        dsm.endWriteBatch();
+        assertEquals(Collections.singletonList(frame2.getPageNum()), synced);
+
+        // page 1 is reported once its newer change is written
+        synced.clear();
+        dsm.beginWriteBatch();
+        frame1.flush();
+        dsm.endWriteBatch();
+        assertEquals(Collections.singletonList(frame1.getPageNum()), synced);
+
+        bm.close();
+        dsm.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyPools() {
+        new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 4, ClockEvictionPolicy::new, 5);
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0));
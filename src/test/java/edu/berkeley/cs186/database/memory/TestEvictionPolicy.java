@@ -6,7 +6,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 @Category({Proj99Tests.class, SystemTests.class})
@@ -32,7 +35,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -133,6 +136,127 @@ public class TestEvictionPolicy {
         policy.cleanup(frames[3]);
     }
 
+    @Test
+    public void testUpcomingEvictions() {
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+
+        EvictionPolicy lru = new LRUEvictionPolicy();
+        for (BufferFrame frame : pool) {
+            lru.init(frame); lru.hit(frame);
+        }
+        lru.hit(frames[0]);
+        assertEquals(Arrays.asList(frames[1], frames[2]), lru.upcomingEvictions(pool, 2));
+
+        EvictionPolicy clock = new ClockEvictionPolicy();
+        for (BufferFrame frame : pool) {
+            clock.init(frame);
+        }
+        assertEquals(frames[0], clock.evict(pool));
+        assertEquals(Arrays.asList(frames[1], frames[2], frames[3], frames[0]), clock.upcomingEvictions(pool, 8));
+    }
+
+    @Test
+    public void testLRUKPolicy() {
+        EvictionPolicy policy = new LRUKEvictionPolicy();
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : pool) {
+            policy.init(frame); policy.hit(frame);
+        }
+        // frames 0 and 1 are referenced a second time; repeated hits only count once
+        policy.hit(frames[0]); policy.hit(frames[0]);
+        policy.hit(frames[1]);
+
+        assertEquals(frames[2], policy.evict(pool));
+        policy.cleanup(frames[2]);
+        pool[2] = frames[4];
+        policy.init(frames[4]); policy.hit(frames[4]);
+
+        // scan pages go first, oldest first
+        assertEquals(frames[3], policy.evict(pool));
+        policy.cleanup(frames[3]);
+
+        // a page reloaded after eviction keeps its history, and now has two references
+        pool[3] = frames[2];
+        policy.init(frames[2]); policy.hit(frames[2]);
+        assertEquals(frames[4], policy.evict(pool));
+        policy.cleanup(frames[4]);
+        pool[2] = frames[5];
+        policy.init(frames[5]);
+
+        frames[5].pin();
+        assertEquals(frames[0], policy.evict(pool));
+        frames[5].unpin();
+    }
+
+    @Test
+    public void testTwoQueuePolicy() {
+        EvictionPolicy policy = new TwoQueueEvictionPolicy();
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : pool) {
+            policy.init(frame); policy.hit(frame);
+        }
+
+        // first-time pages are evicted in FIFO order, even if hit again
+        policy.hit(frames[0]);
+        assertEquals(frames[0], policy.evict(pool));
+        policy.cleanup(frames[0]);
+
+        // page 0 is reloaded while remembered in A1out, so it goes to the main queue
+        policy.init(frames[0]); policy.hit(frames[0]);
+        for (int i = 4; i < 8; ++i) {
+            BufferFrame evicted = policy.evict(pool);
+            assertNotEquals(frames[0], evicted);
+            policy.cleanup(evicted);
+            pool[Arrays.asList(pool).indexOf(evicted)] = frames[i];
+            policy.init(frames[i]); policy.hit(frames[i]);
+        }
+
+        // the main queue is used once everything else is pinned
+        for (BufferFrame frame : pool) {
+            if (frame != frames[0]) {
+                frame.pin();
+            }
+        }
+        assertEquals(frames[0], policy.evict(pool));
+        for (BufferFrame frame : pool) {
+            if (frame != frames[0]) {
+                frame.unpin();
+            }
+        }
+    }
+
+    @Test
+    public void testARCPolicy() {
+        EvictionPolicy policy = new ARCEvictionPolicy();
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        for (BufferFrame frame : pool) {
+            policy.init(frame); policy.hit(frame);
+        }
+        // frames 0 and 1 move to T2
+        policy.hit(frames[0]);
+        policy.hit(frames[1]);
+
+        for (int i = 4; i < 8; ++i) {
+            BufferFrame evicted = policy.evict(pool);
+            assertNotEquals(frames[0], evicted);
+            assertNotEquals(frames[1], evicted);
+            policy.cleanup(evicted);
+            pool[Arrays.asList(pool).indexOf(evicted)] = frames[i];
+            policy.init(frames[i]); policy.hit(frames[i]);
+        }
+
+        // a page reloaded from the B1 ghost list goes straight to T2
+        BufferFrame evicted = policy.evict(pool);
+        assertEquals(frames[6], evicted);
+        policy.cleanup(evicted);
+        policy.init(frames[6]);
+        assertEquals(frames[7], policy.evict(pool));
+        policy.cleanup(frames[7]);
+
+        // with T1 empty, the least recently used page of T2 goes
+        assertEquals(frames[0], policy.evict(pool));
+    }
+
     @Test
     public void testClockPolicy() {
         EvictionPolicy policy = new ClockEvictionPolicy();
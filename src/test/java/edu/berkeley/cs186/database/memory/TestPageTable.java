@@ -0,0 +1,64 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPageTable {
+    @Test
+    public void testPutGetRemove() {
+        PageTable table = new PageTable(4);
+        long page1 = DiskSpaceManager.getVirtualPageNum(1, 0);
+        long page2 = DiskSpaceManager.getVirtualPageNum(1, 1);
+
+        assertEquals(-1, table.get(page1));
+        table.put(page1, 0);
+        table.put(page2, 3);
+        assertEquals(0, table.get(page1));
+        assertEquals(3, table.get(page2));
+
+        // removal only happens if the frame index matches
+        assertFalse(table.remove(page1, 2));
+        assertTrue(table.containsKey(page1));
+        assertTrue(table.remove(page1, 0));
+        assertFalse(table.containsKey(page1));
+        assertEquals(3, table.get(page2));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        // random puts and removes on a full table, to exercise backward-shift deletion
+        int numFrames = 64;
+        PageTable table = new PageTable(numFrames);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(186);
+        for (int i = 0; i < 100000; ++i) {
+            long pageNum = DiskSpaceManager.getVirtualPageNum(random.nextInt(4), random.nextInt(100));
+            if (expected.containsKey(pageNum)) {
+                assertTrue(table.remove(pageNum, expected.remove(pageNum)));
+            } else if (expected.size() < numFrames) {
+                int frameIndex = random.nextInt(numFrames);
+                table.put(pageNum, frameIndex);
+                expected.put(pageNum, frameIndex);
+            }
+            for (int j = 0; j < 4; ++j) {
+                long probe = DiskSpaceManager.getVirtualPageNum(j, DiskSpaceManager.getPageNum(pageNum));
+                assertEquals(expected.getOrDefault(probe, -1).intValue(), table.get(probe));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageNum() {
+        new PageTable(4).put(DiskSpaceManager.INVALID_PAGE_NUM, 0);
+    }
+}
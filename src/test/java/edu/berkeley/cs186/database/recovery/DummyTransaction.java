@@ -6,15 +6,19 @@ import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableFormat;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -81,7 +85,7 @@ class DummyTransaction extends Transaction {
     }
 
     @Override
-    public void createTable(Schema s, String tableName) {}
+    public void createTable(Schema s, String tableName, TableFormat format) {}
 
     @Override
     public void dropTable(String tableName) {}
@@ -108,6 +112,9 @@ class DummyTransaction extends Transaction {
     @Override
     public void insert(String tableName, Record values) {}
 
+    @Override
+    public void insertAll(String tableName, Iterator<Record> records) {}
+
     @Override
     public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {}
 
@@ -155,6 +162,16 @@ class DummyTransaction extends Transaction {
             return 0;
         }
 
+        @Override
+        public short getEffectivePageSize() {
+            return PageDirectory.EFFECTIVE_PAGE_SIZE;
+        }
+
+        @Override
+        public BufferRing getBufferRing(int numPages) {
+            return null;
+        }
+
         @Override
         public void close() {}
 
@@ -163,6 +180,11 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public String createTempTable(Schema schema, BufferRing ring) {
+            return null;
+        }
+
         @Override
         public void deleteAllTempTables() {}
 
@@ -200,6 +222,11 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public BacktrackingIterator<Record> getRecordIterator(String tableName, BufferRing ring) {
+            return null;
+        }
+
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
             return false;
@@ -210,6 +237,11 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public List<RecordId> addRecords(String tableName, Iterator<Record> records) {
+            return null;
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
             return null;
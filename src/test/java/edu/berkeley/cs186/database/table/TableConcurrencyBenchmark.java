@@ -0,0 +1,137 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Multithreaded throughput benchmark for Table: inserts, point reads, and point reads
+ * running alongside one inserting thread, with 1 to MAX_THREADS threads. Each workload
+ * is run twice: calling the table directly, and with every call synchronized on the
+ * table, as all of Table's record methods used to be. Not run as part of the test
+ * suite; after mvn test-compile, run with
+ *
+ *   java -cp target/classes:target/test-classes edu.berkeley.cs186.database.table.TableConcurrencyBenchmark
+ */
+public class TableConcurrencyBenchmark {
+    private static final int NUM_FRAMES = 4096;
+    private static final int MAX_THREADS = 8;
+    private static final int ROUNDS = 5;
+    private static final int INSERTS_PER_THREAD = 50_000;
+    private static final int READS_PER_THREAD = 500_000;
+    private static final int PRELOADED_RECORDS = 200_000;
+
+    private interface Op {
+        void run(Table table, List<RecordId> rids, Random random);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Op insert = (table, rids, random) -> table.addRecord(TestUtils.createRecordWithAllTypes());
+        Op read = (table, rids, random) -> table.getRecord(rids.get(random.nextInt(rids.size())));
+
+        System.out.printf("%-22s %7s %16s %16s%n", "workload", "threads", "serialized op/s", "concurrent op/s");
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            report("insert", threads, INSERTS_PER_THREAD, insert, false);
+        }
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            report("point read", threads, READS_PER_THREAD, read, false);
+        }
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            report("point read + 1 writer", threads, READS_PER_THREAD, read, true);
+        }
+    }
+
+    private static void report(String name, int numThreads, int opsPerThread, Op op,
+                               boolean withWriter) throws InterruptedException {
+        double serialized = 0;
+        double concurrent = 0;
+        for (int i = 0; i < ROUNDS; ++i) {
+            serialized = Math.max(serialized, run(numThreads, opsPerThread, op, withWriter, true));
+            concurrent = Math.max(concurrent, run(numThreads, opsPerThread, op, withWriter, false));
+        }
+        System.out.printf("%-22s %7d %16.0f %16.0f%n", name, numThreads, serialized, concurrent);
+    }
+
+    // runs opsPerThread operations on each of numThreads threads against a freshly
+    // loaded table, and returns the best-case throughput in operations per second
+    private static double run(int numThreads, int opsPerThread, Op op, boolean withWriter,
+                              boolean serialize) throws InterruptedException {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(1);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                NUM_FRAMES, new ClockEvictionPolicy());
+        try {
+            Table table;
+            Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+            try {
+                PageDirectory pageDirectory = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0,
+                                                                new DummyLockContext());
+                table = new Table("benchmark", TestUtils.createSchemaWithAllTypes(), pageDirectory,
+                                  new DummyLockContext());
+            } finally {
+                page.unpin();
+            }
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < PRELOADED_RECORDS; ++i) {
+                records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+            }
+            List<RecordId> rids = table.addRecords(records.iterator());
+
+            Thread writer = null;
+            if (withWriter) {
+                writer = new Thread(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        call(table, serialize, () -> table.addRecord(TestUtils.createRecordWithAllTypes()));
+                    }
+                });
+                writer.start();
+            }
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < numThreads; ++t) {
+                Random random = new Random(t);
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < opsPerThread; ++i) {
+                        call(table, serialize, () -> op.run(table, rids, random));
+                    }
+                }));
+            }
+            long start = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (writer != null) {
+                writer.interrupt();
+                writer.join();
+            }
+            return (double) numThreads * opsPerThread * 1e9 / elapsed;
+        } finally {
+            bufferManager.close();
+            diskSpaceManager.close();
+        }
+    }
+
+    private static void call(Table table, boolean serialize, Runnable call) {
+        if (serialize) {
+            synchronized (table) {
+                call.run();
+            }
+        } else {
+            call.run();
+        }
+    }
+}
@@ -190,6 +190,45 @@ public class TestPageDirectory {
         } catch (IllegalArgumentException e) { /* do nothing */ }
     }
 
+    @Test
+    public void testFreeSpaceMap() {
+        Page header = bufferManager.fetchNewPage(new DummyLockContext("_dummyPageDirectoryRecord"), 0);
+        header.unpin();
+        createPageDirectory(header.getPageNum(), (short) 10);
+
+        // enough full pages to need several header pages
+        short pageSize = (short) (pageDirectory.getEffectivePageSize() - 10);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            Page page = pageDirectory.getPageWithSpace(pageSize);
+            page.unpin();
+            pages.add(page);
+        }
+        pageDirectory.updateFreeSpace(pages.get(900), (short) 50);
+        pageDirectory.updateFreeSpace(pages.get(100), (short) 100);
+
+        // the fullest page with enough space is used
+        Page p = pageDirectory.getPageWithSpace((short) 40);
+        p.unpin();
+        assertEquals(pages.get(900), p);
+        p = pageDirectory.getPageWithSpace((short) 60);
+        p.unpin();
+        assertEquals(pages.get(100), p);
+
+        // the free space is read back from the header pages when loaded again
+        createPageDirectory(header.getPageNum(), (short) 10);
+        assertEquals(1000, pageDirectory.getNumDataPages());
+        p = pageDirectory.getPageWithSpace((short) 40);
+        p.unpin();
+        assertEquals(pages.get(100), p);
+        p = pageDirectory.getPageWithSpace((short) 1);
+        p.unpin();
+        assertEquals(pages.get(900), p);
+        p = pageDirectory.getPageWithSpace((short) 20);
+        p.unpin();
+        assertEquals(1001, pageDirectory.getNumDataPages());
+    }
+
     @Test
     public void testIterator() {
         createPageDirectory((short) 0);
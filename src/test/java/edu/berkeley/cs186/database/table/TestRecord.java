@@ -2,13 +2,17 @@ package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestRecord {
@@ -42,6 +46,84 @@ public class TestRecord {
         }
     }
 
+    @Test
+    public void testToAndFromVariableLengthBytes() {
+        Schema s = new Schema()
+            .add("w", Type.boolType())
+            .add("x", Type.stringType(255))
+            .add("y", Type.intType())
+            .add("z", Type.stringType(10));
+        Record[] records = {
+            new Record(true, "foo", 7, "bar"),
+            new Record(false, "x", -1, "0123456789"),
+        };
+        for (Record r : records) {
+            byte[] bytes = r.toVariableLengthBytes(s);
+            assertEquals(r, Record.fromVariableLengthBytes(ByteBuffer.wrap(bytes), s));
+        }
+        // strings only take their own length, plus 2 bytes for it
+        assertEquals(1 + 2 + 3 + 4 + 2 + 3, records[0].toVariableLengthBytes(s).length);
+        assertEquals(s.getSizeInBytes() + 4, Record.maxVariableLengthSize(s));
+    }
+
+    @Test
+    public void testDecodedRecords() {
+        Schema s = new Schema()
+            .add("w", Type.boolType())
+            .add("x", Type.stringType(5))
+            .add("y", Type.intType())
+            .add("z", Type.longType());
+        Record a = new Record(true, new StringDataBox("foo", 5), 7, 8L);
+        Record b = new Record(false, new StringDataBox("", 5), -1, -2L);
+
+        // records read back to back from the same buffer, in both formats
+        byte[] fixed = new byte[2 * s.getSizeInBytes()];
+        Buffer buf = ByteBuffer.wrap(fixed);
+        buf.put(a.toBytes(s)).put(b.toBytes(s)).position(0);
+        Record[] fromFixed = {Record.fromBytes(buf, s), Record.fromBytes(buf, s)};
+        assertEquals(fixed.length, buf.position());
+
+        byte[] aBytes = a.toVariableLengthBytes(s);
+        byte[] bBytes = b.toVariableLengthBytes(s);
+        buf = ByteBuffer.wrap(new byte[aBytes.length + bBytes.length]);
+        buf.put(aBytes).put(bBytes).position(0);
+        Record[] fromVariable = {Record.fromVariableLengthBytes(buf, s), Record.fromVariableLengthBytes(buf, s)};
+        assertEquals(aBytes.length + bBytes.length, buf.position());
+
+        for (Record[] decoded : new Record[][] {fromFixed, fromVariable}) {
+            // fields are decoded in any order
+            assertEquals(a.getValue(3), decoded[0].getValue(3));
+            assertEquals(a.getValue(1), decoded[0].getValue(1));
+            assertEquals(a, decoded[0]);
+            assertEquals(decoded[0], a);
+            assertEquals(a.hashCode(), decoded[0].hashCode());
+            assertEquals(b, decoded[1]);
+            assertEquals(a.getValues(), decoded[0].getValues());
+            assertEquals(a.toString(), decoded[0].toString());
+
+            // written back out the same in either format
+            assertArrayEquals(a.toBytes(s), decoded[0].toBytes(s));
+            assertArrayEquals(aBytes, decoded[0].toVariableLengthBytes(s));
+            assertArrayEquals(bBytes, decoded[1].toVariableLengthBytes(s));
+
+            assertSame(decoded[0], s.verify(decoded[0]));
+            Record concat = decoded[0].concat(decoded[1]);
+            assertEquals(a.concat(b), concat);
+            assertEquals(8, concat.size());
+            assertEquals(b.getValue(2), concat.getValue(6));
+        }
+
+        // a schema with other field types must not reuse the bytes
+        Schema wider = new Schema()
+            .add("w", Type.boolType())
+            .add("x", Type.stringType(10))
+            .add("y", Type.intType())
+            .add("z", Type.longType());
+        Record verified = wider.verify(fromFixed[0]);
+        assertEquals(wider.getSizeInBytes(), verified.toBytes(wider).length);
+        assertEquals(new Record(true, new StringDataBox("foo", 10), 7, 8L), Record.fromBytes(ByteBuffer.wrap(verified.toBytes(wider)), wider));
+    }
+
     @Test
     public void testEquals() {
         Record a = new Record(false);
@@ -0,0 +1,59 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestSlottedPage {
+    private static final int PAGE_SIZE = 200;
+
+    private static byte[] record(int length, char c) {
+        byte[] record = new byte[length];
+        Arrays.fill(record, (byte) c);
+        return record;
+    }
+
+    private static byte[] read(SlottedPage page, int length, int slot) {
+        byte[] record = new byte[length];
+        page.get(slot).get(record);
+        return record;
+    }
+
+    @Test
+    public void testInsertAfterShrinkingRecords() {
+        SlottedPage page = new SlottedPage(ByteBuffer.wrap(new byte[PAGE_SIZE]), PAGE_SIZE);
+        // fill the page up to the slot directory, the last record taking what is left
+        int numRecords = 0;
+        while (page.getFreeSpace() >= SlottedPage.spaceNeeded(40) + SlottedPage.spaceNeeded(40)) {
+            assertEquals(numRecords, page.insert(record(40, (char) ('A' + numRecords)), SlottedPage.RECORD));
+            ++numRecords;
+        }
+        int last = page.getFreeSpace() - SlottedPage.SLOT_SIZE;
+        assertEquals(numRecords, page.insert(record(last, (char) ('A' + numRecords)), SlottedPage.RECORD));
+        ++numRecords;
+        assertEquals(0, page.getFreeSpace());
+        int[] lengths = new int[numRecords];
+
+        // shrinking leaves holes, but no contiguous space after the slot directory
+        for (int i = 0; i < numRecords; ++i) {
+            lengths[i] = 20;
+            assertTrue(page.update(i, record(20, (char) ('a' + i)), SlottedPage.RECORD));
+        }
+        int length = page.getFreeSpace() - SlottedPage.SLOT_SIZE;
+        assertTrue(length >= SlottedPage.MIN_RECORD_SIZE);
+        assertEquals(numRecords, page.insert(record(length, 'z'), SlottedPage.RECORD));
+
+        for (int i = 0; i < numRecords; ++i) {
+            assertArrayEquals(record(lengths[i], (char) ('a' + i)), read(page, lengths[i], i));
+        }
+        assertArrayEquals(record(length, 'z'), read(page, length, numRecords));
+        assertEquals(0, page.getFreeSpace());
+    }
+}
@@ -6,6 +6,7 @@ import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
@@ -20,8 +21,14 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -92,6 +99,95 @@ public class TestTable {
         }
     }
 
+    @Test
+    public void testAddRecords() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 3 + 1; ++i) {
+            records.add(createRecordWithAllTypes(i));
+        }
+        List<RecordId> rids = table.addRecords(records.iterator());
+        assertEquals(records.size(), rids.size());
+        assertEquals(4, table.getNumDataPages());
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), table.getRecord(rids.get(i)));
+        }
+
+        // the holes left by deletes are filled first, as addRecord would
+        for (int i = 0; i < 10; ++i) {
+            table.deleteRecord(rids.get(i * 2));
+        }
+        List<Record> more = new ArrayList<>();
+        for (int i = 0; i < 15; ++i) {
+            more.add(createRecordWithAllTypes(1000 + i));
+        }
+        List<RecordId> moreRids = table.addRecords(more.iterator());
+        for (int i = 0; i < 15; ++i) {
+            if (i < 10) {
+                assertEquals(rids.get(i * 2), moreRids.get(i));
+            }
+            assertEquals(more.get(i), table.getRecord(moreRids.get(i)));
+        }
+        assertEquals(4, table.getNumDataPages());
+        assertEquals(records.size() + 5, table.getStats().getNumRecords());
+    }
+
+    /**
+     * Threads inserting and deleting at the same time all see their own records, and
+     * the table ends up with exactly the records that were not deleted.
+     */
+    @Test
+    public void testConcurrentInsertsAndDeletes() throws InterruptedException {
+        int numThreads = 4;
+        int numRecords = table.getNumRecordsPerPage() * 2;
+        List<List<RecordId>> rids = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            List<RecordId> threadRids = new ArrayList<>();
+            rids.add(threadRids);
+            int base = t * numRecords;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < numRecords; ++i) {
+                        threadRids.add(table.addRecord(createRecordWithAllTypes(base + i)));
+                        if (i % 2 == 1) {
+                            // delete every other record, while the other threads insert
+                            assertEquals(createRecordWithAllTypes(base + i - 1),
+                                         table.deleteRecord(threadRids.get(i - 1)));
+                        }
+                    }
+                    for (int i = 1; i < numRecords; i += 2) {
+                        assertEquals(createRecordWithAllTypes(base + i), table.getRecord(threadRids.get(i)));
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(Collections.emptyList(), errors);
+
+        Set<RecordId> remaining = new HashSet<>();
+        for (List<RecordId> threadRids : rids) {
+            for (int i = 1; i < numRecords; i += 2) {
+                remaining.add(threadRids.get(i));
+            }
+        }
+        assertEquals(numThreads * numRecords / 2, remaining.size());
+        assertEquals(remaining.size(), table.getStats().getNumRecords());
+        int numScanned = 0;
+        for (Iterator<Record> iter = table.iterator(); iter.hasNext(); iter.next()) {
+            ++numScanned;
+        }
+        assertEquals(remaining.size(), numScanned);
+    }
+
     @Test
     public void testSingleDelete() {
         Record r = createRecordWithAllTypes(0);
@@ -457,4 +553,239 @@ public class TestTable {
         checkSequentialRecords(1, numRecords, 2, iter);
         assertFalse(iter.hasNext());
     }
+
+    private Table createSlottedTable() {
+        Schema s = new Schema().add("id", Type.intType()).add("name", Type.stringType(255));
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+        try {
+            PageDirectory pd = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0,
+                                                 new DummyLockContext());
+            return new Table("slotted", s, pd, new DummyLockContext(), new HashMap<>(), TableFormat.SLOTTED);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private static Record createSlottedRecord(int i, int length) {
+        char[] name = new char[length];
+        Arrays.fill(name, (char) ('a' + i % 26));
+        return new Record(i, new String(name));
+    }
+
+    /**
+     * Records of a slotted table only take the space of their actual values.
+     */
+    @Test
+    public void testSlottedInsertAndGet() {
+        Table slotted = createSlottedTable();
+        assertEquals(TableFormat.SLOTTED, slotted.getFormat());
+        // a bitmap table fits 15 (4 + 255)-byte records on a page
+        int numRecords = 15 * 4;
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            rids.add(slotted.addRecord(createSlottedRecord(i, 10)));
+        }
+        assertEquals(1, slotted.getNumDataPages());
+        for (int i = 0; i < numRecords; ++i) {
+            assertEquals(createSlottedRecord(i, 10), slotted.getRecord(rids.get(i)));
+        }
+
+        BacktrackingIterator<Record> iter = slotted.iterator();
+        for (int i = 0; i < numRecords; ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(createSlottedRecord(i, 10), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testSlottedDelete() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            rids.add(slotted.addRecord(createSlottedRecord(i, 100)));
+        }
+        assertTrue(slotted.getNumDataPages() > 1);
+
+        for (int i = 0; i < 200; i += 2) {
+            assertEquals(createSlottedRecord(i, 100), slotted.deleteRecord(rids.get(i)));
+        }
+        try {
+            slotted.getRecord(rids.get(0));
+            fail();
+        } catch (DatabaseException e) { /* do nothing */ }
+        Iterator<Record> iter = slotted.iterator();
+        for (int i = 1; i < 200; i += 2) {
+            assertEquals(createSlottedRecord(i, 100), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // pages are freed once their last record is deleted
+        for (int i = 1; i < 200; i += 2) {
+            slotted.deleteRecord(rids.get(i));
+        }
+        assertEquals(0, slotted.getNumDataPages());
+    }
+
+    @Test
+    public void testSlottedAddRecords() {
+        Table slotted = createSlottedTable();
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            records.add(createSlottedRecord(i, 1 + i % 200));
+        }
+        List<RecordId> rids = slotted.addRecords(records.iterator());
+        for (int i = 0; i < records.size(); ++i) {
+            assertEquals(records.get(i), slotted.getRecord(rids.get(i)));
+        }
+        int numPages = slotted.getNumDataPages();
+
+        // the same records one at a time take as many pages
+        Table single = createSlottedTable();
+        for (Record record : records) {
+            single.addRecord(record);
+        }
+        assertEquals(single.getNumDataPages(), numPages);
+
+        int numRecords = 0;
+        for (Iterator<Record> iter = slotted.iterator(); iter.hasNext(); iter.next()) {
+            ++numRecords;
+        }
+        assertEquals(records.size(), numRecords);
+    }
+
+    /**
+     * A record that does not match the schema fails addRecords, but the records before
+     * it are all added, and nothing else is.
+     */
+    @Test
+    public void testAddRecordsInvalidRecord() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < table.getNumRecordsPerPage() * 2; ++i) {
+            records.add(createRecordWithAllTypes(i));
+        }
+        checkAddRecordsInvalidRecord(table, records, table.getNumRecordsPerPage() + 3, 1);
+        // no space was lost on the page being filled when the batch failed
+        assertEquals(2, table.getNumDataPages());
+
+        Table slotted = createSlottedTable();
+        records.clear();
+        for (int i = 0; i < 300; ++i) {
+            records.add(createSlottedRecord(i, 1 + i % 200));
+        }
+        checkAddRecordsInvalidRecord(slotted, records, 150, 0);
+        Table single = createSlottedTable();
+        for (Record record : records) {
+            single.addRecord(record);
+        }
+        assertEquals(single.getNumDataPages(), slotted.getNumDataPages());
+    }
+
+    // adds records with an invalid record inserted before records[invalid], checks
+    // that exactly the records before it were added, then adds the rest
+    private void checkAddRecordsInvalidRecord(Table table, List<Record> records, int invalid, int idColumn) {
+        List<Record> batch = new ArrayList<>(records);
+        batch.add(invalid, new Record(1));
+        try {
+            table.addRecords(batch.iterator());
+            fail();
+        } catch (DatabaseException e) {
+            // expected
+        }
+
+        List<Record> added = new ArrayList<>();
+        table.iterator().forEachRemaining(added::add);
+        added.sort(Comparator.comparing(r -> r.getValue(idColumn)));
+        assertEquals(records.subList(0, invalid), added);
+        assertEquals(invalid, table.getStats().getNumRecords());
+
+        table.addRecords(records.subList(invalid, records.size()).iterator());
+        assertEquals(records.size(), table.getStats().getNumRecords());
+    }
+
+    /**
+     * Space freed by deletes and shrinking updates is reused, by moving the remaining
+     * records together.
+     */
+    @Test
+    public void testSlottedCompaction() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        int i = 0;
+        while (slotted.getNumDataPages() <= 1) {
+            rids.add(slotted.addRecord(createSlottedRecord(i++, 50)));
+        }
+        // the last record went to a second page
+        slotted.deleteRecord(rids.remove(rids.size() - 1));
+        assertEquals(1, slotted.getNumDataPages());
+
+        // free every other record's space, in holes too small for a larger record
+        for (int j = 0; j < rids.size(); j += 2) {
+            slotted.updateRecord(rids.get(j), createSlottedRecord(j, 5));
+        }
+        List<RecordId> added = new ArrayList<>();
+        for (int j = 0; j < rids.size() / 4; ++j) {
+            added.add(slotted.addRecord(createSlottedRecord(1000 + j, 60)));
+        }
+        assertEquals(1, slotted.getNumDataPages());
+
+        for (int j = 0; j < rids.size(); ++j) {
+            assertEquals(createSlottedRecord(j, j % 2 == 0 ? 5 : 50), slotted.getRecord(rids.get(j)));
+        }
+        for (int j = 0; j < added.size(); ++j) {
+            assertEquals(createSlottedRecord(1000 + j, 60), slotted.getRecord(added.get(j)));
+        }
+    }
+
+    /**
+     * A record that grows too large for its page moves, but keeps its record id.
+     */
+    @Test
+    public void testSlottedUpdateMovesRecord() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        int numRecords = 0;
+        while (slotted.getNumDataPages() <= 1) {
+            rids.add(slotted.addRecord(createSlottedRecord(numRecords++, 20)));
+        }
+        RecordId rid = rids.get(0);
+        Record grown = createSlottedRecord(0, 255);
+        assertEquals(createSlottedRecord(0, 20), slotted.updateRecord(rid, grown));
+        assertEquals(grown, slotted.getRecord(rid));
+
+        // the moved record is returned by scans once, under its original record id
+        int count = 0;
+        Iterator<RecordId> ridIter = slotted.ridIterator();
+        while (ridIter.hasNext()) {
+            RecordId next = ridIter.next();
+            assertNotEquals(rid.getPageNum() != next.getPageNum() && slotted.getRecord(next).equals(grown),
+                            true);
+            ++count;
+        }
+        assertEquals(numRecords, count);
+
+        // updates and deletes of a moved record go to its new location
+        Record shrunk = createSlottedRecord(0, 1);
+        assertEquals(grown, slotted.updateRecord(rid, shrunk));
+        assertEquals(shrunk, slotted.getRecord(rid));
+        assertEquals(shrunk, slotted.deleteRecord(rid));
+        try {
+            slotted.getRecord(rid);
+            fail();
+        } catch (DatabaseException e) { /* do nothing */ }
+        for (int i = 1; i < numRecords; ++i) {
+            assertEquals(createSlottedRecord(i, 20), slotted.getRecord(rids.get(i)));
+        }
+        count = 0;
+        for (Record r : (Iterable<Record>) slotted::iterator) {
+            ++count;
+        }
+        assertEquals(numRecords - 1, count);
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testSlottedRecordTooLarge() {
+        Schema s = new Schema().add("a", Type.stringType(2000)).add("b", Type.stringType(2040));
+        new Table("big", s, pageDirectory, new DummyLockContext(), new HashMap<>(), TableFormat.SLOTTED);
+    }
 }